@@ -0,0 +1,11 @@
+// ========================================
+// BATCH POLICY
+// ========================================
+
+/**
+ * How processOrders() handles a batch that stock cannot fully cover
+ */
+enum BatchPolicy {
+    ALL_OR_NOTHING, // Reject the whole batch
+    BEST_EFFORT     // Accept orders in arrival order while stock lasts
+}
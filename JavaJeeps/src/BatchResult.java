@@ -0,0 +1,30 @@
+import java.util.Collections;
+import java.util.List;
+
+// ========================================
+// BATCH RESULT
+// ========================================
+
+/**
+ * Outcome of a batch of orders
+ */
+class BatchResult {
+
+    private final List<Transaction> transactions;
+    private final List<CoffeeOrder> rejectedOrders;
+
+    /**
+     * Constructor for BatchResult
+     * @param transactions Transactions recorded for the prepared orders
+     * @param rejectedOrders Orders that were not prepared
+     */
+    public BatchResult(List<Transaction> transactions, List<CoffeeOrder> rejectedOrders) {
+        this.transactions = Collections.unmodifiableList(transactions);
+        this.rejectedOrders = Collections.unmodifiableList(rejectedOrders);
+    }
+
+    public List<Transaction> getTransactions() { return transactions; }
+    public List<CoffeeOrder> getRejectedOrders() { return rejectedOrders; }
+    public int getPreparedCount() { return transactions.size(); }
+    public boolean isComplete() { return rejectedOrders.isEmpty(); }
+}
@@ -1,4 +1,6 @@
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // ========================================
 // ABSTRACT BASE CLASS: COFFEE TRUCK
@@ -21,16 +23,18 @@ abstract class CoffeeTruck {
 
     protected String location;
     protected StorageBin[] storageBins;
-    protected Map<String, Map<String, Double>> pricing; // drink -> size -> price
-    protected List<Transaction> transactions;
+    protected Map<String, Map<String, Double>> pricing; // drink -> size -> price, concurrent maps at both levels
+    protected TransactionStore transactions; // Columnar sales history, thread-safe
 
-    // Constants for cup sizes (in fluid ounces)
-    private static final double SMALL_CUP_SIZE = 8.0;
-    private static final double MEDIUM_CUP_SIZE = 12.0;
-    private static final double LARGE_CUP_SIZE = 16.0;
+    // Bin orders draw each stock item from, by StockItem ordinal (null when no bin holds it).
+    // Rebuilt and republished whole whenever a bin is replaced, so order threads never see it half-updated.
+    private volatile StorageBin[] binsByItem = new StorageBin[StockItem.values().length];
 
-    // Conversion factor: 1 fl. oz. = 28.34952 grams (as per specification)
-    private static final double FL_OZ_TO_GRAMS = 28.34952;
+    // Durable record of sales and inventory changes, or null when the truck is not journaled
+    protected volatile TruckJournal journal;
+
+    // Fleet-wide running totals this truck keeps up to date, or null outside a fleet
+    protected volatile FleetStats fleet;
 
     // ========================================
     // CONSTRUCTOR
@@ -41,20 +45,30 @@ abstract class CoffeeTruck {
      * @param location The location where the truck is deployed
      */
     public CoffeeTruck(String location) {
+        this(location, 8); // Regular trucks have 8 bins
+    }
+
+    /**
+     * Constructor for CoffeeTruck with a given number of storage bins
+     * @param location The location where the truck is deployed
+     * @param binCount Number of storage bins on the truck
+     */
+    protected CoffeeTruck(String location, int binCount) {
         this.location = location;
-        this.storageBins = new StorageBin[8]; // Regular trucks have 8 bins
-        this.pricing = new HashMap<>();
-        this.transactions = new ArrayList<>();
+        this.storageBins = new StorageBin[binCount];
+        this.pricing = new ConcurrentHashMap<>();
+        this.transactions = new TransactionStore();
         initializePricing();
+        rebuildBinIndex();
     }
 
     /**
      * Initializes the pricing structure for all drink types
      */
     private void initializePricing() {
-        pricing.put("Americano", new HashMap<>());
-        pricing.put("Latte", new HashMap<>());
-        pricing.put("Cappuccino", new HashMap<>());
+        pricing.put("Americano", new ConcurrentHashMap<>());
+        pricing.put("Latte", new ConcurrentHashMap<>());
+        pricing.put("Cappuccino", new ConcurrentHashMap<>());
     }
 
     // ========================================
@@ -80,34 +94,48 @@ abstract class CoffeeTruck {
      * 4. Deducts ingredients from storage
      * 5. Records transaction
      *
+     * Safe to call from many threads at once: stock is reserved with compare-and-set
+     * on each bin, so concurrent orders can never oversell a bin, and prices may be
+     * changed while orders are taken.
+     *
      * @param order The coffee order to process
      * @return true if order was processed successfully, false otherwise
      */
     public boolean processOrder(CoffeeOrder order) {
-        // Step 1: Check if all required ingredients are available
-        if (!areIngredientsAvailable(order)) {
+        // Step 1: Look up the compiled recipe and check if all required ingredients are available
+        Recipe recipe = RecipeBook.lookup(order);
+        if (!areIngredientsAvailable(recipe)) {
             return false;
         }
 
-        // Step 2: Calculate exact ingredient requirements
-        IngredientRequirement requirement = calculateIngredientRequirements(order);
+        // Step 2: Exact ingredient requirements come precomputed with the recipe
+        IngredientRequirement requirement = recipe.getRequirement();
 
         // Step 3: Check if required cup size is available
-        if (!isCupAvailable(order.getSize())) {
+        StockItem cup = recipe.getCup();
+        if (!isCupAvailable(cup)) {
             System.out.println("No " + order.getSize().toLowerCase() + " cups available!");
             return false;
         }
 
-        // Step 4: Begin order processing
-        System.out.println("\n" + "=".repeat(50));
-        System.out.println(">>> Preparing " + order.getSize() + " Cup...");
+        // Step 4: Deduct all ingredients and the cup from storage in one reservation.
+        // Another order may have taken the stock since the checks above.
+        int[] demand = new int[StockItem.values().length];
+        addDemand(demand, recipe);
+        if (!reserveStock(demand)) {
+            System.out.println("Ingredients ran out while preparing this order - please try again.");
+            return false;
+        }
+        takeFromFleetInventory(demand);
 
-        // Step 5: Deduct all ingredients from storage
-        deductIngredientsFromStorage(requirement);
-        deductCupFromStorage(order.getSize());
+        // Step 5: Begin order processing. The receipt is printed in one piece so
+        // orders prepared on other threads do not interleave with it.
+        StringBuilder receipt = new StringBuilder();
+        receipt.append("\n").append("=".repeat(50)).append(System.lineSeparator());
+        receipt.append(">>> Preparing ").append(order.getSize()).append(" Cup...").append(System.lineSeparator());
 
         // Step 6: Display step-by-step preparation process
-        displayPreparationProcess(order, requirement);
+        displayPreparationProcess(receipt, order, recipe);
 
         // Step 7: Calculate total price including add-ons
         double totalPrice = calculateTotalPrice(order);
@@ -115,26 +143,35 @@ abstract class CoffeeTruck {
         // Step 8: Record transaction for reporting
         Transaction transaction = new Transaction(order, requirement, totalPrice);
         transactions.add(transaction);
+        TruckJournal journal = this.journal;
+        if (journal != null) {
+            journal.recordSale(transaction);
+        }
+        FleetStats fleet = this.fleet;
+        if (fleet != null) {
+            fleet.recordSale(order.getDrinkType(), order.getSize(), totalPrice);
+        }
 
         // Step 9: Display completion message
-        System.out.printf(">>> Total Price: $%.2f%n", totalPrice);
-        System.out.println(">>> " + getCustomDrinkName(order) + " Done!");
-        System.out.println("=".repeat(50));
+        receipt.append(String.format(">>> Total Price: $%.2f%n", totalPrice));
+        receipt.append(">>> ").append(getCustomDrinkName(order)).append(" Done!").append(System.lineSeparator());
+        receipt.append("=".repeat(50)).append(System.lineSeparator());
+        System.out.print(receipt);
 
         return true;
     }
 
     /**
      * Checks if all required ingredients are available for the order
-     * @param order The coffee order to check
+     * @param recipe The compiled recipe of the order to check
      * @return true if all ingredients are available, false otherwise
      */
-    private boolean areIngredientsAvailable(CoffeeOrder order) {
-        IngredientRequirement requirement = calculateIngredientRequirements(order);
+    private boolean areIngredientsAvailable(Recipe recipe) {
+        IngredientRequirement requirement = recipe.getRequirement();
 
-        boolean coffeeAvailable = isIngredientAvailable("Coffee Beans", requirement.getCoffeeGrams());
-        boolean waterAvailable = isIngredientAvailable("Water", requirement.getWaterOz());
-        boolean milkAvailable = isIngredientAvailable("Milk", requirement.getMilkOz());
+        boolean coffeeAvailable = isIngredientAvailable(StockItem.COFFEE_BEANS, recipe.getCoffeeUnits());
+        boolean waterAvailable = isIngredientAvailable(StockItem.WATER, recipe.getWaterUnits());
+        boolean milkAvailable = isIngredientAvailable(StockItem.MILK, recipe.getMilkUnits());
 
         if (!coffeeAvailable) {
             System.out.println("Insufficient coffee beans! Required: " +
@@ -153,103 +190,154 @@ abstract class CoffeeTruck {
     }
 
     // ========================================
-    // INGREDIENT CALCULATIONS
+    // BATCH ORDER PROCESSING
     // ========================================
 
     /**
-     * Calculates exact ingredient requirements for a coffee order
-     * Uses precise ratios as specified in the requirements document
-     *
-     * @param order The coffee order
-     * @return IngredientRequirement object with calculated amounts
+     * Processes a batch of orders atomically - either every order is prepared or none is
+     * @param orders The coffee orders to process
+     * @return Result listing the recorded transactions and any rejected orders
      */
-    private IngredientRequirement calculateIngredientRequirements(CoffeeOrder order) {
-        double cupSize = getCupSizeInOz(order.getSize());
-        double coffeeGrams = 0;
-        double waterOz = 0;
-        double milkOz = 0;
-
-        // Calculate base drink requirements
-        switch (order.getDrinkType()) {
-            case "Americano":
-                // Americano: 1 part espresso, 2 parts water
-                double americanoEspresso = cupSize / 3.0; // 1 part out of 3 total
-                waterOz = (cupSize * 2.0) / 3.0; // 2 parts out of 3 total
-                coffeeGrams = calculateCoffeeForEspresso(americanoEspresso, order.getBrewType());
-                break;
-
-            case "Latte":
-                // Latte: 1/5 espresso, 4/5 milk
-                double latteEspresso = cupSize / 5.0;
-                milkOz = (cupSize * 4.0) / 5.0;
-                coffeeGrams = calculateCoffeeForEspresso(latteEspresso, order.getBrewType());
-                break;
-
-            case "Cappuccino":
-                // Cappuccino: 1/3 espresso, 2/3 milk
-                double cappuccinoEspresso = cupSize / 3.0;
-                milkOz = (cupSize * 2.0) / 3.0;
-                coffeeGrams = calculateCoffeeForEspresso(cappuccinoEspresso, order.getBrewType());
-                break;
-        }
-
-        // Add extra shot if requested (Special trucks only)
-        if (order.isExtraShot()) {
-            double extraShotCoffee = calculateCoffeeForEspresso(1.0, order.getBrewType());
-            coffeeGrams += extraShotCoffee;
-            // Extra shot doesn't add water for milk-based drinks, only for preparation
-        }
-
-        return new IngredientRequirement(coffeeGrams, waterOz, milkOz);
+    public BatchResult processOrders(List<CoffeeOrder> orders) {
+        return processOrders(orders, BatchPolicy.ALL_OR_NOTHING);
     }
 
     /**
-     * Calculates coffee grams needed for espresso based on brew type and ratio
-     * Uses the 1:18 standard ratio with variations for different brew strengths
+     * Processes a batch of orders in one pass
+     * Demand for the whole batch is totalled up front and reserved against a single
+     * snapshot of the bins, each bin is deducted once, and the transactions are
+     * recorded together. Only a one-line summary is printed instead of the
+     * per-order preparation steps. If orders on other threads take stock between the
+     * snapshot and the deduction, the reservation is planned again from a fresh snapshot.
      *
-     * @param espressoOz Amount of espresso in fluid ounces
-     * @param brewType Type of brew (Standard, Strong, Light, Custom)
-     * @return Coffee amount in grams
+     * @param orders The coffee orders to process, in arrival order
+     * @param policy ALL_OR_NOTHING to reject the batch on any shortage,
+     *               BEST_EFFORT to accept orders in arrival order while stock lasts
+     * @return Result listing the recorded transactions and any rejected orders
      */
-    private double calculateCoffeeForEspresso(double espressoOz, String brewType) {
-        // Convert espresso volume to water weight for brewing calculation
-        double waterInGrams = espressoOz * FL_OZ_TO_GRAMS;
-
-        // Calculate coffee based on brew ratio
-        switch (brewType) {
-            case "Strong":
-                return waterInGrams / 15.0; // 1:15 ratio
-            case "Light":
-                return waterInGrams / 20.0; // 1:20 ratio
-            default:
-                if (brewType.startsWith("Custom")) {
-                    // Parse custom ratio (format: "Custom 1:X")
-                    String[] parts = brewType.split(":");
-                    if (parts.length == 2) {
-                        try {
-                            int ratio = Integer.parseInt(parts[1]);
-                            return waterInGrams / ratio;
-                        } catch (NumberFormatException e) {
-                            // Fall back to standard if parsing fails
+    public BatchResult processOrders(List<CoffeeOrder> orders, BatchPolicy policy) {
+        int count = orders.size();
+        Recipe[] recipes = new Recipe[count];
+        for (int i = 0; i < count; i++) {
+            recipes[i] = RecipeBook.lookup(orders.get(i));
+        }
+
+        int itemCount = StockItem.values().length;
+        boolean[] accepted = new boolean[count];
+        int[] remaining = new int[itemCount];
+        int[] reserved = new int[itemCount];
+        int[] demand = new int[itemCount];
+
+        // Step 1: Plan the reservation against a snapshot, then deduct the totals
+        // once per bin; replan if another thread got to the stock first
+        boolean planned = false;
+        while (!planned) {
+            // Stock on hand by StockItem ordinal; -1 marks a missing bin so even a zero demand fails
+            StorageBin[] bins = binsByItem;
+            for (int item = 0; item < itemCount; item++) {
+                remaining[item] = bins[item] != null ? bins[item].getCurrentQuantity() : -1;
+            }
+            Arrays.fill(reserved, 0);
+
+            if (policy == BatchPolicy.ALL_OR_NOTHING) {
+                for (Recipe recipe : recipes) {
+                    addDemand(reserved, recipe);
+                }
+                boolean fits = count > 0 && fitsStock(reserved, remaining);
+                Arrays.fill(accepted, fits);
+                if (!fits) {
+                    break; // Nothing to deduct
+                }
+            } else {
+                boolean anyAccepted = false;
+                for (int i = 0; i < count; i++) {
+                    Arrays.fill(demand, 0);
+                    addDemand(demand, recipes[i]);
+                    accepted[i] = fitsStock(demand, remaining);
+                    if (accepted[i]) {
+                        anyAccepted = true;
+                        for (int item = 0; item < itemCount; item++) {
+                            remaining[item] -= demand[item];
+                            reserved[item] += demand[item];
                         }
                     }
                 }
-                return waterInGrams / 18.0; // 1:18 Standard ratio (default)
+                if (!anyAccepted) {
+                    break; // Nothing to deduct - a missing bin would fail every reservation
+                }
+            }
+
+            // Step 2: Deduct the reserved totals, once per bin
+            planned = reserveStock(reserved);
+        }
+        if (planned) {
+            takeFromFleetInventory(reserved);
+        }
+
+        // Step 3: Record transactions in bulk
+        List<Transaction> recorded = new ArrayList<>(count);
+        List<CoffeeOrder> rejected = new ArrayList<>();
+        double batchTotal = 0.0;
+        for (int i = 0; i < count; i++) {
+            CoffeeOrder order = orders.get(i);
+            if (accepted[i]) {
+                double totalPrice = calculateTotalPrice(order);
+                recorded.add(new Transaction(order, recipes[i].getRequirement(), totalPrice));
+                batchTotal += totalPrice;
+            } else {
+                rejected.add(order);
+            }
+        }
+        transactions.addAll(recorded);
+        TruckJournal journal = this.journal;
+        if (journal != null) {
+            for (Transaction transaction : recorded) {
+                journal.recordSale(transaction);
+            }
+        }
+        FleetStats fleet = this.fleet;
+        if (fleet != null) {
+            for (Transaction transaction : recorded) {
+                fleet.recordSale(transaction.getDrinkType(), transaction.getSize(), transaction.getTotalPrice());
+            }
         }
+
+        System.out.printf(">>> Batch of %d orders: %d prepared, %d rejected - Total: $%.2f%n",
+                count, recorded.size(), rejected.size(), batchTotal);
+
+        return new BatchResult(recorded, rejected);
+    }
+
+    /**
+     * Adds one recipe's ingredient and cup demand to a running total
+     * @param demand Demand by StockItem ordinal
+     * @param recipe The compiled recipe
+     */
+    private static void addDemand(int[] demand, Recipe recipe) {
+        demand[StockItem.COFFEE_BEANS.ordinal()] += recipe.getCoffeeUnits();
+        demand[StockItem.WATER.ordinal()] += recipe.getWaterUnits();
+        demand[StockItem.MILK.ordinal()] += recipe.getMilkUnits();
+        demand[recipe.getCup().ordinal()] += 1;
     }
 
     /**
-     * Gets cup size in fluid ounces based on size name
-     * @param size Cup size name (Small, Medium, Large)
-     * @return Cup size in fluid ounces
+     * Checks a demand against stock using the same rules as processOrder()
+     * Coffee, water and milk bins must exist even when a drink needs none of one;
+     * cups are only checked for the sizes actually ordered
+     *
+     * @param demand Demand by StockItem ordinal
+     * @param stock Stock by StockItem ordinal, -1 for a missing bin
+     * @return true if the demand can be met, false otherwise
      */
-    private double getCupSizeInOz(String size) {
-        switch (size) {
-            case "Small": return SMALL_CUP_SIZE;
-            case "Medium": return MEDIUM_CUP_SIZE;
-            case "Large": return LARGE_CUP_SIZE;
-            default: return SMALL_CUP_SIZE; // Default fallback
+    private static boolean fitsStock(int[] demand, int[] stock) {
+        for (StockItem item : StockItem.values()) {
+            int needed = demand[item.ordinal()];
+            boolean checked = !item.isCup() || needed > 0;
+            if (checked && needed > stock[item.ordinal()]) {
+                return false;
+            }
         }
+        return true;
     }
 
     // ========================================
@@ -257,66 +345,140 @@ abstract class CoffeeTruck {
     // ========================================
 
     /**
-     * Checks if truck has enough of a specific ingredient
-     * @param ingredient Name of the ingredient
-     * @param amount Required amount
-     * @return true if sufficient quantity available, false otherwise
+     * Replaces the storage bin in a slot and updates the bin index
+     * Bins must be replaced through here rather than through getStorageBins()
+     * so that availability checks keep finding the right slot
+     *
+     * @param slot Bin slot (0-based)
+     * @param bin The new storage bin
      */
-    private boolean isIngredientAvailable(String ingredient, double amount) {
-        for (StorageBin bin : storageBins) {
-            if (bin != null && bin.getItemType().equals(ingredient)) {
-                return bin.getCurrentQuantity() >= Math.ceil(amount);
+    public synchronized void setStorageBin(int slot, StorageBin bin) {
+        StorageBin previous = storageBins[slot];
+        storageBins[slot] = bin;
+        rebuildBinIndex();
+        if (journal != null) {
+            journal.recordSetBin(slot, bin);
+        }
+        if (fleet != null) {
+            if (previous != null) {
+                fleet.adjustInventory(previous.getItemType(), -previous.getCurrentQuantity());
+            }
+            if (bin != null) {
+                fleet.adjustInventory(bin.getItemType(), bin.getCurrentQuantity());
             }
         }
-        return false;
     }
 
     /**
-     * Checks if truck has the required cup size available
-     * @param size Cup size to check
-     * @return true if cup is available, false otherwise
+     * Adds items to the bin in a slot, respecting its capacity
+     * Holds the same lock as setStorageBin(), so the restock is counted against the
+     * bin that actually received it
+     *
+     * @param slot Bin slot (0-based)
+     * @param amount Amount to add
+     * @return Actual amount added
      */
-    private boolean isCupAvailable(String size) {
-        String cupType = size + " Cup";
-        for (StorageBin bin : storageBins) {
-            if (bin != null && bin.getItemType().equals(cupType)) {
-                return bin.getCurrentQuantity() >= 1;
+    public synchronized int restockBin(int slot, int amount) {
+        StorageBin bin = storageBins[slot];
+        if (bin == null) return 0;
+
+        int added = bin.addItems(amount);
+        TruckJournal journal = this.journal;
+        if (added > 0 && journal != null) {
+            journal.recordRestock(slot, added);
+        }
+        FleetStats fleet = this.fleet;
+        if (fleet != null) {
+            fleet.adjustInventory(bin.getItemType(), added);
+        }
+        return added;
+    }
+
+    /**
+     * Takes a reserved demand off the fleet's inventory totals
+     * @param demand Demand by StockItem ordinal
+     */
+    private void takeFromFleetInventory(int[] demand) {
+        FleetStats fleet = this.fleet;
+        if (fleet == null) return;
+
+        StockItem[] items = StockItem.values();
+        for (int item = 0; item < items.length; item++) {
+            fleet.adjustInventory(items[item].getLabel(), -demand[item]);
+        }
+    }
+
+    /**
+     * Recomputes which bin holds each stock item
+     * The first bin holding an item is the one orders draw from
+     */
+    private void rebuildBinIndex() {
+        StorageBin[] index = new StorageBin[StockItem.values().length];
+        for (int slot = storageBins.length - 1; slot >= 0; slot--) {
+            StorageBin bin = storageBins[slot];
+            if (bin != null && bin.getStockItem() != null) {
+                index[bin.getStockItem().ordinal()] = bin;
             }
         }
-        return false;
+        binsByItem = index;
     }
 
     /**
-     * Deducts ingredients from storage bins based on requirements
-     * @param requirement The ingredient requirements to deduct
+     * Gets the bin orders draw a stock item from
+     * @param item The stock item
+     * @return The storage bin, or null if no bin holds the item
      */
-    private void deductIngredientsFromStorage(IngredientRequirement requirement) {
-        deductFromStorage("Coffee Beans", (int) Math.ceil(requirement.getCoffeeGrams()));
-        deductFromStorage("Water", (int) Math.ceil(requirement.getWaterOz()));
-        deductFromStorage("Milk", (int) Math.ceil(requirement.getMilkOz()));
+    private StorageBin binFor(StockItem item) {
+        return binsByItem[item.ordinal()];
     }
 
     /**
-     * Deducts a cup from storage
-     * @param size Size of cup to deduct
+     * Checks if truck has enough of a specific ingredient
+     * @param ingredient The ingredient
+     * @param units Required amount in whole bin units
+     * @return true if sufficient quantity available, false otherwise
      */
-    private void deductCupFromStorage(String size) {
-        String cupType = size + " Cup";
-        deductFromStorage(cupType, 1);
+    private boolean isIngredientAvailable(StockItem ingredient, int units) {
+        StorageBin bin = binFor(ingredient);
+        return bin != null && bin.getCurrentQuantity() >= units;
     }
 
     /**
-     * Deducts specified amount from storage bin containing the item
-     * @param itemType Type of item to deduct
-     * @param amount Amount to deduct
+     * Checks if truck has the required cup size available
+     * @param cup Cup to check
+     * @return true if cup is available, false otherwise
      */
-    private void deductFromStorage(String itemType, int amount) {
-        for (StorageBin bin : storageBins) {
-            if (bin != null && bin.getItemType().equals(itemType)) {
-                bin.removeItems(amount);
-                break;
+    private boolean isCupAvailable(StockItem cup) {
+        StorageBin bin = binFor(cup);
+        return bin != null && bin.getCurrentQuantity() >= 1;
+    }
+
+    /**
+     * Deducts a demand from storage, all or nothing
+     * Each bin is deducted with StorageBin.tryRemoveItems(); if any bin falls short,
+     * the bins already deducted are given back and nothing is taken. Rules match
+     * fitsStock() - coffee, water and milk bins must exist, cups only when ordered.
+     *
+     * @param demand Demand by StockItem ordinal
+     * @return true if the whole demand was deducted, false if nothing was
+     */
+    private boolean reserveStock(int[] demand) {
+        StorageBin[] bins = binsByItem;
+        StockItem[] items = StockItem.values();
+        for (int item = 0; item < items.length; item++) {
+            boolean checked = !items[item].isCup() || demand[item] > 0;
+            if (checked && (bins[item] == null || !bins[item].tryRemoveItems(demand[item]))) {
+                // Give back what this reservation already took - all of it, even if a
+                // restock has filled the bin in the meantime
+                for (int taken = 0; taken < item; taken++) {
+                    if (demand[taken] > 0 && bins[taken] != null) {
+                        bins[taken].returnItems(demand[taken]);
+                    }
+                }
+                return false;
             }
         }
+        return true;
     }
 
     // ========================================
@@ -324,54 +486,40 @@ abstract class CoffeeTruck {
     // ========================================
 
     /**
-     * Displays step-by-step preparation process matching specification examples
+     * Writes step-by-step preparation process matching specification examples
+     * @param receipt Receipt the steps are appended to
      * @param order The coffee order being prepared
-     * @param requirement The calculated ingredient requirements
+     * @param recipe The compiled recipe of the order
      */
-    private void displayPreparationProcess(CoffeeOrder order, IngredientRequirement requirement) {
-        String brewDescription = getBrewDescription(order.getBrewType());
+    private void displayPreparationProcess(StringBuilder receipt, CoffeeOrder order, Recipe recipe) {
+        IngredientRequirement requirement = recipe.getRequirement();
+        String brewDescription = recipe.getBrewDescription();
 
         // Display brewing step with exact coffee amount
-        System.out.printf(">>> Brewing %s espresso - %.2f grams of coffee...%n",
-                brewDescription, requirement.getCoffeeGrams());
+        receipt.append(String.format(">>> Brewing %s espresso - %.2f grams of coffee...%n",
+                brewDescription, requirement.getCoffeeGrams()));
 
         // Display milk addition for milk-based drinks
         if (requirement.getMilkOz() > 0) {
-            System.out.println(">>> Adding Milk...");
+            receipt.append(">>> Adding Milk...").append(System.lineSeparator());
         }
 
         // Display water addition for Americano
         if (order.getDrinkType().equals("Americano") && requirement.getWaterOz() > 0) {
-            System.out.println(">>> Adding Water...");
+            receipt.append(">>> Adding Water...").append(System.lineSeparator());
         }
 
         // Display add-ons for special trucks
         if (order.getAddons() != null && !order.getAddons().isEmpty()) {
             for (String addon : order.getAddons()) {
-                System.out.println(">>> Adding " + addon + "...");
+                receipt.append(">>> Adding ").append(addon).append("...").append(System.lineSeparator());
             }
         }
 
         // Display extra shot preparation
         if (order.isExtraShot()) {
-            double extraShotCoffee = calculateCoffeeForEspresso(1.0, order.getBrewType());
-            System.out.printf(">>> Adding an extra shot of %s brew espresso - %.2f grams of coffee.%n",
-                    brewDescription, extraShotCoffee);
-        }
-    }
-
-    /**
-     * Gets human-readable brew description for display
-     * @param brewType The brew type code
-     * @return Formatted brew description
-     */
-    private String getBrewDescription(String brewType) {
-        switch (brewType) {
-            case "Strong": return "Strong";
-            case "Light": return "Light";
-            default:
-                if (brewType.startsWith("Custom")) return "Custom";
-                return "Standard";
+            receipt.append(String.format(">>> Adding an extra shot of %s brew espresso - %.2f grams of coffee.%n",
+                    brewDescription, recipe.getExtraShotCoffeeGrams()));
         }
     }
 
@@ -421,6 +569,9 @@ abstract class CoffeeTruck {
         Map<String, Double> drinkPricing = pricing.get(drinkType);
         if (drinkPricing != null) {
             drinkPricing.put(size, price);
+            if (journal != null) {
+                journal.recordPrice(drinkType, size, price);
+            }
         }
     }
 
@@ -522,9 +673,50 @@ abstract class CoffeeTruck {
     // ========================================
 
     public String getLocation() { return location; }
-    public void setLocation(String location) { this.location = location; }
-    public StorageBin[] getStorageBins() { return storageBins; }
-    public List<Transaction> getTransactions() { return transactions; }
+    public void setLocation(String location) {
+        this.location = location;
+        if (journal != null) {
+            journal.recordLocation(location);
+        }
+    }
+    public StorageBin[] getStorageBins() { return storageBins; } // Read-only use - replace bins with setStorageBin()
+
+    /**
+     * Gets a snapshot of the recorded transactions, rebuilt from the transaction store
+     * Reports over long histories should scan getTransactionStore() instead
+     * @return Transactions recorded so far
+     */
+    public List<Transaction> getTransactions() { return transactions.toList(); }
+    public TransactionStore getTransactionStore() { return transactions; }
+
+    /**
+     * Adds a transaction recovered from a journal, without recording it again
+     * @param transaction The recovered transaction
+     */
+    void restoreTransaction(Transaction transaction) {
+        transactions.add(transaction);
+    }
+
+    /**
+     * Starts recording this truck's sales and inventory changes
+     * @param journal Journal to record to, or null to stop recording
+     */
+    public void attachJournal(TruckJournal journal) { this.journal = journal; }
+    public TruckJournal getJournal() { return journal; }
+
+    /**
+     * Adds this truck to a fleet's running totals and keeps them up to date from now on
+     * The fleet is published before the truck's stock and sales are added to it, so
+     * no later sale goes uncounted. Restocks and bin replacements wait on the truck's
+     * lock until the totals are seeded. Join a truck before it takes orders: an order
+     * being prepared at that moment could be counted twice.
+     *
+     * @param fleet The fleet's statistics
+     */
+    public synchronized void joinFleet(FleetStats fleet) {
+        this.fleet = fleet;
+        fleet.addTruck(this);
+    }
 }
 
 // ========================================
@@ -569,8 +761,9 @@ class SpecialCoffeeTruck extends CoffeeTruck {
     // INSTANCE VARIABLES
     // ========================================
 
-    private double syrupPrice;
-    private double extraShotPrice;
+    // Volatile so order threads see price changes; each is read once per order
+    private volatile double syrupPrice;
+    private volatile double extraShotPrice;
 
     // ========================================
     // CONSTRUCTOR
@@ -581,8 +774,7 @@ class SpecialCoffeeTruck extends CoffeeTruck {
      * @param location Truck deployment location
      */
     public SpecialCoffeeTruck(String location) {
-        super(location);
-        this.storageBins = new StorageBin[10]; // Special trucks have 10 bins (8 + 2 for syrups)
+        super(location, 10); // Special trucks have 10 bins (8 + 2 for syrups)
         this.syrupPrice = 0.0;
         this.extraShotPrice = 0.0;
     }
@@ -621,6 +813,9 @@ class SpecialCoffeeTruck extends CoffeeTruck {
     public void setAddonPricing(double syrupPrice, double extraShotPrice) {
         this.syrupPrice = syrupPrice;
         this.extraShotPrice = extraShotPrice;
+        if (journal != null) {
+            journal.recordAddonPricing(syrupPrice, extraShotPrice);
+        }
     }
 
     // ========================================
@@ -665,6 +860,13 @@ class SpecialCoffeeTruck extends CoffeeTruck {
 
         return availableSyrups;
     }
+
+    // ========================================
+    // GETTERS
+    // ========================================
+
+    public double getSyrupPrice() { return syrupPrice; }
+    public double getExtraShotPrice() { return extraShotPrice; }
 }
 
 // ========================================
@@ -674,6 +876,9 @@ class SpecialCoffeeTruck extends CoffeeTruck {
 /**
  * Storage bin class to hold ingredients and cups
  * Manages capacity limits and inventory tracking
+ * Thread-safe: the quantity only changes atomically, so it never goes below zero
+ * however many orders draw on the bin at once. Restocks never fill it past capacity;
+ * only stock handed back by a failed reservation can briefly leave it above.
  */
 class StorageBin {
 
@@ -681,9 +886,10 @@ class StorageBin {
     // INSTANCE VARIABLES
     // ========================================
 
-    private String itemType;
-    private int currentQuantity;
-    private int maxCapacity;
+    private final String itemType;
+    private final StockItem stockItem; // Resolved once so lookups never compare strings
+    private final AtomicInteger currentQuantity;
+    private final int maxCapacity;
 
     // ========================================
     // CONSTRUCTOR
@@ -697,13 +903,11 @@ class StorageBin {
      */
     public StorageBin(String itemType, int currentQuantity, int maxCapacity) {
         this.itemType = itemType;
-        this.currentQuantity = Math.max(0, currentQuantity);
+        this.stockItem = StockItem.fromLabel(itemType);
         this.maxCapacity = Math.max(0, maxCapacity);
 
         // Ensure current quantity doesn't exceed capacity
-        if (this.currentQuantity > this.maxCapacity) {
-            this.currentQuantity = this.maxCapacity;
-        }
+        this.currentQuantity = new AtomicInteger(Math.min(Math.max(0, currentQuantity), this.maxCapacity));
     }
 
     // ========================================
@@ -718,11 +922,13 @@ class StorageBin {
     public int addItems(int amount) {
         if (amount <= 0) return 0;
 
-        int spaceAvailable = maxCapacity - currentQuantity;
-        int amountToAdd = Math.min(amount, spaceAvailable);
-        currentQuantity += amountToAdd;
-
-        return amountToAdd;
+        while (true) {
+            int current = currentQuantity.get();
+            int amountToAdd = Math.max(0, Math.min(amount, maxCapacity - current));
+            if (currentQuantity.compareAndSet(current, current + amountToAdd)) {
+                return amountToAdd;
+            }
+        }
     }
 
     /**
@@ -733,10 +939,46 @@ class StorageBin {
     public int removeItems(int amount) {
         if (amount <= 0) return 0;
 
-        int amountToRemove = Math.min(amount, currentQuantity);
-        currentQuantity -= amountToRemove;
+        while (true) {
+            int current = currentQuantity.get();
+            int amountToRemove = Math.min(amount, current);
+            if (currentQuantity.compareAndSet(current, current - amountToRemove)) {
+                return amountToRemove;
+            }
+        }
+    }
+
+    /**
+     * Removes exactly the given amount, or nothing if the bin holds less
+     * Orders use this so a sale is never made from stock another order already took
+     * @param amount Amount to remove
+     * @return true if the amount was removed, false if the bin was left untouched
+     */
+    public boolean tryRemoveItems(int amount) {
+        if (amount <= 0) return true;
 
-        return amountToRemove;
+        while (true) {
+            int current = currentQuantity.get();
+            if (current < amount) {
+                return false;
+            }
+            if (currentQuantity.compareAndSet(current, current - amount)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Puts back items that were taken from this bin, ignoring capacity
+     * A reservation that fails part-way hands its stock back through here. A restock
+     * may have refilled the bin in the meantime, and capping the return would lose units
+     * that no journal record or fleet total knows were lost.
+     * @param amount Amount to put back
+     */
+    void returnItems(int amount) {
+        if (amount > 0) {
+            currentQuantity.addAndGet(amount);
+        }
     }
 
     /**
@@ -745,7 +987,7 @@ class StorageBin {
      * @return true if sufficient, false otherwise
      */
     public boolean hasSufficientQuantity(int requiredAmount) {
-        return currentQuantity >= requiredAmount;
+        return currentQuantity.get() >= requiredAmount;
     }
 
     /**
@@ -754,7 +996,7 @@ class StorageBin {
      */
     public double getUsagePercentage() {
         if (maxCapacity == 0) return 0.0;
-        return (double) currentQuantity / maxCapacity * 100.0;
+        return (double) currentQuantity.get() / maxCapacity * 100.0;
     }
 
     // ========================================
@@ -762,11 +1004,12 @@ class StorageBin {
     // ========================================
 
     public String getItemType() { return itemType; }
-    public int getCurrentQuantity() { return currentQuantity; }
+    public StockItem getStockItem() { return stockItem; }
+    public int getCurrentQuantity() { return currentQuantity.get(); }
     public int getMaxCapacity() { return maxCapacity; }
-    public int getAvailableSpace() { return maxCapacity - currentQuantity; }
-    public boolean isEmpty() { return currentQuantity == 0; }
-    public boolean isFull() { return currentQuantity >= maxCapacity; }
+    public int getAvailableSpace() { return maxCapacity - currentQuantity.get(); }
+    public boolean isEmpty() { return currentQuantity.get() == 0; }
+    public boolean isFull() { return currentQuantity.get() >= maxCapacity; }
 }
 
 // ========================================
@@ -971,16 +1214,47 @@ class Transaction {
      * @param totalPrice Total price of the transaction
      */
     public Transaction(CoffeeOrder order, IngredientRequirement requirement, double totalPrice) {
-        this.drinkType = order.getDrinkType();
-        this.size = order.getSize();
-        this.brewType = order.getBrewType();
-        this.addons = new ArrayList<>(order.getAddons());
-        this.extraShot = order.isExtraShot();
-        this.coffeeUsed = requirement.getCoffeeGrams();
-        this.waterUsed = requirement.getWaterOz();
-        this.milkUsed = requirement.getMilkOz();
+        this(order, requirement, totalPrice, System.currentTimeMillis());
+    }
+
+    /**
+     * Constructor for Transaction with a known sale time, used when recovering from a journal
+     * @param order The coffee order
+     * @param requirement The ingredient requirements
+     * @param totalPrice Total price of the transaction
+     * @param timestamp Time of the sale in epoch milliseconds
+     */
+    Transaction(CoffeeOrder order, IngredientRequirement requirement, double totalPrice, long timestamp) {
+        this(order.getDrinkType(), order.getSize(), order.getBrewType(), order.getAddons(), order.isExtraShot(),
+                requirement.getCoffeeGrams(), requirement.getWaterOz(), requirement.getMilkOz(),
+                totalPrice, timestamp);
+    }
+
+    /**
+     * Constructor for Transaction from its stored fields, used by TransactionStore
+     * @param drinkType Type of drink
+     * @param size Size of drink
+     * @param brewType Brew strength
+     * @param addons Syrup add-ons
+     * @param extraShot Whether an extra shot was added
+     * @param coffeeUsed Coffee used in grams
+     * @param waterUsed Water used in fl. oz.
+     * @param milkUsed Milk used in fl. oz.
+     * @param totalPrice Total price of the transaction
+     * @param timestamp Time of the sale in epoch milliseconds
+     */
+    Transaction(String drinkType, String size, String brewType, List<String> addons, boolean extraShot,
+                double coffeeUsed, double waterUsed, double milkUsed, double totalPrice, long timestamp) {
+        this.drinkType = drinkType;
+        this.size = size;
+        this.brewType = brewType;
+        this.addons = new ArrayList<>(addons);
+        this.extraShot = extraShot;
+        this.coffeeUsed = coffeeUsed;
+        this.waterUsed = waterUsed;
+        this.milkUsed = milkUsed;
         this.totalPrice = totalPrice;
-        this.timestamp = System.currentTimeMillis();
+        this.timestamp = timestamp;
     }
 
     // ========================================
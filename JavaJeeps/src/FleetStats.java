@@ -0,0 +1,169 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+// ========================================
+// FLEET STATISTICS
+// ========================================
+
+/**
+ * Running totals across every truck in the fleet, for the dashboard
+ *
+ * Trucks that have joined the fleet update these totals as each sale, restock,
+ * bin replacement or bin emptying happens, so reading them costs the same however
+ * many trucks or sales there are. Totals are kept in adders, so trucks taking orders
+ * on many threads update them without contending on a lock.
+ */
+class FleetStats {
+
+    // ========================================
+    // INSTANCE VARIABLES
+    // ========================================
+
+    private final LongAdder regularTrucks = new LongAdder();
+    private final LongAdder specialTrucks = new LongAdder();
+
+    // Units on hand per bin item type (e.g. "Milk", "Vanilla Syrup")
+    private final Map<String, LongAdder> inventory = new ConcurrentHashMap<>();
+
+    // Sales per drink, then per size
+    private final Map<String, Map<String, SalesCell>> sales = new ConcurrentHashMap<>();
+    private final LongAdder transactions = new LongAdder();
+    private final DoubleAdder revenue = new DoubleAdder();
+
+    // ========================================
+    // UPDATES
+    // ========================================
+
+    /**
+     * Adds a truck's current inventory and sales history to the totals
+     * Called once, when the truck joins the fleet; after that the truck keeps
+     * the totals up to date itself.
+     *
+     * @param truck The truck joining the fleet
+     */
+    public void addTruck(CoffeeTruck truck) {
+        if (truck instanceof SpecialCoffeeTruck) {
+            specialTrucks.increment();
+        } else {
+            regularTrucks.increment();
+        }
+
+        for (StorageBin bin : truck.getStorageBins()) {
+            if (bin != null) {
+                adjustInventory(bin.getItemType(), bin.getCurrentQuantity());
+            }
+        }
+
+        truck.getTransactionStore().forEachDrinkAndSize((drinkType, size, count, total) -> {
+            SalesCell cell = cellFor(drinkType, size);
+            cell.count.add(count);
+            cell.revenue.add(total);
+            transactions.add(count);
+            revenue.add(total);
+        });
+    }
+
+    /**
+     * Adjusts the units on hand of one item type
+     * @param itemType Bin item type
+     * @param delta Units added (positive) or taken (negative)
+     */
+    public void adjustInventory(String itemType, long delta) {
+        if (delta != 0) {
+            inventory.computeIfAbsent(itemType, type -> new LongAdder()).add(delta);
+        }
+    }
+
+    /**
+     * Adds a completed sale to the totals
+     * @param drinkType Type of drink
+     * @param size Size of drink
+     * @param price Total price of the sale
+     */
+    public void recordSale(String drinkType, String size, double price) {
+        SalesCell cell = cellFor(drinkType, size);
+        cell.count.increment();
+        cell.revenue.add(price);
+        transactions.increment();
+        revenue.add(price);
+    }
+
+    private SalesCell cellFor(String drinkType, String size) {
+        return sales.computeIfAbsent(drinkType, drink -> new ConcurrentHashMap<>())
+                .computeIfAbsent(size, key -> new SalesCell(drinkType + " (" + key + ")"));
+    }
+
+    // ========================================
+    // READING TOTALS
+    // ========================================
+
+    /**
+     * Gets the units on hand per item type across the fleet
+     * Matches the dashboard's old bin walk: empty bins and items with nothing left are left out.
+     * @return Map of item types to total quantities
+     */
+    public Map<String, Integer> getInventory() {
+        Map<String, Integer> totals = new HashMap<>();
+        for (Map.Entry<String, LongAdder> entry : inventory.entrySet()) {
+            long quantity = entry.getValue().sum();
+            if (quantity > 0 && !entry.getKey().equals("Empty")) {
+                totals.put(entry.getKey(), (int) quantity);
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Gets sales counts per "Drink (Size)" key
+     * @return Map of drink keys to number of sales
+     */
+    public Map<String, Integer> getSalesCounts() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Map<String, SalesCell> sizes : sales.values()) {
+            for (SalesCell cell : sizes.values()) {
+                counts.put(cell.key, (int) cell.count.sum());
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Gets revenue per "Drink (Size)" key
+     * @return Map of drink keys to revenue
+     */
+    public Map<String, Double> getSalesRevenue() {
+        Map<String, Double> totals = new HashMap<>();
+        for (Map<String, SalesCell> sizes : sales.values()) {
+            for (SalesCell cell : sizes.values()) {
+                totals.put(cell.key, cell.revenue.sum());
+            }
+        }
+        return totals;
+    }
+
+    public int getRegularTrucks() { return regularTrucks.intValue(); }
+    public int getSpecialTrucks() { return specialTrucks.intValue(); }
+    public int getTransactionCount() { return transactions.intValue(); }
+    public double getTotalRevenue() { return revenue.sum(); }
+
+    // ========================================
+    // SALES CELL
+    // ========================================
+
+    /**
+     * Sales count and revenue for one drink and size, with its report key built once
+     */
+    private static final class SalesCell {
+
+        private final String key;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder revenue = new DoubleAdder();
+
+        SalesCell(String key) {
+            this.key = key;
+        }
+    }
+}
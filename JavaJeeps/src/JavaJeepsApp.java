@@ -1,3 +1,7 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 
 /**
@@ -19,6 +23,12 @@ public class JavaJeepsApp {
 
     private static Scanner scanner = new Scanner(System.in);
     private static List<CoffeeTruck> trucks = new ArrayList<>();
+    private static FleetStats fleet = new FleetStats(); // Dashboard totals, kept up to date by the trucks
+
+    // Trucks are journaled to truck-<id>.jnl files here so they survive a restart or crash
+    private static Path journalDir = Paths.get("javajeeps-journal");
+    private static boolean journaling = true;
+    private static int nextJournalId = 1;
 
     // ========================================
     // MAIN METHOD
@@ -28,10 +38,32 @@ public class JavaJeepsApp {
      * Main method to start the JavaJeeps application
      * Displays welcome message and runs the main menu loop
      *
-     * @param args Command line arguments (not used)
+     * @param args Command line arguments:
+     *             --journal-dir DIR keeps truck journals in DIR (default javajeeps-journal),
+     *             --no-journal keeps trucks in memory only,
+     *             --stress-check runs the concurrency check instead
      */
     public static void main(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--stress-check":
+                    System.exit(runStressCheck() ? 0 : 1);
+                    break;
+                case "--no-journal":
+                    journaling = false;
+                    break;
+                case "--journal-dir":
+                    if (i + 1 < args.length) {
+                        journalDir = Paths.get(args[++i]);
+                    }
+                    break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+            }
+        }
+
         displayWelcomeMessage();
+        recoverTrucks();
         runMainMenuLoop();
         cleanup();
     }
@@ -174,6 +206,8 @@ public class JavaJeepsApp {
 
         // Add truck to fleet
         trucks.add(newTruck);
+        newTruck.joinFleet(fleet);
+        startJournal(newTruck);
 
         System.out.println("Coffee truck created successfully!");
         System.out.println("Location: " + location);
@@ -255,7 +289,7 @@ public class JavaJeepsApp {
             int itemChoice = getIntInput("Select item for bin " + (i + 1) + " (0 to skip): ");
 
             if (itemChoice == 0) {
-                bins[i] = new StorageBin("Empty", 0, 0);
+                truck.setStorageBin(i, new StorageBin("Empty", 0, 0));
                 System.out.println("Bin " + (i + 1) + " left empty");
                 continue;
             }
@@ -267,7 +301,7 @@ public class JavaJeepsApp {
             }
 
             int quantity = getQuantityForItem(config);
-            bins[i] = new StorageBin(config.itemType, quantity, config.maxCapacity);
+            truck.setStorageBin(i, new StorageBin(config.itemType, quantity, config.maxCapacity));
 
             System.out.println("Bin " + (i + 1) + " configured: " +
                     config.itemType + " (" + quantity + "/" + config.maxCapacity + ")");
@@ -317,12 +351,12 @@ public class JavaJeepsApp {
      */
     private static ItemConfig getItemConfig(int choice, CoffeeTruck truck, int binIndex) {
         switch (choice) {
-            case 1: return new ItemConfig("Small Cup", 80);
-            case 2: return new ItemConfig("Medium Cup", 64);
-            case 3: return new ItemConfig("Large Cup", 40);
-            case 4: return new ItemConfig("Coffee Beans", 1008);
-            case 5: return new ItemConfig("Milk", 640);
-            case 6: return new ItemConfig("Water", 640);
+            case 1: return new ItemConfig(StockItem.SMALL_CUP.getLabel(), 80);
+            case 2: return new ItemConfig(StockItem.MEDIUM_CUP.getLabel(), 64);
+            case 3: return new ItemConfig(StockItem.LARGE_CUP.getLabel(), 40);
+            case 4: return new ItemConfig(StockItem.COFFEE_BEANS.getLabel(), 1008);
+            case 5: return new ItemConfig(StockItem.MILK.getLabel(), 640);
+            case 6: return new ItemConfig(StockItem.WATER.getLabel(), 640);
             case 7:
                 if (truck instanceof SpecialCoffeeTruck && binIndex >= 8) {
                     return getSyrupConfig();
@@ -474,6 +508,9 @@ public class JavaJeepsApp {
                     System.out.println("Invalid choice! Please select 1-4.");
             }
 
+            // Make the sale or inventory change durable before moving on
+            syncJournal(truck);
+
             if (simulating) {
                 pauseForUser();
             }
@@ -796,7 +833,7 @@ public class JavaJeepsApp {
             return;
         }
 
-        bin.addItems(addQuantity);
+        truck.restockBin(binNumber - 1, addQuantity);
         System.out.println("Bin " + binNumber + " restocked successfully!");
         System.out.println("Current: " + bin.getCurrentQuantity() + "/" + bin.getMaxCapacity());
     }
@@ -828,7 +865,7 @@ public class JavaJeepsApp {
         if (config == null) return;
 
         int quantity = getQuantityForItem(config);
-        truck.getStorageBins()[binNumber - 1] = new StorageBin(config.itemType, quantity, config.maxCapacity);
+        truck.setStorageBin(binNumber - 1, new StorageBin(config.itemType, quantity, config.maxCapacity));
 
         System.out.println("Bin " + binNumber + " contents replaced successfully!");
         System.out.println("New contents: " + config.itemType + " (" + quantity + "/" + config.maxCapacity + ")");
@@ -858,7 +895,7 @@ public class JavaJeepsApp {
                     " (" + currentBin.getCurrentQuantity() + " units)");
 
             if (getYesNoInput("Are you sure you want to empty this bin? (y/n): ")) {
-                truck.getStorageBins()[binNumber - 1] = new StorageBin("Empty", 0, 0);
+                truck.setStorageBin(binNumber - 1, new StorageBin("Empty", 0, 0));
                 System.out.println("Bin " + binNumber + " emptied successfully!");
             } else {
                 System.out.println("Operation cancelled.");
@@ -943,19 +980,8 @@ public class JavaJeepsApp {
         System.out.println("TRUCK DEPLOYMENT SUMMARY");
         System.out.println("-".repeat(40));
 
-        int regularTrucks = 0;
-        int specialTrucks = 0;
-
-        for (CoffeeTruck truck : trucks) {
-            if (truck instanceof RegularCoffeeTruck) {
-                regularTrucks++;
-            } else if (truck instanceof SpecialCoffeeTruck) {
-                specialTrucks++;
-            }
-        }
-
-        System.out.println("Regular Trucks (JavaJeep): " + regularTrucks);
-        System.out.println("Special Trucks (JavaJeep+): " + specialTrucks);
+        System.out.println("Regular Trucks (JavaJeep): " + fleet.getRegularTrucks());
+        System.out.println("Special Trucks (JavaJeep+): " + fleet.getSpecialTrucks());
         System.out.println("Total Trucks Deployed: " + trucks.size());
 
         // List all truck locations
@@ -987,21 +1013,11 @@ public class JavaJeepsApp {
     }
 
     /**
-     * Calculates total inventory across all trucks
+     * Gets total inventory across all trucks from the fleet's running totals
      * @return Map of item types to total quantities
      */
     private static Map<String, Integer> calculateTotalInventory() {
-        Map<String, Integer> totalInventory = new HashMap<>();
-
-        for (CoffeeTruck truck : trucks) {
-            for (StorageBin bin : truck.getStorageBins()) {
-                if (bin != null && !bin.getItemType().equals("Empty") && bin.getCurrentQuantity() > 0) {
-                    totalInventory.merge(bin.getItemType(), bin.getCurrentQuantity(), Integer::sum);
-                }
-            }
-        }
-
-        return totalInventory;
+        return fleet.getInventory();
     }
 
     /**
@@ -1053,22 +1069,11 @@ public class JavaJeepsApp {
         System.out.println("TRANSACTION SUMMARY");
         System.out.println("-".repeat(40));
 
-        Map<String, Integer> drinkCounts = new HashMap<>();
-        Map<String, Double> drinkRevenue = new HashMap<>();
-        double totalRevenue = 0.0;
-        int totalTransactions = 0;
-
-        // Collect transaction data
-        for (CoffeeTruck truck : trucks) {
-            for (Transaction transaction : truck.getTransactions()) {
-                String drinkKey = transaction.getDrinkType() + " (" + transaction.getSize() + ")";
-
-                drinkCounts.merge(drinkKey, 1, Integer::sum);
-                drinkRevenue.merge(drinkKey, transaction.getTotalPrice(), Double::sum);
-                totalRevenue += transaction.getTotalPrice();
-                totalTransactions++;
-            }
-        }
+        // Sales totals are kept up to date by the trucks as each order is made
+        Map<String, Integer> drinkCounts = fleet.getSalesCounts();
+        Map<String, Double> drinkRevenue = fleet.getSalesRevenue();
+        double totalRevenue = fleet.getTotalRevenue();
+        int totalTransactions = fleet.getTransactionCount();
 
         if (totalTransactions == 0) {
             System.out.println("No transactions recorded yet.");
@@ -1222,9 +1227,341 @@ public class JavaJeepsApp {
      * Cleanup method called before application exit
      */
     private static void cleanup() {
+        closeJournals();
         scanner.close();
         System.out.println("Thanks for choosing JavaJeeps!");
         System.out.println("Your mobile coffee adventure ends here.");
         System.out.println("Come back anytime for more coffee truck simulation!");
     }
-}
\ No newline at end of file
+
+    // ========================================
+    // JOURNALING
+    // ========================================
+
+    /**
+     * Rebuilds the fleet from the journals left by earlier runs
+     * Each recovered truck gets a fresh journal holding just its snapshot, which
+     * also drops any record torn by a crash.
+     */
+    private static void recoverTrucks() {
+        if (!journaling || !Files.isDirectory(journalDir)) return;
+
+        List<Integer> ids = new ArrayList<>();
+        try (java.util.stream.Stream<Path> files = Files.list(journalDir)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.matches("truck-\\d+\\.jnl")) {
+                    ids.add(Integer.parseInt(name.substring(6, name.length() - 4)));
+                }
+            });
+        } catch (IOException e) {
+            System.out.println("Could not read journal directory " + journalDir + ": " + e.getMessage());
+            return;
+        }
+        Collections.sort(ids);
+
+        for (int id : ids) {
+            Path file = journalFile(id);
+            try {
+                CoffeeTruck truck = TruckJournal.recover(file);
+                truck.attachJournal(TruckJournal.create(file, truck));
+                trucks.add(truck);
+                truck.joinFleet(fleet);
+            } catch (IOException e) {
+                System.out.println("Could not recover " + file + ": " + e.getMessage());
+            }
+            nextJournalId = Math.max(nextJournalId, id + 1);
+        }
+
+        if (!trucks.isEmpty()) {
+            System.out.println("Recovered " + trucks.size() + " truck(s) from " + journalDir);
+            System.out.println();
+        }
+    }
+
+    /**
+     * Starts journaling a newly created truck
+     * @param truck The truck to journal
+     */
+    private static void startJournal(CoffeeTruck truck) {
+        if (!journaling) return;
+
+        Path file = journalFile(nextJournalId++);
+        try {
+            Files.createDirectories(journalDir);
+            truck.attachJournal(TruckJournal.create(file, truck));
+        } catch (IOException e) {
+            System.out.println("Journaling unavailable - this truck will not survive a restart: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Waits for a truck's journal to reach the disk
+     * @param truck The truck whose journal to sync
+     */
+    private static void syncJournal(CoffeeTruck truck) {
+        TruckJournal journal = truck.getJournal();
+        if (journal == null) return;
+
+        try {
+            journal.sync();
+        } catch (java.io.UncheckedIOException e) {
+            System.out.println("Journal write failed - recent changes may be lost: " + e.getCause().getMessage());
+            truck.attachJournal(null);
+        }
+    }
+
+    /**
+     * Compacts every journal into a snapshot and closes it
+     */
+    private static void closeJournals() {
+        for (CoffeeTruck truck : trucks) {
+            TruckJournal journal = truck.getJournal();
+            if (journal == null) continue;
+
+            try {
+                journal.checkpoint();
+                journal.close();
+            } catch (IOException | java.io.UncheckedIOException e) {
+                System.out.println("Could not save journal " + journal.getPath() + ": " + e.getMessage());
+            }
+            truck.attachJournal(null);
+        }
+    }
+
+    /**
+     * Gets the journal file for a truck
+     * @param id Journal id
+     * @return Path of the journal file
+     */
+    private static Path journalFile(int id) {
+        return journalDir.resolve("truck-" + id + ".jnl");
+    }
+
+    // ========================================
+    // CONCURRENCY STRESS CHECK
+    // ========================================
+
+    private static final int STRESS_ORDERS = 16000;
+    private static final int STRESS_BATCH_SIZE = 10;
+
+    /**
+     * Runs the stress round on a single thread and then on many, so the throughput
+     * of the two can be compared
+     * @return true if both rounds passed, false otherwise
+     */
+    private static boolean runStressCheck() {
+        int[] threadCounts = {1, Math.max(8, Runtime.getRuntime().availableProcessors() * 4)};
+        double[] ordersPerSecond = new double[threadCounts.length];
+
+        // Warm the JIT up first, so the single-thread round is not timed while code compiles
+        java.io.PrintStream console = System.out;
+        System.setOut(new java.io.PrintStream(java.io.OutputStream.nullOutputStream()));
+        boolean passed = runStressRound(threadCounts[1], ordersPerSecond, 1);
+        System.setOut(console);
+
+        for (int i = 0; i < threadCounts.length; i++) {
+            System.out.println("Stress round with " + threadCounts[i] + " thread(s):");
+            passed &= runStressRound(threadCounts[i], ordersPerSecond, i);
+        }
+        System.out.printf("Throughput %d -> %d threads: %.2fx on %d cores%n", threadCounts[0], threadCounts[1],
+                ordersPerSecond[1] / ordersPerSecond[0], Runtime.getRuntime().availableProcessors());
+        System.out.println("Stress check: " + (passed ? "PASS" : "FAIL"));
+        return passed;
+    }
+
+    /**
+     * Hammers one truck with orders from several threads and checks nothing was oversold
+     * Stock is sized to run out part-way, so most late orders race for the last units.
+     * The cup bins start full, so restocks keep hitting capacity while failed
+     * reservations hand cups back.
+     * Threads mix single orders, best-effort batches and cup restocks; afterwards every
+     * bin must match its starting level plus restocks minus what the recorded sales used,
+     * and every successful sale must have its transaction. The truck is journaled to a
+     * temporary file throughout, and recovering from that file must give the same state.
+     * The truck also feeds its own FleetStats, whose running totals must match the bins
+     * and the transaction store at the end.
+     *
+     * @param threads Number of ordering threads
+     * @param ordersPerSecond Receives the round's throughput
+     * @param round Index in ordersPerSecond to store it at
+     * @return true if the round passed, false otherwise
+     */
+    private static boolean runStressRound(int threads, double[] ordersPerSecond, int round) {
+        int ordersPerThread = STRESS_ORDERS / threads;
+        SpecialCoffeeTruck truck = new SpecialCoffeeTruck("Stress Test");
+        truck.setStorageBin(0, new StorageBin(StockItem.SMALL_CUP.getLabel(), 2000, 2000));
+        truck.setStorageBin(1, new StorageBin(StockItem.MEDIUM_CUP.getLabel(), 1500, 1500));
+        truck.setStorageBin(2, new StorageBin(StockItem.LARGE_CUP.getLabel(), 1000, 1000));
+        truck.setStorageBin(3, new StorageBin(StockItem.COFFEE_BEANS.getLabel(), 60000, 100000));
+        truck.setStorageBin(4, new StorageBin(StockItem.MILK.getLabel(), 30000, 100000));
+        truck.setStorageBin(5, new StorageBin(StockItem.WATER.getLabel(), 30000, 100000));
+        truck.setPricing("Latte", "Small", 3.0);
+
+        FleetStats stressFleet = new FleetStats();
+        truck.joinFleet(stressFleet);
+
+        Path journalFile;
+        try {
+            journalFile = Files.createTempFile("javajeeps-stress", ".jnl");
+            truck.attachJournal(TruckJournal.create(journalFile, truck));
+        } catch (IOException e) {
+            System.out.println("  Stress round could not create its journal: " + e.getMessage());
+            return false;
+        }
+
+        StockItem[] items = StockItem.values();
+        int[] startLevels = stockLevels(truck, items);
+        long[] consumed = new long[items.length];
+        long[] restocked = new long[items.length];
+        long[] sales = new long[1];
+
+        String[] drinks = {"Americano", "Latte", "Cappuccino"};
+        String[] sizes = {"Small", "Medium", "Large"};
+        String[] brews = {"Standard", "Strong", "Light", "Custom 1:16"};
+
+        // The receipts of thousands of orders would swamp the check's own output
+        java.io.PrintStream console = System.out;
+        System.setOut(new java.io.PrintStream(java.io.OutputStream.nullOutputStream()));
+
+        java.util.concurrent.ExecutorService pool = java.util.concurrent.Executors.newFixedThreadPool(threads);
+        java.util.concurrent.CountDownLatch start = new java.util.concurrent.CountDownLatch(1);
+        List<java.util.concurrent.Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            workers.add(pool.submit(() -> {
+                Random random = new Random(seed);
+                long[] myConsumed = new long[items.length];
+                long[] myRestocked = new long[items.length];
+                long mySales = 0;
+                start.await();
+
+                for (int n = 0; n < ordersPerThread; n += STRESS_BATCH_SIZE) {
+                    List<CoffeeOrder> orders = new ArrayList<>(STRESS_BATCH_SIZE);
+                    for (int i = 0; i < STRESS_BATCH_SIZE; i++) {
+                        orders.add(new CoffeeOrder(drinks[random.nextInt(drinks.length)],
+                                sizes[random.nextInt(sizes.length)], brews[random.nextInt(brews.length)],
+                                null, random.nextBoolean()));
+                    }
+
+                    List<CoffeeOrder> sold = new ArrayList<>();
+                    if (random.nextInt(4) == 0) {
+                        Set<CoffeeOrder> rejected = Collections.newSetFromMap(new IdentityHashMap<>());
+                        rejected.addAll(truck.processOrders(orders, BatchPolicy.BEST_EFFORT).getRejectedOrders());
+                        for (CoffeeOrder order : orders) {
+                            if (!rejected.contains(order)) sold.add(order);
+                        }
+                    } else {
+                        for (CoffeeOrder order : orders) {
+                            if (truck.processOrder(order)) sold.add(order);
+                        }
+                    }
+
+                    for (CoffeeOrder order : sold) {
+                        Recipe recipe = RecipeBook.lookup(order);
+                        myConsumed[StockItem.COFFEE_BEANS.ordinal()] += recipe.getCoffeeUnits();
+                        myConsumed[StockItem.WATER.ordinal()] += recipe.getWaterUnits();
+                        myConsumed[StockItem.MILK.ordinal()] += recipe.getMilkUnits();
+                        myConsumed[recipe.getCup().ordinal()]++;
+                    }
+                    mySales += sold.size();
+
+                    // Top the cups up now and then, so they sit near capacity while orders drain them
+                    if (random.nextInt(8) == 0) {
+                        StockItem cup = items[random.nextInt(3)]; // Cups sit in slots 0-2, by ordinal
+                        myRestocked[cup.ordinal()] += truck.restockBin(cup.ordinal(), 50);
+                    }
+                }
+
+                synchronized (consumed) {
+                    for (int i = 0; i < items.length; i++) {
+                        consumed[i] += myConsumed[i];
+                        restocked[i] += myRestocked[i];
+                    }
+                    sales[0] += mySales;
+                }
+                return null;
+            }));
+        }
+
+        long startNanos = System.nanoTime();
+        start.countDown();
+        boolean passed = true;
+        try {
+            for (java.util.concurrent.Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (Exception e) {
+            System.setOut(console);
+            System.out.println("  Stress worker failed: " + e);
+            passed = false;
+        } finally {
+            pool.shutdown();
+        }
+        truck.getJournal().sync();
+        long elapsedNanos = System.nanoTime() - startNanos;
+        System.setOut(console);
+
+        int[] endLevels = stockLevels(truck, items);
+        for (int i = 0; i < items.length; i++) {
+            long expected = startLevels[i] + restocked[i] - consumed[i];
+            boolean ok = endLevels[i] >= 0 && endLevels[i] == expected;
+            System.out.printf("  %-13s start %6d + restocked %5d - sold %6d = %6d (bin holds %d) %s%n",
+                    items[i].getLabel(), startLevels[i], restocked[i], consumed[i], expected,
+                    endLevels[i], ok ? "OK" : "MISMATCH");
+            passed &= ok;
+        }
+
+        int recorded = truck.getTransactions().size();
+        boolean transactionsOk = recorded == sales[0];
+        System.out.printf("  Transactions  %d recorded for %d sales %s%n", recorded, sales[0],
+                transactionsOk ? "OK" : "MISMATCH");
+        passed &= transactionsOk;
+
+        try {
+            truck.getJournal().close();
+            CoffeeTruck recovered = TruckJournal.recover(journalFile);
+            boolean replayOk = Arrays.equals(stockLevels(recovered, items), endLevels)
+                    && recovered.getTransactions().size() == recorded;
+            System.out.printf("  Journal       %d bytes, replay gives %d transactions %s%n", Files.size(journalFile),
+                    recovered.getTransactions().size(), replayOk ? "OK" : "MISMATCH");
+            passed &= replayOk;
+            Files.delete(journalFile);
+        } catch (IOException e) {
+            System.out.println("  Journal       recovery failed: " + e.getMessage());
+            passed = false;
+        }
+
+        Map<String, Integer> fleetInventory = stressFleet.getInventory();
+        boolean fleetOk = stressFleet.getTransactionCount() == recorded
+                && Math.abs(stressFleet.getTotalRevenue() - truck.getTransactionStore().totalRevenue()) < 1e-6;
+        for (int i = 0; i < items.length; i++) {
+            fleetOk &= fleetInventory.getOrDefault(items[i].getLabel(), 0) == endLevels[i];
+        }
+        System.out.printf("  Fleet totals  %d sales, $%.2f, inventory %s%n", stressFleet.getTransactionCount(),
+                stressFleet.getTotalRevenue(), fleetOk ? "OK" : "MISMATCH");
+        passed &= fleetOk;
+
+        long attempted = (long) threads * ordersPerThread;
+        ordersPerSecond[round] = attempted / (elapsedNanos / 1e9);
+        System.out.printf("  %d threads, %d orders attempted in %.1f ms (%.0f orders/s)%n",
+                threads, attempted, elapsedNanos / 1e6, ordersPerSecond[round]);
+        return passed;
+    }
+
+    /**
+     * Reads the current level of each stock item's bin
+     * @param truck The truck to read
+     * @param items Stock items, in ordinal order
+     * @return Levels by StockItem ordinal
+     */
+    private static int[] stockLevels(CoffeeTruck truck, StockItem[] items) {
+        int[] levels = new int[items.length];
+        for (StorageBin bin : truck.getStorageBins()) {
+            if (bin != null && bin.getStockItem() != null) {
+                levels[bin.getStockItem().ordinal()] = bin.getCurrentQuantity();
+            }
+        }
+        return levels;
+    }
+}
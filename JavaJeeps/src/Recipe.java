@@ -0,0 +1,57 @@
+// ========================================
+// RECIPE CLASS
+// ========================================
+
+/**
+ * Compiled recipe for one drink, size, brew ratio and extra shot combination
+ * Holds the exact ingredient requirement plus the whole units drawn from each bin,
+ * so an order needs no calculations once its recipe is looked up
+ */
+final class Recipe {
+
+    // ========================================
+    // INSTANCE VARIABLES
+    // ========================================
+
+    private final IngredientRequirement requirement;
+    private final StockItem cup;
+    private final int coffeeUnits;
+    private final int waterUnits;
+    private final int milkUnits;
+    private final double extraShotCoffeeGrams;
+    private final String brewDescription;
+
+    // ========================================
+    // CONSTRUCTOR
+    // ========================================
+
+    /**
+     * Constructor for Recipe
+     * @param requirement Exact ingredient requirement
+     * @param cup Cup the drink is served in
+     * @param extraShotCoffeeGrams Coffee in the extra shot (0 without one)
+     * @param brewDescription Human-readable brew name
+     */
+    Recipe(IngredientRequirement requirement, StockItem cup, double extraShotCoffeeGrams, String brewDescription) {
+        this.requirement = requirement;
+        this.cup = cup;
+        // Bins hold whole units, so partial amounts round up
+        this.coffeeUnits = (int) Math.ceil(requirement.getCoffeeGrams());
+        this.waterUnits = (int) Math.ceil(requirement.getWaterOz());
+        this.milkUnits = (int) Math.ceil(requirement.getMilkOz());
+        this.extraShotCoffeeGrams = extraShotCoffeeGrams;
+        this.brewDescription = brewDescription;
+    }
+
+    // ========================================
+    // GETTERS
+    // ========================================
+
+    public IngredientRequirement getRequirement() { return requirement; }
+    public StockItem getCup() { return cup; }
+    public int getCoffeeUnits() { return coffeeUnits; }
+    public int getWaterUnits() { return waterUnits; }
+    public int getMilkUnits() { return milkUnits; }
+    public double getExtraShotCoffeeGrams() { return extraShotCoffeeGrams; }
+    public String getBrewDescription() { return brewDescription; }
+}
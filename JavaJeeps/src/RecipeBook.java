@@ -0,0 +1,225 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// ========================================
+// RECIPE BOOK
+// ========================================
+
+/**
+ * Immutable table of compiled recipes, built once at class load
+ * Standard, Strong and Light brews are compiled up front for every drink, size and
+ * extra shot choice. Custom ratios are compiled the first time they are ordered
+ * and memoized by brew string, so "Custom 1:X" is parsed once per ratio.
+ */
+final class RecipeBook {
+
+    // ========================================
+    // CONSTANTS
+    // ========================================
+
+    private static final String[] DRINKS = {"Americano", "Latte", "Cappuccino"};
+    private static final String[] SIZES = {"Small", "Medium", "Large"};
+    private static final String[] BREWS = {"Standard", "Strong", "Light"};
+
+    // Constants for cup sizes (in fluid ounces)
+    private static final double SMALL_CUP_SIZE = 8.0;
+    private static final double MEDIUM_CUP_SIZE = 12.0;
+    private static final double LARGE_CUP_SIZE = 16.0;
+
+    // Conversion factor: 1 fl. oz. = 28.34952 grams (as per specification)
+    private static final double FL_OZ_TO_GRAMS = 28.34952;
+
+    // Built-in brews, by brew then drink, size and extra shot - see index()
+    private static final Recipe[][] BUILT_IN = new Recipe[BREWS.length][];
+    private static final Map<String, Recipe[]> CUSTOM = new ConcurrentHashMap<>();
+
+    static {
+        for (int brew = 0; brew < BREWS.length; brew++) {
+            BUILT_IN[brew] = compileBrew(BREWS[brew]);
+        }
+    }
+
+    private RecipeBook() {}
+
+    // ========================================
+    // LOOKUP
+    // ========================================
+
+    /**
+     * Gets the compiled recipe for an order
+     * @param order The coffee order
+     * @return The order's recipe
+     */
+    public static Recipe lookup(CoffeeOrder order) {
+        int drink = drinkIndex(order.getDrinkType());
+        if (drink < 0) {
+            return compile(order.getDrinkType(), order.getSize(), order.getBrewType(), order.isExtraShot());
+        }
+
+        Recipe[] recipes;
+        switch (order.getBrewType()) {
+            case "Standard": recipes = BUILT_IN[0]; break;
+            case "Strong": recipes = BUILT_IN[1]; break;
+            case "Light": recipes = BUILT_IN[2]; break;
+            default: recipes = CUSTOM.computeIfAbsent(order.getBrewType(), RecipeBook::compileBrew);
+        }
+        return recipes[index(drink, sizeIndex(order.getSize()), order.isExtraShot())];
+    }
+
+    private static int index(int drink, int size, boolean extraShot) {
+        return (drink * SIZES.length + size) * 2 + (extraShot ? 1 : 0);
+    }
+
+    private static int drinkIndex(String drinkType) {
+        switch (drinkType) {
+            case "Americano": return 0;
+            case "Latte": return 1;
+            case "Cappuccino": return 2;
+            default: return -1; // Not on the menu - compiled per order
+        }
+    }
+
+    private static int sizeIndex(String size) {
+        switch (size) {
+            case "Medium": return 1;
+            case "Large": return 2;
+            default: return 0; // Small, and the fallback for unknown sizes
+        }
+    }
+
+    /**
+     * Compiles every drink, size and extra shot recipe for one brew type
+     * @param brewType The brew type
+     * @return Recipes laid out by index()
+     */
+    private static Recipe[] compileBrew(String brewType) {
+        Recipe[] recipes = new Recipe[DRINKS.length * SIZES.length * 2];
+        for (int drink = 0; drink < DRINKS.length; drink++) {
+            for (int size = 0; size < SIZES.length; size++) {
+                recipes[index(drink, size, false)] = compile(DRINKS[drink], SIZES[size], brewType, false);
+                recipes[index(drink, size, true)] = compile(DRINKS[drink], SIZES[size], brewType, true);
+            }
+        }
+        return recipes;
+    }
+
+    // ========================================
+    // INGREDIENT CALCULATIONS
+    // ========================================
+
+    /**
+     * Calculates exact ingredient requirements for one recipe
+     * Uses precise ratios as specified in the requirements document
+     *
+     * @param drinkType Type of drink
+     * @param size Cup size name
+     * @param brewType Type of brew
+     * @param extraShot Whether the drink has an extra shot
+     * @return Compiled recipe
+     */
+    private static Recipe compile(String drinkType, String size, String brewType, boolean extraShot) {
+        double cupSize = getCupSizeInOz(size);
+        double coffeeGrams = 0;
+        double waterOz = 0;
+        double milkOz = 0;
+
+        // Calculate base drink requirements
+        switch (drinkType) {
+            case "Americano":
+                // Americano: 1 part espresso, 2 parts water
+                double americanoEspresso = cupSize / 3.0; // 1 part out of 3 total
+                waterOz = (cupSize * 2.0) / 3.0; // 2 parts out of 3 total
+                coffeeGrams = calculateCoffeeForEspresso(americanoEspresso, brewType);
+                break;
+
+            case "Latte":
+                // Latte: 1/5 espresso, 4/5 milk
+                double latteEspresso = cupSize / 5.0;
+                milkOz = (cupSize * 4.0) / 5.0;
+                coffeeGrams = calculateCoffeeForEspresso(latteEspresso, brewType);
+                break;
+
+            case "Cappuccino":
+                // Cappuccino: 1/3 espresso, 2/3 milk
+                double cappuccinoEspresso = cupSize / 3.0;
+                milkOz = (cupSize * 2.0) / 3.0;
+                coffeeGrams = calculateCoffeeForEspresso(cappuccinoEspresso, brewType);
+                break;
+        }
+
+        // Add extra shot if requested (Special trucks only)
+        double extraShotCoffee = 0;
+        if (extraShot) {
+            extraShotCoffee = calculateCoffeeForEspresso(1.0, brewType);
+            coffeeGrams += extraShotCoffee;
+            // Extra shot doesn't add water for milk-based drinks, only for preparation
+        }
+
+        return new Recipe(new IngredientRequirement(coffeeGrams, waterOz, milkOz),
+                StockItem.cupFor(size), extraShotCoffee, getBrewDescription(brewType));
+    }
+
+    /**
+     * Calculates coffee grams needed for espresso based on brew type and ratio
+     * Uses the 1:18 standard ratio with variations for different brew strengths
+     *
+     * @param espressoOz Amount of espresso in fluid ounces
+     * @param brewType Type of brew (Standard, Strong, Light, Custom)
+     * @return Coffee amount in grams
+     */
+    private static double calculateCoffeeForEspresso(double espressoOz, String brewType) {
+        // Convert espresso volume to water weight for brewing calculation
+        double waterInGrams = espressoOz * FL_OZ_TO_GRAMS;
+
+        // Calculate coffee based on brew ratio
+        switch (brewType) {
+            case "Strong":
+                return waterInGrams / 15.0; // 1:15 ratio
+            case "Light":
+                return waterInGrams / 20.0; // 1:20 ratio
+            default:
+                if (brewType.startsWith("Custom")) {
+                    // Parse custom ratio (format: "Custom 1:X")
+                    String[] parts = brewType.split(":");
+                    if (parts.length == 2) {
+                        try {
+                            int ratio = Integer.parseInt(parts[1]);
+                            return waterInGrams / ratio;
+                        } catch (NumberFormatException e) {
+                            // Fall back to standard if parsing fails
+                        }
+                    }
+                }
+                return waterInGrams / 18.0; // 1:18 Standard ratio (default)
+        }
+    }
+
+    /**
+     * Gets cup size in fluid ounces based on size name
+     * @param size Cup size name (Small, Medium, Large)
+     * @return Cup size in fluid ounces
+     */
+    private static double getCupSizeInOz(String size) {
+        switch (size) {
+            case "Small": return SMALL_CUP_SIZE;
+            case "Medium": return MEDIUM_CUP_SIZE;
+            case "Large": return LARGE_CUP_SIZE;
+            default: return SMALL_CUP_SIZE; // Default fallback
+        }
+    }
+
+    /**
+     * Gets human-readable brew description for display
+     * @param brewType The brew type code
+     * @return Formatted brew description
+     */
+    private static String getBrewDescription(String brewType) {
+        switch (brewType) {
+            case "Strong": return "Strong";
+            case "Light": return "Light";
+            default:
+                if (brewType.startsWith("Custom")) return "Custom";
+                return "Standard";
+        }
+    }
+}
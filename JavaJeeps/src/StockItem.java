@@ -0,0 +1,63 @@
+// ========================================
+// STOCK ITEM ENUM
+// ========================================
+
+/**
+ * Typed identifiers for the cups and ingredients orders draw from
+ * Syrups are named freely by the owner, so they have no constant here
+ */
+enum StockItem {
+    SMALL_CUP("Small Cup"),
+    MEDIUM_CUP("Medium Cup"),
+    LARGE_CUP("Large Cup"),
+    COFFEE_BEANS("Coffee Beans"),
+    MILK("Milk"),
+    WATER("Water");
+
+    private final String label;
+
+    StockItem(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Gets the item type name used in storage bins and displays
+     * @return Item label
+     */
+    public String getLabel() { return label; }
+
+    /**
+     * Checks if this item is a cup
+     * @return true for cups, false for ingredients
+     */
+    public boolean isCup() {
+        return this == SMALL_CUP || this == MEDIUM_CUP || this == LARGE_CUP;
+    }
+
+    /**
+     * Looks up the stock item for a storage bin item type
+     * @param itemType Item type name (e.g. "Milk", "Small Cup")
+     * @return Matching StockItem, or null for syrups and empty bins
+     */
+    public static StockItem fromLabel(String itemType) {
+        for (StockItem item : values()) {
+            if (item.label.equals(itemType)) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the cup for a drink size
+     * @param size Drink size (Small, Medium, Large)
+     * @return Cup stock item
+     */
+    public static StockItem cupFor(String size) {
+        switch (size) {
+            case "Medium": return MEDIUM_CUP;
+            case "Large": return LARGE_CUP;
+            default: return SMALL_CUP; // Matches getCupSizeInOz() fallback
+        }
+    }
+}
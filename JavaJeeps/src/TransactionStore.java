@@ -0,0 +1,322 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// ========================================
+// TRANSACTION STORE
+// ========================================
+
+/**
+ * Columnar store for a truck's sales history
+ *
+ * Rather than one Transaction object per sale (several Strings, a copied addon list
+ * and object headers), each field lives in its own primitive column:
+ * - drink, size and brew are dictionary-encoded into small codes
+ * - addons are a 64-bit set of addon codes per sale
+ * - extra shots are one bit per sale
+ * - ingredient amounts, price and timestamp are plain double and long arrays
+ * A sale costs about 50 bytes, against well over 100 as a Transaction object.
+ *
+ * Columns grow a chunk of CHUNK_ROWS at a time, so adding never copies the history.
+ * Reports scan the chunks with plain counted loops over primitive arrays.
+ * Transactions are rebuilt on demand for display. Thread-safe: all access is
+ * synchronized on the store.
+ */
+class TransactionStore {
+
+    // ========================================
+    // CONSTANTS
+    // ========================================
+
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_ROWS = 1 << CHUNK_SHIFT; // 4096 sales per chunk
+    private static final int CHUNK_MASK = CHUNK_ROWS - 1;
+
+    // Addon set value for sales whose addons are kept in addonOverflow instead
+    private static final long OVERFLOW_ADDONS = -1L;
+
+    // ========================================
+    // INSTANCE VARIABLES
+    // ========================================
+
+    private final Dictionary drinks = new Dictionary(Byte.MAX_VALUE);
+    private final Dictionary sizes = new Dictionary(Byte.MAX_VALUE);
+    private final Dictionary brews = new Dictionary(Short.MAX_VALUE);
+    private final Dictionary addons = new Dictionary(Integer.MAX_VALUE);
+
+    // Column chunks, indexed [row >> CHUNK_SHIFT][row & CHUNK_MASK]
+    private byte[][] drinkCodes = new byte[0][];
+    private byte[][] sizeCodes = new byte[0][];
+    private short[][] brewCodes = new short[0][];
+    private long[][] addonSets = new long[0][];
+    private long[][] extraShotBits = new long[0][]; // One bit per row
+    private double[][] coffeeGrams = new double[0][];
+    private double[][] waterOz = new double[0][];
+    private double[][] milkOz = new double[0][];
+    private double[][] prices = new double[0][];
+    private long[][] timestamps = new long[0][];
+
+    // Addons of the rare sales that do not fit an ascending 64-bit set - by row
+    private final Map<Integer, List<String>> addonOverflow = new HashMap<>();
+
+    private int size;
+
+    // ========================================
+    // ADDING SALES
+    // ========================================
+
+    /**
+     * Appends a sale
+     * @param transaction The sale's transaction
+     */
+    public synchronized void add(Transaction transaction) {
+        int row = size;
+        int chunk = row >>> CHUNK_SHIFT;
+        int slot = row & CHUNK_MASK;
+        if (chunk == drinkCodes.length) {
+            addChunk();
+        }
+
+        drinkCodes[chunk][slot] = (byte) drinks.encode(transaction.getDrinkType());
+        sizeCodes[chunk][slot] = (byte) sizes.encode(transaction.getSize());
+        brewCodes[chunk][slot] = (short) brews.encode(transaction.getBrewType());
+        addonSets[chunk][slot] = encodeAddons(row, transaction.getAddons());
+        if (transaction.isExtraShot()) {
+            extraShotBits[chunk][slot >>> 6] |= 1L << (slot & 63);
+        }
+        coffeeGrams[chunk][slot] = transaction.getCoffeeUsed();
+        waterOz[chunk][slot] = transaction.getWaterUsed();
+        milkOz[chunk][slot] = transaction.getMilkUsed();
+        prices[chunk][slot] = transaction.getTotalPrice();
+        timestamps[chunk][slot] = transaction.getTimestamp();
+
+        size = row + 1;
+    }
+
+    /**
+     * Appends several sales under one lock
+     * @param transactions The sales' transactions, in order
+     */
+    public synchronized void addAll(List<Transaction> transactions) {
+        for (Transaction transaction : transactions) {
+            add(transaction);
+        }
+    }
+
+    /**
+     * Encodes a sale's addons as a set of addon codes
+     * Sales whose addons would not come back the same from the set - more than 64
+     * distinct addons seen, a repeated addon, or addons out of code order - keep
+     * their list as is.
+     *
+     * @param row Row of the sale
+     * @param list The sale's addons
+     * @return Addon set, or OVERFLOW_ADDONS
+     */
+    private long encodeAddons(int row, List<String> list) {
+        long set = 0L;
+        int previous = -1;
+        for (String addon : list) {
+            int code = addons.encode(addon);
+            if (code >= Long.SIZE || code <= previous) {
+                addonOverflow.put(row, new ArrayList<>(list));
+                return OVERFLOW_ADDONS;
+            }
+            set |= 1L << code;
+            previous = code;
+        }
+        return set;
+    }
+
+    private void addChunk() {
+        int chunks = drinkCodes.length + 1;
+        drinkCodes = Arrays.copyOf(drinkCodes, chunks);
+        sizeCodes = Arrays.copyOf(sizeCodes, chunks);
+        brewCodes = Arrays.copyOf(brewCodes, chunks);
+        addonSets = Arrays.copyOf(addonSets, chunks);
+        extraShotBits = Arrays.copyOf(extraShotBits, chunks);
+        coffeeGrams = Arrays.copyOf(coffeeGrams, chunks);
+        waterOz = Arrays.copyOf(waterOz, chunks);
+        milkOz = Arrays.copyOf(milkOz, chunks);
+        prices = Arrays.copyOf(prices, chunks);
+        timestamps = Arrays.copyOf(timestamps, chunks);
+
+        int chunk = chunks - 1;
+        drinkCodes[chunk] = new byte[CHUNK_ROWS];
+        sizeCodes[chunk] = new byte[CHUNK_ROWS];
+        brewCodes[chunk] = new short[CHUNK_ROWS];
+        addonSets[chunk] = new long[CHUNK_ROWS];
+        extraShotBits[chunk] = new long[CHUNK_ROWS / Long.SIZE];
+        coffeeGrams[chunk] = new double[CHUNK_ROWS];
+        waterOz[chunk] = new double[CHUNK_ROWS];
+        milkOz[chunk] = new double[CHUNK_ROWS];
+        prices[chunk] = new double[CHUNK_ROWS];
+        timestamps[chunk] = new long[CHUNK_ROWS];
+    }
+
+    // ========================================
+    // READING SALES
+    // ========================================
+
+    /**
+     * Gets the number of sales stored
+     * @return Number of sales
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Rebuilds the transaction for one sale
+     * @param row Row of the sale (0-based, in order of sale)
+     * @return The sale's transaction
+     */
+    public synchronized Transaction get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+        int chunk = row >>> CHUNK_SHIFT;
+        int slot = row & CHUNK_MASK;
+
+        return new Transaction(
+                drinks.decode(drinkCodes[chunk][slot]),
+                sizes.decode(sizeCodes[chunk][slot]),
+                brews.decode(brewCodes[chunk][slot]),
+                decodeAddons(row, addonSets[chunk][slot]),
+                (extraShotBits[chunk][slot >>> 6] & (1L << (slot & 63))) != 0,
+                coffeeGrams[chunk][slot],
+                waterOz[chunk][slot],
+                milkOz[chunk][slot],
+                prices[chunk][slot],
+                timestamps[chunk][slot]);
+    }
+
+    /**
+     * Rebuilds every transaction, in order of sale
+     * @return List of transactions
+     */
+    public synchronized List<Transaction> toList() {
+        List<Transaction> list = new ArrayList<>(size);
+        for (int row = 0; row < size; row++) {
+            list.add(get(row));
+        }
+        return list;
+    }
+
+    private List<String> decodeAddons(int row, long set) {
+        if (set == OVERFLOW_ADDONS) {
+            return addonOverflow.get(row);
+        }
+        List<String> list = new ArrayList<>(Long.bitCount(set));
+        while (set != 0) {
+            list.add(addons.decode(Long.numberOfTrailingZeros(set)));
+            set &= set - 1;
+        }
+        return list;
+    }
+
+    // ========================================
+    // REPORTING SCANS
+    // ========================================
+
+    /**
+     * Adds up the price of every sale
+     * @return Total revenue
+     */
+    public synchronized double totalRevenue() {
+        double total = 0.0;
+        for (int chunk = 0, remaining = size; remaining > 0; chunk++, remaining -= CHUNK_ROWS) {
+            double[] column = prices[chunk];
+            int rows = Math.min(remaining, CHUNK_ROWS);
+            for (int slot = 0; slot < rows; slot++) {
+                total += column[slot];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Receives sales totals for one drink and size
+     */
+    interface SalesVisitor {
+        void visit(String drinkType, String size, int count, double revenue);
+    }
+
+    /**
+     * Totals sales count and revenue per drink and size
+     * Each sale lands in a cell of a drink-by-size grid of code pairs; only the
+     * handful of occupied cells are decoded and handed to the visitor.
+     *
+     * @param visitor Receives each drink and size that has sales
+     */
+    public synchronized void forEachDrinkAndSize(SalesVisitor visitor) {
+        int sizeCount = sizes.size();
+        int cells = drinks.size() * sizeCount;
+        int[] cellCounts = new int[cells];
+        double[] cellRevenue = new double[cells];
+
+        for (int chunk = 0, remaining = size; remaining > 0; chunk++, remaining -= CHUNK_ROWS) {
+            byte[] drinkColumn = drinkCodes[chunk];
+            byte[] sizeColumn = sizeCodes[chunk];
+            double[] priceColumn = prices[chunk];
+            int rows = Math.min(remaining, CHUNK_ROWS);
+            for (int slot = 0; slot < rows; slot++) {
+                int cell = drinkColumn[slot] * sizeCount + sizeColumn[slot];
+                cellCounts[cell]++;
+                cellRevenue[cell] += priceColumn[slot];
+            }
+        }
+
+        for (int cell = 0; cell < cells; cell++) {
+            if (cellCounts[cell] > 0) {
+                visitor.visit(drinks.decode(cell / sizeCount), sizes.decode(cell % sizeCount),
+                        cellCounts[cell], cellRevenue[cell]);
+            }
+        }
+    }
+
+    // ========================================
+    // DICTIONARY
+    // ========================================
+
+    /**
+     * Assigns each distinct string a small code, in order of first appearance
+     */
+    private static final class Dictionary {
+
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        private final int maxCodes;
+
+        Dictionary(int maxCodes) {
+            this.maxCodes = maxCodes;
+        }
+
+        int encode(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                if (values.size() >= maxCodes) {
+                    throw new IllegalStateException("More than " + maxCodes + " distinct values: " + value);
+                }
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        String decode(int code) {
+            return values.get(code);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+}
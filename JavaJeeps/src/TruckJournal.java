@@ -0,0 +1,809 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// ========================================
+// TRUCK JOURNAL
+// ========================================
+
+/**
+ * Append-only journal of one truck's sales and inventory changes, for crash recovery
+ *
+ * The file starts with a snapshot of the whole truck, followed by one record per
+ * sale, restock, bin replacement (which also covers emptying a bin), price change
+ * and relocation. Recovery loads the snapshot and replays the records after it;
+ * checkpoint() folds everything back into a fresh snapshot so replay stays short.
+ *
+ * Each record is framed as: int length, byte type, payload, int CRC32 of type and
+ * payload. A record torn by a crash mid-write fails its length or CRC check, and
+ * recovery stops there.
+ *
+ * Writes use group commit: callers encode their record into a shared buffer and
+ * return at once, while a background thread writes whatever has piled up and forces
+ * it to disk with a single fsync. Orders never wait for the disk; sync() waits until
+ * everything appended so far is durable.
+ */
+class TruckJournal implements Closeable {
+
+    // ========================================
+    // CONSTANTS
+    // ========================================
+
+    private static final int MAGIC = 0x4A4A4E4C; // "JJNL"
+    private static final int VERSION = 1;
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+
+    // Record types
+    private static final byte SNAPSHOT = 1;
+    private static final byte SALE = 2;
+    private static final byte RESTOCK = 3;
+    private static final byte SET_BIN = 4;
+    private static final byte PRICE = 5;
+    private static final byte ADDON_PRICE = 6;
+    private static final byte LOCATION = 7;
+
+    // Truck types in snapshots
+    private static final byte REGULAR_TRUCK = 1;
+    private static final byte SPECIAL_TRUCK = 2;
+
+    // ========================================
+    // INSTANCE VARIABLES
+    // ========================================
+
+    private final Path path;
+    private final CoffeeTruck truck;
+    private final Thread flusher;
+
+    // Everything below is guarded by commitLock
+    private final Object commitLock = new Object();
+    private FileChannel channel;
+    private RecordBuffer pending = new RecordBuffer(INITIAL_BUFFER_BYTES);  // Appended, not yet handed to the flusher
+    private RecordBuffer flushing = new RecordBuffer(INITIAL_BUFFER_BYTES); // Being written by the flusher
+    private boolean writing; // The flusher is writing a batch outside the lock
+    private long appendedRecords;
+    private long durableRecords;
+    private IOException failure;
+    private boolean closed;
+
+    // ========================================
+    // CONSTRUCTOR
+    // ========================================
+
+    /**
+     * Constructor for TruckJournal - use create() to start a journal file
+     * @param path Journal file
+     * @param truck Truck the journal records
+     * @param channel Channel positioned at the end of the file
+     */
+    private TruckJournal(Path path, CoffeeTruck truck, FileChannel channel) {
+        this.path = path;
+        this.truck = truck;
+        this.channel = channel;
+        this.flusher = new Thread(this::flushLoop, "journal-flush-" + path.getFileName());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Starts a journal for a truck, replacing any existing file at the path
+     * The file begins with a snapshot of the truck's current state. The truck's
+     * changes are recorded once the journal is attached to it.
+     *
+     * @param path Journal file
+     * @param truck Truck to record
+     * @return The open journal
+     * @throws IOException If the snapshot cannot be written
+     */
+    public static TruckJournal create(Path path, CoffeeTruck truck) throws IOException {
+        return new TruckJournal(path, truck, writeSnapshot(path, truck));
+    }
+
+    // ========================================
+    // RECORDING
+    // ========================================
+
+    /**
+     * Records a completed sale
+     * @param transaction The sale's transaction
+     */
+    public void recordSale(Transaction transaction) {
+        synchronized (commitLock) {
+            RecordBuffer out = beginAppend(SALE);
+            if (out == null) return;
+            putTransaction(out, transaction);
+            endAppend(out);
+        }
+    }
+
+    /**
+     * Records items added to a bin
+     * @param slot Bin slot (0-based)
+     * @param added Amount actually added
+     */
+    public void recordRestock(int slot, int added) {
+        synchronized (commitLock) {
+            RecordBuffer out = beginAppend(RESTOCK);
+            if (out == null) return;
+            out.putInt(slot);
+            out.putInt(added);
+            endAppend(out);
+        }
+    }
+
+    /**
+     * Records a bin being configured, replaced or emptied
+     * @param slot Bin slot (0-based)
+     * @param bin The new bin, or null
+     */
+    public void recordSetBin(int slot, StorageBin bin) {
+        synchronized (commitLock) {
+            RecordBuffer out = beginAppend(SET_BIN);
+            if (out == null) return;
+            out.putInt(slot);
+            putBin(out, bin);
+            endAppend(out);
+        }
+    }
+
+    /**
+     * Records a menu price change
+     * @param drinkType Type of drink
+     * @param size Size of drink
+     * @param price New price
+     */
+    public void recordPrice(String drinkType, String size, double price) {
+        synchronized (commitLock) {
+            RecordBuffer out = beginAppend(PRICE);
+            if (out == null) return;
+            out.putString(drinkType);
+            out.putString(size);
+            out.putDouble(price);
+            endAppend(out);
+        }
+    }
+
+    /**
+     * Records a change to a special truck's add-on prices
+     * @param syrupPrice Price per syrup add-on
+     * @param extraShotPrice Price per extra shot
+     */
+    public void recordAddonPricing(double syrupPrice, double extraShotPrice) {
+        synchronized (commitLock) {
+            RecordBuffer out = beginAppend(ADDON_PRICE);
+            if (out == null) return;
+            out.putDouble(syrupPrice);
+            out.putDouble(extraShotPrice);
+            endAppend(out);
+        }
+    }
+
+    /**
+     * Records the truck moving to a new location
+     * @param location The new location
+     */
+    public void recordLocation(String location) {
+        synchronized (commitLock) {
+            RecordBuffer out = beginAppend(LOCATION);
+            if (out == null) return;
+            out.putString(location);
+            endAppend(out);
+        }
+    }
+
+    /**
+     * Starts a record in the pending buffer - caller holds commitLock
+     * @param type Record type
+     * @return The buffer to write the payload into, or null once the journal is closed
+     */
+    private RecordBuffer beginAppend(byte type) {
+        if (closed) return null;
+        pending.begin(type);
+        return pending;
+    }
+
+    /**
+     * Finishes a record and wakes the flusher if it was idle - caller holds commitLock
+     * @param out The pending buffer
+     */
+    private void endAppend(RecordBuffer out) {
+        boolean flusherIdle = out.recordStart == 0; // First record since the last hand-off
+        out.end();
+        appendedRecords++;
+        if (flusherIdle) {
+            commitLock.notifyAll();
+        }
+    }
+
+    // ========================================
+    // GROUP COMMIT
+    // ========================================
+
+    /**
+     * Background loop that writes and fsyncs the records appended since its last pass
+     * Records appended while a write is in progress pile up and share the next fsync.
+     */
+    private void flushLoop() {
+        while (true) {
+            RecordBuffer batch;
+            long batchRecords;
+            FileChannel target;
+            synchronized (commitLock) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        commitLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return; // Closed and drained
+                }
+                batch = pending;
+                pending = flushing;
+                flushing = batch;
+                batchRecords = appendedRecords;
+                target = channel;
+                writing = true;
+            }
+
+            try {
+                ByteBuffer bytes = batch.forWriting();
+                while (bytes.hasRemaining()) {
+                    target.write(bytes);
+                }
+                target.force(false);
+                batch.clear();
+            } catch (IOException e) {
+                synchronized (commitLock) {
+                    failure = e;
+                    closed = true;
+                    writing = false;
+                    commitLock.notifyAll();
+                }
+                return;
+            }
+
+            synchronized (commitLock) {
+                durableRecords = batchRecords;
+                writing = false;
+                commitLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until every record appended so far is on disk
+     * @throws UncheckedIOException If the journal could not be written
+     */
+    public void sync() {
+        synchronized (commitLock) {
+            long target = appendedRecords;
+            while (durableRecords < target && failure == null) {
+                try {
+                    commitLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("Journal write failed: " + path, failure);
+            }
+        }
+    }
+
+    /**
+     * Rewrites the journal as a single snapshot of the truck's current state
+     * Holds the truck's lock and commitLock, so no restock or bin change slips in: it
+     * waits for the flusher's batch in progress, writes the snapshot, and drops the
+     * records still pending, which the snapshot already covers. Must still not run
+     * while orders are being taken - a sale applied to the truck but not yet appended
+     * would land in both the snapshot and the records replayed after it.
+     *
+     * @throws IOException If the journal has failed or the snapshot cannot be written
+     */
+    public void checkpoint() throws IOException {
+        synchronized (truck) { // Same order as CoffeeTruck.restockBin(): truck, then commitLock
+            synchronized (commitLock) {
+                while (writing) {
+                    try {
+                        commitLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted before checkpoint: " + path);
+                    }
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+                if (closed) {
+                    throw new IOException("Journal is closed: " + path);
+                }
+                FileChannel snapshotChannel = writeSnapshot(path, truck);
+                channel.close();
+                channel = snapshotChannel;
+                pending.clear();
+                durableRecords = appendedRecords;
+                commitLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Flushes outstanding records and closes the file
+     * @throws IOException If the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (commitLock) {
+            closed = true;
+            commitLock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (commitLock) {
+            channel.close();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    public Path getPath() { return path; }
+
+    // ========================================
+    // SNAPSHOTS
+    // ========================================
+
+    /**
+     * Writes a journal file holding just a snapshot of the truck
+     * The file is written beside the journal and moved over it, so a crash leaves
+     * either the old journal or the new one, never a half-written file.
+     *
+     * @param path Journal file
+     * @param truck Truck to snapshot
+     * @return Channel on the new file, positioned for appends
+     * @throws IOException If the file cannot be written
+     */
+    private static FileChannel writeSnapshot(Path path, CoffeeTruck truck) throws IOException {
+        RecordBuffer snapshot = new RecordBuffer(INITIAL_BUFFER_BYTES);
+        snapshot.putInt(MAGIC);
+        snapshot.putInt(VERSION);
+        snapshot.begin(SNAPSHOT);
+        putTruck(snapshot, truck);
+        snapshot.end();
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = snapshot.forWriting();
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+            out.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+
+    private static void putTruck(RecordBuffer out, CoffeeTruck truck) {
+        boolean special = truck instanceof SpecialCoffeeTruck;
+        out.putByte(special ? SPECIAL_TRUCK : REGULAR_TRUCK);
+        out.putString(truck.getLocation());
+
+        StorageBin[] bins = truck.getStorageBins();
+        out.putInt(bins.length);
+        for (StorageBin bin : bins) {
+            putBin(out, bin);
+        }
+
+        List<String[]> prices = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Double>> drink : truck.pricing.entrySet()) {
+            for (Map.Entry<String, Double> size : drink.getValue().entrySet()) {
+                prices.add(new String[] {drink.getKey(), size.getKey()});
+            }
+        }
+        out.putInt(prices.size());
+        for (String[] key : prices) {
+            out.putString(key[0]);
+            out.putString(key[1]);
+            out.putDouble(truck.pricing.get(key[0]).get(key[1]));
+        }
+
+        if (special) {
+            SpecialCoffeeTruck specialTruck = (SpecialCoffeeTruck) truck;
+            out.putDouble(specialTruck.getSyrupPrice());
+            out.putDouble(specialTruck.getExtraShotPrice());
+        }
+
+        TransactionStore transactions = truck.getTransactionStore();
+        int count = transactions.size();
+        out.putInt(count);
+        for (int row = 0; row < count; row++) {
+            putTransaction(out, transactions.get(row));
+        }
+    }
+
+    private static void putBin(RecordBuffer out, StorageBin bin) {
+        out.putByte((byte) (bin != null ? 1 : 0));
+        if (bin != null) {
+            out.putString(bin.getItemType());
+            out.putInt(bin.getCurrentQuantity());
+            out.putInt(bin.getMaxCapacity());
+        }
+    }
+
+    private static void putTransaction(RecordBuffer out, Transaction transaction) {
+        out.putString(transaction.getDrinkType());
+        out.putString(transaction.getSize());
+        out.putString(transaction.getBrewType());
+        out.putByte((byte) (transaction.isExtraShot() ? 1 : 0));
+        List<String> addons = transaction.getAddons();
+        out.putInt(addons.size());
+        for (String addon : addons) {
+            out.putString(addon);
+        }
+        out.putDouble(transaction.getTotalPrice());
+        out.putLong(transaction.getTimestamp());
+    }
+
+    // ========================================
+    // RECOVERY
+    // ========================================
+
+    /**
+     * Rebuilds a truck from its journal: the snapshot, then every intact record after it
+     * Replay stops at the first torn or corrupt record. The truck comes back without a
+     * journal attached; start a new one with create(), which also compacts the file.
+     *
+     * @param path Journal file
+     * @return The recovered truck
+     * @throws IOException If the file cannot be read, holds no snapshot or a record does not parse
+     */
+    public static CoffeeTruck recover(Path path) throws IOException {
+        ByteBuffer data;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            data = ByteBuffer.allocate((int) in.size());
+            while (data.hasRemaining() && in.read(data) >= 0) {
+                // Read the whole file
+            }
+            data.flip();
+        }
+
+        if (data.remaining() < 8 || data.getInt() != MAGIC) {
+            throw new IOException("Not a truck journal: " + path);
+        }
+        int version = data.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported journal version " + version + ": " + path);
+        }
+
+        Replay replay = null;
+        try {
+            ByteBuffer record;
+            while ((record = nextRecord(data)) != null) {
+                byte type = record.get();
+                if (replay == null) {
+                    if (type != SNAPSHOT) {
+                        throw new IOException("Journal does not start with a snapshot: " + path);
+                    }
+                    replay = new Replay(record);
+                } else {
+                    replay.apply(type, record);
+                }
+            }
+        } catch (java.nio.BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException
+                 | ClassCastException | IllegalArgumentException e) {
+            // A record passed its CRC but does not parse
+            throw new IOException("Corrupt journal: " + path, e);
+        }
+        if (replay == null) {
+            throw new IOException("Journal holds no snapshot: " + path);
+        }
+        return replay.finish();
+    }
+
+    /**
+     * Reads the next intact record
+     * @param data File contents, positioned at a record
+     * @return The record's type and payload, or null at the end or at a torn record
+     */
+    private static ByteBuffer nextRecord(ByteBuffer data) {
+        if (data.remaining() < 4) return null;
+
+        int start = data.position();
+        int length = data.getInt();
+        if (length < 1 || length > data.remaining() - 4) {
+            return null;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data.array(), data.arrayOffset() + start + 4, length);
+        if (data.getInt(start + 4 + length) != (int) crc.getValue()) {
+            return null;
+        }
+
+        ByteBuffer record = data.slice();
+        record.limit(length);
+        data.position(start + 4 + length + 4);
+        return record;
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Truck state rebuilt during recovery
+     * Bin levels are replayed as plain arithmetic rather than through StorageBin, because
+     * concurrent sales and restocks may reach the journal in a different order than they
+     * reached the bin - the sum comes out the same either way, the clamping would not.
+     */
+    private static final class Replay {
+
+        private final CoffeeTruck truck;
+        private final String[] itemTypes;
+        private final int[] levels;
+        private final int[] capacities;
+        private final int[] slotFor = new int[StockItem.values().length];
+
+        /**
+         * Loads the snapshot record
+         * @param in Snapshot payload
+         * @throws IOException If the snapshot is malformed
+         */
+        Replay(ByteBuffer in) throws IOException {
+            byte truckType = in.get();
+            String location = getString(in);
+            if (truckType == REGULAR_TRUCK) {
+                truck = new RegularCoffeeTruck(location);
+            } else if (truckType == SPECIAL_TRUCK) {
+                truck = new SpecialCoffeeTruck(location);
+            } else {
+                throw new IOException("Unknown truck type in journal: " + truckType);
+            }
+
+            int binCount = in.getInt();
+            if (binCount != truck.getStorageBins().length) {
+                throw new IOException("Journal has " + binCount + " bins, truck has " + truck.getStorageBins().length);
+            }
+            itemTypes = new String[binCount];
+            levels = new int[binCount];
+            capacities = new int[binCount];
+            for (int slot = 0; slot < binCount; slot++) {
+                readBin(in, slot);
+            }
+            rebuildSlots();
+
+            int prices = in.getInt();
+            for (int i = 0; i < prices; i++) {
+                truck.setPricing(getString(in), getString(in), in.getDouble());
+            }
+
+            if (truck instanceof SpecialCoffeeTruck) {
+                ((SpecialCoffeeTruck) truck).setAddonPricing(in.getDouble(), in.getDouble());
+            }
+
+            int transactions = in.getInt();
+            for (int i = 0; i < transactions; i++) {
+                truck.restoreTransaction(readTransaction(in));
+            }
+        }
+
+        /**
+         * Applies one record after the snapshot
+         * @param type Record type
+         * @param in Record payload
+         * @throws IOException If the record type is unknown
+         */
+        void apply(byte type, ByteBuffer in) throws IOException {
+            switch (type) {
+                case SALE:
+                    Transaction transaction = readTransaction(in);
+                    Recipe recipe = RecipeBook.lookup(orderOf(transaction));
+                    take(StockItem.COFFEE_BEANS, recipe.getCoffeeUnits());
+                    take(StockItem.WATER, recipe.getWaterUnits());
+                    take(StockItem.MILK, recipe.getMilkUnits());
+                    take(recipe.getCup(), 1);
+                    truck.restoreTransaction(transaction);
+                    break;
+                case RESTOCK:
+                    int slot = in.getInt();
+                    levels[slot] += in.getInt();
+                    break;
+                case SET_BIN:
+                    readBin(in, in.getInt());
+                    rebuildSlots();
+                    break;
+                case PRICE:
+                    truck.setPricing(getString(in), getString(in), in.getDouble());
+                    break;
+                case ADDON_PRICE:
+                    ((SpecialCoffeeTruck) truck).setAddonPricing(in.getDouble(), in.getDouble());
+                    break;
+                case LOCATION:
+                    truck.setLocation(getString(in));
+                    break;
+                default:
+                    throw new IOException("Unknown journal record type: " + type);
+            }
+        }
+
+        /**
+         * Installs the replayed bins on the truck
+         * @return The recovered truck
+         */
+        CoffeeTruck finish() {
+            for (int slot = 0; slot < itemTypes.length; slot++) {
+                if (itemTypes[slot] != null) {
+                    StorageBin bin = new StorageBin(itemTypes[slot], levels[slot], capacities[slot]);
+                    // Stock handed back by a failed reservation can leave a bin above capacity
+                    bin.returnItems(levels[slot] - bin.getCurrentQuantity());
+                    truck.setStorageBin(slot, bin);
+                }
+            }
+            return truck;
+        }
+
+        private void readBin(ByteBuffer in, int slot) {
+            if (in.get() == 0) {
+                itemTypes[slot] = null;
+                levels[slot] = 0;
+                capacities[slot] = 0;
+            } else {
+                itemTypes[slot] = getString(in);
+                levels[slot] = in.getInt();
+                capacities[slot] = in.getInt();
+            }
+        }
+
+        /**
+         * Recomputes the slot sales draw each item from - the first bin holding it,
+         * as in CoffeeTruck
+         */
+        private void rebuildSlots() {
+            java.util.Arrays.fill(slotFor, -1);
+            for (int slot = itemTypes.length - 1; slot >= 0; slot--) {
+                StockItem item = itemTypes[slot] != null ? StockItem.fromLabel(itemTypes[slot]) : null;
+                if (item != null) {
+                    slotFor[item.ordinal()] = slot;
+                }
+            }
+        }
+
+        private void take(StockItem item, int amount) {
+            int slot = slotFor[item.ordinal()];
+            if (slot >= 0) {
+                levels[slot] -= amount;
+            }
+        }
+
+        private static Transaction readTransaction(ByteBuffer in) {
+            String drinkType = getString(in);
+            String size = getString(in);
+            String brewType = getString(in);
+            boolean extraShot = in.get() != 0;
+            int addonCount = in.getInt();
+            List<String> addons = new ArrayList<>(addonCount);
+            for (int i = 0; i < addonCount; i++) {
+                addons.add(getString(in));
+            }
+            double totalPrice = in.getDouble();
+            long timestamp = in.getLong();
+
+            CoffeeOrder order = new CoffeeOrder(drinkType, size, brewType, addons, extraShot);
+            return new Transaction(order, RecipeBook.lookup(order).getRequirement(), totalPrice, timestamp);
+        }
+
+        private static CoffeeOrder orderOf(Transaction transaction) {
+            return new CoffeeOrder(transaction.getDrinkType(), transaction.getSize(),
+                    transaction.getBrewType(), transaction.getAddons(), transaction.isExtraShot());
+        }
+    }
+
+    // ========================================
+    // RECORD BUFFER
+    // ========================================
+
+    /**
+     * Growable heap buffer that frames records with their length and CRC
+     */
+    private static final class RecordBuffer {
+
+        private ByteBuffer buffer;
+        private int recordStart;
+        private final CRC32 crc = new CRC32();
+
+        RecordBuffer(int capacity) {
+            this.buffer = ByteBuffer.allocate(capacity);
+        }
+
+        void begin(byte type) {
+            recordStart = buffer.position();
+            putInt(0); // Length, filled in by end()
+            putByte(type);
+        }
+
+        void end() {
+            int length = buffer.position() - recordStart - 4;
+            buffer.putInt(recordStart, length);
+            crc.reset();
+            crc.update(buffer.array(), recordStart + 4, length);
+            putInt((int) crc.getValue());
+        }
+
+        boolean isEmpty() {
+            return buffer.position() == 0;
+        }
+
+        void clear() {
+            buffer.clear();
+            recordStart = 0;
+        }
+
+        /**
+         * Gets the buffered bytes for writing, leaving the buffer itself untouched
+         * @return View from the start of the buffer to the last byte written
+         */
+        ByteBuffer forWriting() {
+            ByteBuffer view = buffer.duplicate();
+            view.flip();
+            return view;
+        }
+
+        void putByte(byte value) {
+            ensureRoom(1);
+            buffer.put(value);
+        }
+
+        void putInt(int value) {
+            ensureRoom(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) {
+            ensureRoom(8);
+            buffer.putLong(value);
+        }
+
+        void putDouble(double value) {
+            ensureRoom(8);
+            buffer.putDouble(value);
+        }
+
+        void putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            ensureRoom(bytes.length);
+            buffer.put(bytes);
+        }
+
+        private void ensureRoom(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+// Plants vs Zombies - game loop benchmarks
+//
+// Compiled together with the game so it can reach the package-private classes:
+//   javac -d bench-build src/PlantsVsZombiesGame.java bench/GameLoopBenchmark.java
+//   java -cp bench-build GameLoopBenchmark [name-filter] [-p 10,100,1000,10000] [-wi 3] [-i 5] [-r 500]
+//
+// Works like a small JMH: every benchmark runs warmup and measurement iterations of a fixed length
+// against a board built before timing starts, and reports throughput plus allocation per op and
+// per second, read from the thread's allocation counter. No Swing, no audio.
+import java.util.*;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * A timed operation against a prebuilt board
+ */
+interface BenchmarkState {
+    /**
+     * Run the operation ops times and return something derived from the results, so the JIT can't drop the work
+     */
+    long run(int ops);
+
+    /**
+     * How many ops this board can take before it drifts too far from how it was built - the harness
+     * builds a fresh board after that, outside the timed region
+     */
+    default int opsPerBoard() { return Integer.MAX_VALUE; }
+}
+
+/**
+ * Board of the given size: zombies spread over the right half of every lane, as many plants as the
+ * grid holds (up to count) and count peas in flight
+ */
+class BenchmarkBoard {
+    static final long SEED = 42L;
+
+    static GameManager build(int count) {
+        GameManager game = GameManager.createHeadless(SEED);
+        Random random = new Random(SEED);
+        int rows = game.getGridRows();
+        int cols = game.getGridCols();
+
+        game.addSun(1_000_000);
+        int plants = Math.min(count, rows * cols);
+        for (int i = 0; i < plants; i++) {
+            int row = i % rows;
+            int col = i / rows;
+            game.placePlant(row, col, col % 3 == 0 ? Sunflower.class : Peashooter.class);
+        }
+
+        // Far enough right that no zombie gets home during a board's worth of ticks
+        for (int i = 0; i < count; i++) {
+            game.spawnZombie(i % rows, random.nextInt(3), 400 + random.nextInt(381));
+        }
+        for (int i = 0; i < count; i++) {
+            int row = i % rows;
+            game.firePea(100 + random.nextInt(700), 50 + row * game.getTileHeight() + 30, row, 20);
+        }
+
+        // A zero-length tick brings everything into the stores and sorts the lane index
+        game.tick(0);
+        return game;
+    }
+}
+
+public class GameLoopBenchmark {
+    private static final int[] DEFAULT_COUNTS = {10, 100, 1_000, 10_000};
+    private static final int BATCH = 64; // Ops between clock reads
+
+    private static long sink; // Keeps results alive
+
+    private final String name;
+    private final IntFunction<BenchmarkState> setup;
+
+    private GameLoopBenchmark(String name, IntFunction<BenchmarkState> setup) {
+        this.name = name;
+        this.setup = setup;
+    }
+
+    private static List<GameLoopBenchmark> all() {
+        List<GameLoopBenchmark> benchmarks = new ArrayList<>();
+
+        // One fixed 16 ms tick of the whole loop. Allocation here is the pools and stores growing to fit a
+        // freshly built board, which a real game pays once
+        benchmarks.add(new GameLoopBenchmark("update", count -> {
+            GameManager game = BenchmarkBoard.build(count);
+            return new BenchmarkState() {
+                public long run(int ops) {
+                    for (int i = 0; i < ops; i++) {
+                        game.tick(GameManager.TICK_MILLIS);
+                    }
+                    return game.getZombieCount() + game.getTickCount();
+                }
+
+                // About a second of game time - peas are still in flight and nobody has reached home
+                public int opsPerBoard() { return 64; }
+            };
+        }));
+
+        // Zombie-vs-plant pass on a frozen clock, so each chewing zombie only bites on the first call
+        benchmarks.add(new GameLoopBenchmark("handleCombat", count -> {
+            GameManager game = BenchmarkBoard.build(count);
+            return ops -> {
+                for (int i = 0; i < ops; i++) {
+                    game.handleCombat();
+                }
+                return game.getPlantCount();
+            };
+        }));
+
+        // Blast query around every tile in turn - zero damage keeps the board unchanged between ops
+        benchmarks.add(new GameLoopBenchmark("explodeArea", count -> {
+            GameManager game = BenchmarkBoard.build(count);
+            int tiles = game.getGridRows() * game.getGridCols();
+            return new BenchmarkState() {
+                private int tile;
+
+                public long run(int ops) {
+                    for (int i = 0; i < ops; i++) {
+                        int row = tile / game.getGridCols();
+                        int col = tile % game.getGridCols();
+                        game.explodeArea(50 + col * game.getTileWidth() + 30, 50 + row * game.getTileHeight() + 30, 150, 0);
+                        tile = (tile + 1) % tiles;
+                    }
+                    return tile;
+                }
+            };
+        }));
+
+        benchmarks.add(new GameLoopBenchmark("getZombiesInLane", count -> {
+            GameManager game = BenchmarkBoard.build(count);
+            return new BenchmarkState() {
+                private int lane;
+
+                public long run(int ops) {
+                    long total = 0;
+                    for (int i = 0; i < ops; i++) {
+                        total += game.getZombiesInLane(lane).size();
+                        lane = (lane + 1) % game.getGridRows();
+                    }
+                    return total;
+                }
+            };
+        }));
+
+        // One pea tested against every zombie in turn, re-armed whenever it hits
+        benchmarks.add(new GameLoopBenchmark("checkCollision", count -> {
+            GameManager game = BenchmarkBoard.build(count);
+            Zombie[] zombies = new Zombie[count];
+            int filled = 0;
+            for (int lane = 0; lane < game.getGridRows(); lane++) {
+                for (Zombie zombie : game.getZombiesInLane(lane)) {
+                    zombies[filled++] = zombie;
+                }
+            }
+            int size = filled;
+            Pea pea = new Pea(600, 80, 0, 0);
+            return new BenchmarkState() {
+                private int next;
+
+                public long run(int ops) {
+                    long hits = 0;
+                    for (int i = 0; i < ops; i++) {
+                        if (pea.checkCollision(zombies[next])) {
+                            hits++;
+                            pea.reset(600, 80, 0, 0);
+                        }
+                        next = next + 1 == size ? 0 : next + 1;
+                    }
+                    return hits;
+                }
+            };
+        }));
+
+        return benchmarks;
+    }
+
+    public static void main(String[] args) {
+        String filter = null;
+        int[] counts = DEFAULT_COUNTS;
+        int warmupIterations = 3;
+        int iterations = 5;
+        long iterationMillis = 500;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-p":
+                    counts = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "-wi":
+                    warmupIterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-i":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-r":
+                    iterationMillis = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    filter = args[i];
+            }
+        }
+
+        System.out.printf("%-18s %8s %5s %14s %12s %8s %12s %12s%n",
+                "Benchmark", "(count)", "Cnt", "Score", "Error", "Units", "alloc B/op", "alloc MB/s");
+        for (GameLoopBenchmark benchmark : all()) {
+            if (filter != null && !benchmark.name.contains(filter)) continue;
+            for (int count : counts) {
+                benchmark.measure(count, warmupIterations, iterations, iterationMillis);
+            }
+        }
+        System.out.println("(sink " + sink + ")");
+    }
+
+    private void measure(int count, int warmupIterations, int iterations, long iterationMillis) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        double[] scores = new double[iterations];
+        long measuredOps = 0;
+        long measuredNanos = 0;
+        long measuredBytes = 0;
+
+        BenchmarkState state = setup.apply(count);
+        int opsOnBoard = 0;
+        for (int iteration = -warmupIterations; iteration < iterations; iteration++) {
+            long iterationOps = 0;
+            long iterationNanos = 0;
+            long iterationBytes = 0;
+            while (iterationNanos < iterationMillis * 1_000_000L) {
+                int batch = Math.min(BATCH, state.opsPerBoard() - opsOnBoard);
+                if (batch == 0) {
+                    state = setup.apply(count);
+                    opsOnBoard = 0;
+                    continue;
+                }
+                long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                sink += state.run(batch);
+                iterationNanos += System.nanoTime() - start;
+                iterationBytes += threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+                iterationOps += batch;
+                opsOnBoard += batch;
+            }
+            if (iteration >= 0) {
+                scores[iteration] = iterationOps * 1e9 / iterationNanos;
+                measuredOps += iterationOps;
+                measuredNanos += iterationNanos;
+                measuredBytes += iterationBytes;
+            }
+        }
+
+        double mean = 0;
+        for (double score : scores) mean += score;
+        mean /= iterations;
+        double variance = 0;
+        for (double score : scores) variance += (score - mean) * (score - mean);
+        double stddev = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+
+        double bytesPerOp = (double) measuredBytes / measuredOps;
+        double megabytesPerSecond = measuredBytes / (measuredNanos / 1e9) / (1024 * 1024);
+        System.out.printf("%-18s %8d %5d %14.1f %12s %8s %12.1f %12.1f%n", name, count, iterations, mean,
+                String.format("+- %.1f", stddev), "ops/s", bytesPerOp, megabytesPerSecond);
+    }
+}
@@ -0,0 +1,23 @@
+@echo off
+echo ===============================================
+echo   Plants vs Zombies - Game Loop Benchmarks
+echo ===============================================
+echo.
+
+REM Create build directory
+if not exist "build" mkdir build
+
+echo [1/2] Compiling game and benchmarks...
+javac -d build ..\src\PlantsVsZombiesGame.java GameLoopBenchmark.java
+if errorlevel 1 (
+    echo ERROR: Compilation failed!
+    pause
+    exit /b 1
+)
+
+echo [2/2] Running benchmarks...
+echo Optional arguments: [name-filter] [-p 10,100,1000,10000] [-wi 3] [-i 5] [-r 500]
+echo.
+java -cp build GameLoopBenchmark %*
+
+pause
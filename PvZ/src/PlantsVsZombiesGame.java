@@ -2,80 +2,177 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import javax.sound.sampled.*;
 import java.io.*;
 
 /**
  * Audio Manager - Handles background music and sound effects
+ *
+ * Music is streamed rather than loaded: a background thread decodes the file a chunk at a time into a
+ * SourceDataLine, so startup doesn't wait on decoding and only a fraction of a second of PCM is ever
+ * held in memory. At the end of the file the stream is reopened and written straight on into the same
+ * line, which keeps the loop gapless.
  */
 class AudioManager {
-    private Clip backgroundMusic;
-    private FloatControl volumeControl;
-    private float currentVolume = 0.7f;
-    private boolean isMuted = false;
+    private final File musicFile;
+    private volatile SourceDataLine line;
+    private volatile FloatControl volumeControl;
+    private volatile float currentVolume = 0.7f;
+    private volatile boolean isMuted = false;
     private float previousVolume = 0.7f;
+    private Thread musicThread;
+    private int generation; // Bumped by stop, so a superseded music thread knows to quit
+
+    private static final int BUFFER_MILLIS = 250;
 
     public AudioManager() {
-        loadBackgroundMusic();
+        musicFile = findMusicFile();
     }
 
-    private void loadBackgroundMusic() {
-        try {
-            File musicFile = new File("music.wav");
-            if (!musicFile.exists()) {
-                String[] possibleFiles = {"background.wav", "bgm.wav", "music.au", "music.aiff"};
-                boolean found = false;
-                for (String filename : possibleFiles) {
-                    musicFile = new File(filename);
-                    if (musicFile.exists()) {
-                        found = true;
-                        break;
-                    }
-                }
-                if (!found) {
-                    System.out.println("No music file found. Looking for: music.wav, background.wav, or bgm.wav");
-                    return;
-                }
+    private static File findMusicFile() {
+        File musicFile = new File("music.wav");
+        if (musicFile.exists()) {
+            return musicFile;
+        }
+        String[] possibleFiles = {"background.wav", "bgm.wav", "music.au", "music.aiff"};
+        for (String filename : possibleFiles) {
+            musicFile = new File(filename);
+            if (musicFile.exists()) {
+                return musicFile;
             }
+        }
+        System.out.println("No music file found. Looking for: music.wav, background.wav, or bgm.wav");
+        return null;
+    }
 
-            AudioInputStream audioStream = AudioSystem.getAudioInputStream(musicFile);
-            backgroundMusic = AudioSystem.getClip();
-            backgroundMusic.open(audioStream);
+    /**
+     * Start streaming the music from the top on its own thread - returns right away
+     */
+    public synchronized void playBackgroundMusic() {
+        if (musicFile == null || musicThread != null) {
+            return;
+        }
+        int playing = generation;
+        musicThread = new Thread(() -> streamMusic(playing), "pvz-music");
+        musicThread.setDaemon(true);
+        musicThread.start();
+    }
 
-            if (backgroundMusic.isControlSupported(FloatControl.Type.MASTER_GAIN)) {
-                volumeControl = (FloatControl) backgroundMusic.getControl(FloatControl.Type.MASTER_GAIN);
-                setVolume(currentVolume);
-            }
-            System.out.println("✓ Background music loaded successfully: " + musicFile.getName());
-        } catch (Exception e) {
-            System.out.println("✗ Could not load background music: " + e.getMessage());
+    public synchronized void stopBackgroundMusic() {
+        generation++;
+        musicThread = null;
+        SourceDataLine playingLine = line;
+        if (playingLine != null) {
+            // Closing unblocks a write() in progress, so the music thread sees the stop straight away
+            playingLine.close();
         }
     }
 
-    public void playBackgroundMusic() {
-        if (backgroundMusic != null && !backgroundMusic.isRunning()) {
-            backgroundMusic.setFramePosition(0);
-            backgroundMusic.loop(Clip.LOOP_CONTINUOUSLY);
-            System.out.println("♪ Background music started playing");
+    private synchronized boolean isCurrent(int playing) {
+        return generation == playing;
+    }
+
+    private void streamMusic(int playing) {
+        SourceDataLine playingLine = null;
+        try {
+            AudioInputStream stream = openMusicStream();
+            AudioFormat format = stream.getFormat();
+            int frameSize = Math.max(1, format.getFrameSize());
+            int bufferBytes = Math.max(frameSize, (int) (format.getFrameRate() * BUFFER_MILLIS / 1000) * frameSize);
+
+            playingLine = AudioSystem.getSourceDataLine(format);
+            playingLine.open(format, bufferBytes);
+            synchronized (this) {
+                if (generation != playing) {
+                    playingLine.close();
+                    return;
+                }
+                line = playingLine;
+                volumeControl = playingLine.isControlSupported(FloatControl.Type.MASTER_GAIN)
+                        ? (FloatControl) playingLine.getControl(FloatControl.Type.MASTER_GAIN) : null;
+            }
+            setVolume(currentVolume);
+            playingLine.start();
+            System.out.println("♪ Background music streaming: " + musicFile.getName());
+
+            byte[] chunk = new byte[bufferBytes / 2 / frameSize * frameSize + frameSize];
+            long bytesThisPass = 0;
+            while (isCurrent(playing)) {
+                int read = stream.read(chunk, 0, chunk.length);
+                if (read < 0) {
+                    if (bytesThisPass == 0) {
+                        break; // Nothing to loop
+                    }
+                    // Loop: carry straight on from the top of a fresh stream without draining the line
+                    stream.close();
+                    stream = openMusicStream();
+                    bytesThisPass = 0;
+                    continue;
+                }
+                bytesThisPass += read;
+                playingLine.write(chunk, 0, read);
+            }
+            stream.close();
+        } catch (Exception e) {
+            if (isCurrent(playing)) {
+                System.out.println("✗ Could not play background music: " + e.getMessage());
+            }
+        } finally {
+            if (playingLine != null) {
+                playingLine.close();
+            }
+            synchronized (this) {
+                if (line == playingLine) {
+                    line = null;
+                    volumeControl = null;
+                }
+                if (generation == playing) {
+                    musicThread = null; // Ended on its own - let the next playBackgroundMusic() start afresh
+                }
+            }
         }
     }
 
-    public void stopBackgroundMusic() {
-        if (backgroundMusic != null && backgroundMusic.isRunning()) {
-            backgroundMusic.stop();
+    /**
+     * The music file as PCM a line can play, decoding it on the fly if it's stored some other way
+     */
+    private AudioInputStream openMusicStream() throws IOException, UnsupportedAudioFileException {
+        AudioInputStream stream = AudioSystem.getAudioInputStream(new BufferedInputStream(new FileInputStream(musicFile)));
+        AudioFormat format = stream.getFormat();
+        if (format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED || format.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED) {
+            return stream;
         }
+        AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16,
+                format.getChannels(), format.getChannels() * 2, format.getSampleRate(), false);
+        return AudioSystem.getAudioInputStream(pcm, stream);
     }
 
     public void setVolume(float volume) {
-        if (volumeControl != null) {
-            currentVolume = Math.max(0.0f, Math.min(1.0f, volume));
-            float minGain = volumeControl.getMinimum();
-            float maxGain = volumeControl.getMaximum();
+        currentVolume = Math.max(0.0f, Math.min(1.0f, volume));
+        FloatControl control = volumeControl;
+        if (control != null) {
+            float minGain = control.getMinimum();
+            float maxGain = control.getMaximum();
             float gain = currentVolume == 0.0f ? minGain : minGain + (maxGain - minGain) * currentVolume;
-            volumeControl.setValue(gain);
+            control.setValue(gain);
         }
     }
 
@@ -97,9 +194,380 @@ class AudioManager {
     public boolean isMuted() { return isMuted; }
 
     public void dispose() {
-        if (backgroundMusic != null) {
-            backgroundMusic.close();
+        stopBackgroundMusic();
+    }
+}
+
+/**
+ * Shared colors, fonts and strokes - created once instead of on every frame
+ */
+final class GamePaints {
+    static final Font SMALL_FONT = new Font("Arial", Font.BOLD, 10);
+    static final Font LABEL_FONT = new Font("Arial", Font.BOLD, 12);
+    static final Font PLANT_FONT = new Font("Arial", Font.BOLD, 14);
+    static final Font HUD_FONT = new Font("Arial", Font.BOLD, 16);
+    static final Font SUBTITLE_FONT = new Font("Arial", Font.BOLD, 20);
+    static final Font TITLE_FONT = new Font("Arial", Font.BOLD, 48);
+    static final Font OVERLAY_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 11);
+
+    static final Color LAWN_GREEN = new Color(34, 139, 34);
+    static final Color DARK_GREEN = new Color(0, 100, 0);
+    static final Color STEM_GREEN = new Color(0, 128, 0);
+    static final Color PEA_GREEN = new Color(124, 252, 0);
+    static final Color ZOMBIE_SKIN = new Color(139, 169, 19);
+    static final Color UI_BROWN = new Color(101, 67, 33);
+    static final Color GAME_OVER_SHADE = new Color(0, 0, 0, 128);
+    static final Color OVERLAY_SHADE = new Color(0, 0, 0, 170);
+
+    static final Color SUN_GLOW = new Color(255, 255, 0, 100);
+    static final Color SUN_OUTER_GLOW = new Color(255, 215, 0, 60);
+    static final Color SUN_GROUND_GLOW = new Color(255, 255, 0, 80);
+    static final Color SUN_GROUND_OUTER_GLOW = new Color(255, 255, 150, 40);
+    static final Color SUN_HINT = new Color(255, 255, 255, 150);
+    static final Color[] SUN_TRAIL = {
+            new Color(255, 255, 0, 30), new Color(255, 255, 0, 15), new Color(255, 255, 0, 10)
+    };
+
+    static final BasicStroke THIN_STROKE = new BasicStroke(2);
+    static final BasicStroke THICK_STROKE = new BasicStroke(3);
+
+    private GamePaints() {}
+}
+
+/**
+ * Free list for short-lived objects like peas and suns, so steady-state play doesn't allocate
+ */
+class ObjectPool<T> {
+    private Object[] free;
+    private int freeCount;
+    private final Supplier<T> factory;
+
+    public ObjectPool(Supplier<T> factory, int prefill) {
+        this.factory = factory;
+        this.free = new Object[Math.max(32, prefill)];
+        for (int i = 0; i < prefill; i++) {
+            free[freeCount++] = factory.get();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        if (freeCount == 0) {
+            return factory.get();
+        }
+        T item = (T) free[--freeCount];
+        free[freeCount] = null;
+        return item;
+    }
+
+    public void release(T item) {
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        free[freeCount++] = item;
+    }
+
+    public int available() { return freeCount; }
+}
+
+/**
+ * Draws one variant of an entity's look at (x, y), the same way render() used to draw it live
+ */
+interface SpritePainter {
+    void paint(Graphics2D g, int x, int y, int variant);
+}
+
+/**
+ * All the looks of one entity type, rendered once into images on first use and blitted after that.
+ * Variants cover anything that changes the picture, e.g. the width of the health bar.
+ */
+class SpriteSheet {
+    private final BufferedImage[] variants;
+    private final int offsetX, offsetY;
+    private final int width, height;
+    private final SpritePainter painter;
+
+    /**
+     * offsetX/offsetY is where the image's corner sits relative to the entity's (x, y) - usually
+     * negative, since health bars and effects poke out above and to the left
+     */
+    public SpriteSheet(int variantCount, int offsetX, int offsetY, int width, int height, SpritePainter painter) {
+        this.variants = new BufferedImage[variantCount];
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.width = width;
+        this.height = height;
+        this.painter = painter;
+    }
+
+    public void draw(Graphics g, int variant, int x, int y) {
+        BufferedImage image = variants[variant];
+        if (image == null) {
+            image = renderVariant(variant);
+        }
+        g.drawImage(image, x + offsetX, y + offsetY, null);
+    }
+
+    /**
+     * Render every variant up front so none gets created mid-game
+     */
+    public void prerender() {
+        for (int variant = 0; variant < variants.length; variant++) {
+            if (variants[variant] == null) {
+                renderVariant(variant);
+            }
+        }
+    }
+
+    private BufferedImage renderVariant(int variant) {
+        BufferedImage image = SpriteSheet.createImage(width, height, Transparency.TRANSLUCENT);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        painter.paint(g2d, -offsetX, -offsetY, variant);
+        g2d.dispose();
+        variants[variant] = image;
+        return image;
+    }
+
+    /**
+     * Image in the screen's native format when there is a screen, so blits skip pixel conversion
+     */
+    public static BufferedImage createImage(int width, int height, int transparency) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(width, height,
+                    transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDefaultConfiguration().createCompatibleImage(width, height, transparency);
+    }
+}
+
+/**
+ * Sprite sheets for every entity type. Health-bar variants are indexed by the green bar's pixel width.
+ */
+final class Sprites {
+    static final SpriteSheet NORMAL_ZOMBIE = new SpriteSheet(41, -2, -10, 46, 74, NormalZombie::paint);
+    static final SpriteSheet FLAG_ZOMBIE = new SpriteSheet(41, -2, -10, 56, 74, FlagZombie::paint);
+    static final SpriteSheet CONEHEAD_ZOMBIE = new SpriteSheet(41, -2, -17, 46, 81, ConeheadZombie::paint);
+    static final SpriteSheet SUNFLOWER = new SpriteSheet(61, -2, -10, 66, 68, Sunflower::paint);
+    static final SpriteSheet PEASHOOTER = new SpriteSheet(61, -2, -10, 70, 68, Peashooter::paint);
+    // Fuse: no label, "1", "2"
+    static final SpriteSheet CHERRY_BOMB = new SpriteSheet(3, -2, -2, 62, 36, CherryBomb::paintFuse);
+    // One image per pulse size (0-20) of the explosion animation
+    static final SpriteSheet EXPLOSION = new SpriteSheet(21, -82, -82, 224, 224, CherryBomb::paintExplosion);
+    static final SpriteSheet PEA = new SpriteSheet(1, -2, -2, 13, 13, (g, x, y, variant) -> {
+        g.setColor(GamePaints.PEA_GREEN);
+        g.fillOval(x, y, 8, 8);
+        g.setColor(Color.BLACK);
+        g.drawOval(x, y, 8, 8);
+    });
+    // Sun bodies by pulse size, ground first then falling; rays are blitted separately so they can rotate
+    static final SpriteSheet SUN = new SpriteSheet(Sun.SIZE_VARIANTS * 2, -50, -50, 100, 100,
+            (g, x, y, variant) -> Sun.paintBody(g, x, y, Sun.MIN_SIZE + variant % Sun.SIZE_VARIANTS, variant >= Sun.SIZE_VARIANTS));
+    static final SpriteSheet SUN_RAY = new SpriteSheet(1, -3, -3, 6, 6, (g, x, y, variant) -> {
+        g.setColor(Color.ORANGE);
+        g.fillOval(x - 2, y - 2, 4, 4);
+    });
+
+    private static final SpriteSheet[] ALL = {
+            NORMAL_ZOMBIE, FLAG_ZOMBIE, CONEHEAD_ZOMBIE, SUNFLOWER, PEASHOOTER, CHERRY_BOMB, EXPLOSION, PEA, SUN, SUN_RAY
+    };
+
+    /**
+     * Render every sprite up front - call once at startup, before the first frame
+     */
+    static void prerenderAll() {
+        for (SpriteSheet sheet : ALL) {
+            sheet.prerender();
+        }
+    }
+
+    private Sprites() {}
+}
+
+/**
+ * Everything needed to draw one frame: the sprites to blit in order plus the values the HUD shows.
+ * Filled by the simulation thread and read by the UI thread, never both at once - see SnapshotBuffer.
+ * Arrays are kept between frames, so filling a snapshot only allocates while they are still growing.
+ *
+ * Each sprite also keeps where it was one tick earlier, so the renderer can draw it part of the way
+ * between the two and motion stays smooth when the simulation ticks slower than the display refreshes.
+ */
+class RenderSnapshot {
+    private SpriteSheet[] sheets = new SpriteSheet[256];
+    private int[] variants = new int[256];
+    private int[] xs = new int[256];
+    private int[] ys = new int[256];
+    private int[] previousXs = new int[256];
+    private int[] previousYs = new int[256];
+    private int spriteCount;
+
+    // nanoTime the newest tick was due at and the tick length - 0 means draw as is, no interpolation
+    private long tickNanos;
+    private long tickLengthNanos;
+    private boolean moved; // Whether the last tick moved anything, i.e. the previous positions mean something
+
+    private int gridRows, gridCols, tileWidth, tileHeight;
+    private int sunCount;
+    private int secondsLeft;
+    private String phaseLabel = "";
+    private int zombieCount;
+    private int sunsOnField;
+    private int volumePercent; // -1 when muted
+    private boolean gameOver;
+    private boolean playerWon;
+
+    public void clear() {
+        // Drop sheet references so the slots don't look meaningful to a debugger
+        Arrays.fill(sheets, 0, spriteCount, null);
+        spriteCount = 0;
+    }
+
+    public void addSprite(SpriteSheet sheet, int variant, int x, int y) {
+        addSprite(sheet, variant, x, y, x, y);
+    }
+
+    /**
+     * Sprite that was at (previousX, previousY) one tick ago
+     */
+    public void addSprite(SpriteSheet sheet, int variant, int x, int y, int previousX, int previousY) {
+        if (spriteCount == sheets.length) {
+            int capacity = sheets.length * 2;
+            sheets = Arrays.copyOf(sheets, capacity);
+            variants = Arrays.copyOf(variants, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            previousXs = Arrays.copyOf(previousXs, capacity);
+            previousYs = Arrays.copyOf(previousYs, capacity);
+        }
+        sheets[spriteCount] = sheet;
+        variants[spriteCount] = variant;
+        xs[spriteCount] = x;
+        ys[spriteCount] = y;
+        previousXs[spriteCount] = previousX;
+        previousYs[spriteCount] = previousY;
+        spriteCount++;
+    }
+
+    /**
+     * Set by whoever publishes the snapshot - tickNanos is the System.nanoTime() the newest tick was due at
+     */
+    public void setTiming(long tickNanos, long tickLengthNanos) {
+        this.tickNanos = tickNanos;
+        this.tickLengthNanos = tickLengthNanos;
+    }
+
+    public void setMoved(boolean moved) {
+        this.moved = moved;
+    }
+
+    /**
+     * How far from the previous positions (0) to the current ones (1) to draw at nowNanos
+     */
+    public float interpolationAlpha(long nowNanos) {
+        if (!moved || tickLengthNanos <= 0) {
+            return 1.0f;
+        }
+        long sinceTick = nowNanos - tickNanos;
+        if (sinceTick <= 0) return 0.0f;
+        if (sinceTick >= tickLengthNanos) return 1.0f;
+        return (float) sinceTick / tickLengthNanos;
+    }
+
+    public void setGrid(int rows, int cols, int tileWidth, int tileHeight) {
+        this.gridRows = rows;
+        this.gridCols = cols;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+    }
+
+    public void setHud(int sunCount, int secondsLeft, String phaseLabel, int zombieCount, int sunsOnField,
+                       int volumePercent, boolean gameOver, boolean playerWon) {
+        this.sunCount = sunCount;
+        this.secondsLeft = secondsLeft;
+        this.phaseLabel = phaseLabel;
+        this.zombieCount = zombieCount;
+        this.sunsOnField = sunsOnField;
+        this.volumePercent = volumePercent;
+        this.gameOver = gameOver;
+        this.playerWon = playerWon;
+    }
+
+    public void drawSprites(Graphics g) {
+        drawSprites(g, 1.0f);
+    }
+
+    /**
+     * Draw every sprite alpha of the way from where it was a tick ago to where it is now
+     */
+    public void drawSprites(Graphics g, float alpha) {
+        if (alpha >= 1.0f) {
+            for (int i = 0; i < spriteCount; i++) {
+                sheets[i].draw(g, variants[i], xs[i], ys[i]);
+            }
+            return;
+        }
+        for (int i = 0; i < spriteCount; i++) {
+            int x = previousXs[i] + Math.round((xs[i] - previousXs[i]) * alpha);
+            int y = previousYs[i] + Math.round((ys[i] - previousYs[i]) * alpha);
+            sheets[i].draw(g, variants[i], x, y);
+        }
+    }
+
+    // Getters
+    public int getSpriteCount() { return spriteCount; }
+    public int getGridRows() { return gridRows; }
+    public int getGridCols() { return gridCols; }
+    public int getTileWidth() { return tileWidth; }
+    public int getTileHeight() { return tileHeight; }
+    public int getSunCount() { return sunCount; }
+    public int getSecondsLeft() { return secondsLeft; }
+    public String getPhaseLabel() { return phaseLabel; }
+    public int getZombieCount() { return zombieCount; }
+    public int getSunsOnField() { return sunsOnField; }
+    public int getVolumePercent() { return volumePercent; }
+    public boolean isMuted() { return volumePercent < 0; }
+    public boolean isGameOver() { return gameOver; }
+    public boolean didPlayerWin() { return playerWon; }
+}
+
+/**
+ * Lock-free triple buffer of render snapshots. The writer always has a back buffer to fill and the
+ * reader always has a front buffer to draw; publish() and acquire() swap through a shared middle slot
+ * with one atomic exchange, so neither side ever waits for the other or sees a half-written frame.
+ */
+class SnapshotBuffer {
+    private static final int INDEX_MASK = 0b11;
+    private static final int FRESH = 0b100; // Middle slot holds a frame the reader hasn't taken yet
+
+    private final RenderSnapshot[] buffers = {new RenderSnapshot(), new RenderSnapshot(), new RenderSnapshot()};
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;  // Writer thread only
+    private int front = 2; // Reader thread only
+
+    /**
+     * Snapshot the writer should fill next
+     */
+    public RenderSnapshot back() {
+        return buffers[back];
+    }
+
+    /**
+     * Hand the filled back buffer to the reader and take the old middle slot as the new back buffer
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Newest published snapshot - the same one as last time if nothing new has been published.
+     * It stays untouched until the next acquire() from the same thread.
+     */
+    public RenderSnapshot acquire() {
+        if ((middle.get() & FRESH) != 0) {
+            front = middle.getAndSet(front) & INDEX_MASK;
         }
+        return buffers[front];
     }
 }
 
@@ -108,6 +576,7 @@ class AudioManager {
  */
 class Sun {
     private float x, y;
+    private float previousY; // Where it was a tick ago, for render interpolation - suns only move down
     private float targetY;
     protected boolean falling; // Changed from private to protected
     private boolean collectible;
@@ -115,39 +584,69 @@ class Sun {
     private long collectibleTime;
     private boolean collected;
     private float pulsePhase;
+    private int id; // Unique within its game - pooled suns get a new one on every reset
+
+    // The pulse keeps the body between these sizes; one sprite per size, ground and falling
+    static final int MIN_SIZE = 21;
+    private static final int MAX_SIZE = 28;
+    static final int SIZE_VARIANTS = MAX_SIZE - MIN_SIZE + 1;
+
+    // Pooled sun, reset before use
+    public Sun() {
+        this.collected = true;
+    }
 
     // Sky sun constructor
-    public Sun(float x, float targetY) {
+    public Sun(float x, float targetY, long currentTime) {
+        resetAsSkySun(x, targetY, currentTime);
+    }
+
+    // Sunflower sun constructor
+    public Sun(float x, float y, boolean fromSunflower, long currentTime) {
+        resetAsDrop(x, y, currentTime);
+    }
+
+    public Sun resetAsSkySun(float x, float targetY, long currentTime) {
         this.x = x;
         this.y = -30; // Start above screen
+        this.previousY = y;
         this.targetY = targetY;
         this.falling = true;
         this.collectible = false;
-        this.createdTime = System.currentTimeMillis();
+        this.createdTime = currentTime;
+        this.collectibleTime = 0;
         this.collected = false;
         this.pulsePhase = 0;
+        return this;
     }
 
-    // Sunflower sun constructor
-    public Sun(float x, float y, boolean fromSunflower) {
+    public Sun resetAsDrop(float x, float y, long currentTime) {
         this.x = x;
         this.y = y;
+        this.previousY = y;
         this.targetY = y; // Already at target position
         this.falling = false;
         this.collectible = true;
-        this.createdTime = System.currentTimeMillis();
-        this.collectibleTime = System.currentTimeMillis();
+        this.createdTime = currentTime;
+        this.collectibleTime = currentTime;
         this.collected = false;
         this.pulsePhase = 0;
+        return this;
     }
 
-    public void update() {
-        long currentTime = System.currentTimeMillis();
-        pulsePhase += 0.2f;
+    /**
+     * Fall, pulse and expire over dtMillis of game time - speeds are per GameManager.TICK_MILLIS
+     */
+    public void update(long currentTime, long dtMillis) {
+        float steps = (float) dtMillis / GameManager.TICK_MILLIS;
+        previousY = y;
+
+        // Pulsing effect - faster pulse when falling for attention
+        pulsePhase += (falling ? 0.6f : 0.4f) * steps;
 
         if (falling) {
             // Sun falls from sky
-            y += 2.0f;
+            y += 2.0f * steps;
             if (y >= targetY) {
                 y = targetY;
                 falling = false;
@@ -162,42 +661,55 @@ class Sun {
         }
     }
 
-    public void render(Graphics g) {
+    public void render(RenderSnapshot frame) {
         if (collected) return;
 
-        Graphics2D g2d = (Graphics2D) g;
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-        // Pulsing effect - faster pulse when falling for attention
-        float pulseSpeed = falling ? 0.4f : 0.2f;
-        pulsePhase += pulseSpeed;
         float pulse = 1.0f + 0.15f * (float)Math.sin(pulsePhase);
-        int size = (int)(25 * pulse);
-        int drawX = (int)(x - size/2);
-        int drawY = (int)(y - size/2);
+        int size = Math.max(MIN_SIZE, Math.min(MAX_SIZE, (int)(25 * pulse)));
+
+        // Glow, body, face, value and border come from the sprite - only the rays move freely
+        int variant = (falling ? SIZE_VARIANTS : 0) + size - MIN_SIZE;
+        int previousY = (int) this.previousY;
+        frame.addSprite(Sprites.SUN, variant, (int) x, (int) y, (int) x, previousY);
+
+        // Sun rays - rotate faster when falling
+        float rayRotation = falling ? pulsePhase * 0.2f : pulsePhase * 0.1f;
+        for (int i = 0; i < 8; i++) {
+            double angle = i * Math.PI / 4 + rayRotation;
+            int rayX = (int)(x + (size/2 + 8) * Math.cos(angle));
+            int rayY = (int)(y + (size/2 + 8) * Math.sin(angle));
+            frame.addSprite(Sprites.SUN_RAY, 0, rayX, rayY, rayX, rayY - ((int) y - previousY));
+        }
+    }
+
+    /**
+     * Everything but the rays, centered on (x, y)
+     */
+    static void paintBody(Graphics2D g2d, int x, int y, int size, boolean falling) {
+        int drawX = x - size/2;
+        int drawY = y - size/2;
 
         // Different glow effects for falling vs stationary
         if (falling) {
             // Falling sun - bright animated glow trail
-            g2d.setColor(new Color(255, 255, 0, 100));
+            g2d.setColor(GamePaints.SUN_GLOW);
             g2d.fillOval(drawX - 15, drawY - 15, size + 30, size + 30);
 
-            g2d.setColor(new Color(255, 215, 0, 60));
+            g2d.setColor(GamePaints.SUN_OUTER_GLOW);
             g2d.fillOval(drawX - 20, drawY - 20, size + 40, size + 40);
 
             // Trail effect for falling suns
             for (int i = 1; i <= 3; i++) {
                 int trailY = drawY - (i * 8);
-                int trailAlpha = 30 / i;
-                g2d.setColor(new Color(255, 255, 0, trailAlpha));
+                g2d.setColor(GamePaints.SUN_TRAIL[i - 1]);
                 g2d.fillOval(drawX + 5, trailY + 5, size - 10, size - 10);
             }
-        } else if (collectible) {
+        } else {
             // Stationary sun - steady glow
-            g2d.setColor(new Color(255, 255, 0, 80));
+            g2d.setColor(GamePaints.SUN_GROUND_GLOW);
             g2d.fillOval(drawX - 10, drawY - 10, size + 20, size + 20);
 
-            g2d.setColor(new Color(255, 255, 150, 40));
+            g2d.setColor(GamePaints.SUN_GROUND_OUTER_GLOW);
             g2d.fillOval(drawX - 15, drawY - 15, size + 30, size + 30);
         }
 
@@ -205,16 +717,6 @@ class Sun {
         g2d.setColor(Color.YELLOW);
         g2d.fillOval(drawX, drawY, size, size);
 
-        // Sun rays - rotate faster when falling
-        float rayRotation = falling ? pulsePhase * 0.2f : pulsePhase * 0.1f;
-        g2d.setColor(Color.ORANGE);
-        for (int i = 0; i < 8; i++) {
-            double angle = i * Math.PI / 4 + rayRotation;
-            int rayX = (int)(x + (size/2 + 8) * Math.cos(angle));
-            int rayY = (int)(y + (size/2 + 8) * Math.sin(angle));
-            g2d.fillOval(rayX - 2, rayY - 2, 4, 4);
-        }
-
         // Sun face
         g2d.setColor(Color.BLACK);
         g2d.fillOval(drawX + size/3, drawY + size/3, 3, 3); // Eye
@@ -223,23 +725,20 @@ class Sun {
 
         // Value text
         g2d.setColor(Color.WHITE);
-        g2d.setFont(new Font("Arial", Font.BOLD, 12));
+        g2d.setFont(GamePaints.LABEL_FONT);
         String value = "25";
-        FontMetrics fm = g2d.getFontMetrics();
-        int textX = (int)(x - fm.stringWidth(value)/2);
-        int textY = (int)(y + 4);
-        g2d.drawString(value, textX, textY);
+        g2d.drawString(value, x - g2d.getFontMetrics().stringWidth(value)/2, y + 4);
 
         // Border - thicker when falling to show it's clickable
         g2d.setColor(Color.ORANGE);
-        g2d.setStroke(new BasicStroke(falling ? 3 : 2));
+        g2d.setStroke(falling ? GamePaints.THICK_STROKE : GamePaints.THIN_STROKE);
         g2d.drawOval(drawX, drawY, size, size);
 
         // Click hint for falling suns
         if (falling) {
-            g2d.setColor(new Color(255, 255, 255, 150));
-            g2d.setFont(new Font("Arial", Font.BOLD, 10));
-            g2d.drawString("CLICK!", (int)(x - 12), (int)(y - 20));
+            g2d.setColor(GamePaints.SUN_HINT);
+            g2d.setFont(GamePaints.SMALL_FONT);
+            g2d.drawString("CLICK!", x - 12, y - 20);
         }
     }
 
@@ -250,8 +749,9 @@ class Sun {
         if (!falling && !collectible) return false;
 
         // Larger click radius for easier collection (especially when falling)
-        double distance = Math.sqrt(Math.pow(mouseX - x, 2) + Math.pow(mouseY - y, 2));
-        if (distance <= 40) { // Increased to 40 for better mid-air catching
+        float dx = mouseX - x;
+        float dy = mouseY - y;
+        if (dx * dx + dy * dy <= 40 * 40) { // Increased to 40 for better mid-air catching
             collected = true;
             return true;
         }
@@ -260,9 +760,36 @@ class Sun {
 
     // Getters
     public boolean isCollected() { return collected; }
+    public int getId() { return id; }
+    Sun withId(int id) {
+        this.id = id;
+        return this;
+    }
     public boolean isCollectible() { return collectible; }
     public float getX() { return x; }
     public float getY() { return y; }
+
+    void writeState(ByteBuffer out) {
+        out.putFloat(x).putFloat(y).putFloat(targetY).putFloat(pulsePhase);
+        out.put((byte) ((falling ? 1 : 0) | (collectible ? 2 : 0) | (collected ? 4 : 0)));
+        out.putLong(createdTime).putLong(collectibleTime).putInt(id);
+    }
+
+    Sun readState(ByteBuffer in) {
+        x = in.getFloat();
+        y = in.getFloat();
+        targetY = in.getFloat();
+        pulsePhase = in.getFloat();
+        int flags = in.get();
+        falling = (flags & 1) != 0;
+        collectible = (flags & 2) != 0;
+        collected = (flags & 4) != 0;
+        createdTime = in.getLong();
+        collectibleTime = in.getLong();
+        id = in.getInt();
+        previousY = y;
+        return this;
+    }
 }
 
 /**
@@ -273,6 +800,7 @@ abstract class GameEntity {
     protected int health;
     protected int maxHealth;
     protected boolean alive;
+    protected boolean removed;
 
     public GameEntity(int x, int y, int health) {
         this.x = x;
@@ -282,8 +810,8 @@ abstract class GameEntity {
         this.alive = true;
     }
 
-    public abstract void update();
-    public abstract void render(Graphics g);
+    public abstract void update(long currentTime);
+    public abstract void render(RenderSnapshot frame);
 
     // Getters
     public int getX() { return x; }
@@ -291,6 +819,19 @@ abstract class GameEntity {
     public int getHealth() { return health; }
     public int getMaxHealth() { return maxHealth; }
     public boolean isAlive() { return alive; }
+    public boolean isRemoved() { return removed; }
+
+    /**
+     * Take the entity off the board at its store's next commit(), even if it is still alive - e.g. when shoveled
+     */
+    public void remove() { removed = true; }
+
+    /**
+     * Pixel width of the green part of a health bar that is fullWidth wide when unhurt
+     */
+    protected int healthBarWidth(int fullWidth) {
+        return (int)((double) fullWidth * health / maxHealth);
+    }
 
     public void takeDamage(int damage) {
         health -= damage;
@@ -299,6 +840,19 @@ abstract class GameEntity {
             alive = false;
         }
     }
+
+    /**
+     * Everything that changes after construction, for SaveState - subclasses append their own timers
+     */
+    void writeState(ByteBuffer out) {
+        out.putInt(x).putInt(health).put((byte) (alive ? 1 : 0));
+    }
+
+    void readState(ByteBuffer in) {
+        x = in.getInt();
+        health = in.getInt();
+        alive = in.get() != 0;
+    }
 }
 
 /**
@@ -310,25 +864,41 @@ abstract class Zombie extends GameEntity {
     protected int lane;
     protected long lastMoveTime;
     protected boolean attacking;
+    protected long nextBiteTime; // While attacking - each zombie chews on its own clock
+    protected int previousX; // Where it was a tick ago, for render interpolation
+    private int id; // Unique within its game, for clients that track zombies across frames
 
-    public Zombie(int x, int y, int health, int speed, int damage, int lane) {
+    public static final int WIDTH = 40;
+    public static final int HEIGHT = 60;
+    public static final int BITE_INTERVAL = 1000;
+
+    public Zombie(int x, int y, int health, int speed, int damage, int lane, long spawnTime) {
         super(x, y, health);
         this.speed = speed;
         this.damage = damage;
         this.lane = lane;
-        this.lastMoveTime = System.currentTimeMillis();
+        this.lastMoveTime = spawnTime;
         this.attacking = false;
+        this.previousX = x;
     }
 
+    /**
+     * Step 2 px every moveInterval of game time, however often that is sampled - a long tick takes
+     * every step that fell inside it, so walking speed doesn't depend on the tick rate
+     */
     @Override
-    public void update() {
-        if (!attacking) {
-            long currentTime = System.currentTimeMillis();
-            long moveInterval = 200 - (speed * 20);
-            if (currentTime - lastMoveTime >= moveInterval) {
-                x -= 2;
-                lastMoveTime = currentTime;
-            }
+    public void update(long currentTime) {
+        previousX = x;
+        long moveInterval = 200 - (speed * 20);
+        if (attacking) {
+            // No backlog builds up while chewing - the first step after letting go still comes right away
+            lastMoveTime = Math.max(lastMoveTime, currentTime - moveInterval);
+            return;
+        }
+        long steps = (currentTime - lastMoveTime) / moveInterval;
+        if (steps > 0) {
+            x -= (int) (2 * steps);
+            lastMoveTime += steps * moveInterval;
         }
     }
 
@@ -338,30 +908,71 @@ abstract class Zombie extends GameEntity {
     public boolean hasReachedHome() { return x <= 10; }
     public void setAttacking(boolean attacking) { this.attacking = attacking; }
     public boolean isAttacking() { return attacking; }
+    public int getId() { return id; }
+    void setId(int id) { this.id = id; }
+
+    /**
+     * Start chewing - the first bite lands right away
+     */
+    public void startAttacking(long currentTime) {
+        attacking = true;
+        nextBiteTime = currentTime;
+    }
+
+    /**
+     * Whether a bite is due now; if so the next one is booked BITE_INTERVAL later
+     */
+    public boolean takeBite(long currentTime) {
+        if (currentTime < nextBiteTime) {
+            return false;
+        }
+        nextBiteTime = currentTime + BITE_INTERVAL;
+        return true;
+    }
+
+    @Override
+    void writeState(ByteBuffer out) {
+        super.writeState(out);
+        out.putLong(lastMoveTime).putLong(nextBiteTime).put((byte) (attacking ? 1 : 0)).putInt(id);
+    }
+
+    @Override
+    void readState(ByteBuffer in) {
+        super.readState(in);
+        lastMoveTime = in.getLong();
+        nextBiteTime = in.getLong();
+        attacking = in.get() != 0;
+        id = in.getInt();
+        previousX = x;
+    }
 }
 
 /**
  * Normal Zombie
  */
 class NormalZombie extends Zombie {
-    public NormalZombie(int x, int y, int lane) {
-        super(x, y, 70, 4, 10, lane);
+    public NormalZombie(int x, int y, int lane, long spawnTime) {
+        super(x, y, 70, 4, 10, lane, spawnTime);
     }
 
     @Override
-    public void render(Graphics g) {
-        g.setColor(new Color(139, 169, 19));
+    public void render(RenderSnapshot frame) {
+        frame.addSprite(Sprites.NORMAL_ZOMBIE, healthBarWidth(40), x, y, previousX, y);
+    }
+
+    static void paint(Graphics2D g, int x, int y, int barWidth) {
+        g.setColor(GamePaints.ZOMBIE_SKIN);
         g.fillRect(x, y, 40, 60);
         g.setColor(Color.BLACK);
         g.drawRect(x, y, 40, 60);
-        g.setFont(new Font("Arial", Font.BOLD, 12));
+        g.setFont(GamePaints.LABEL_FONT);
         g.drawString("Z", x + 18, y + 35);
 
         // Health bar
         g.setColor(Color.RED);
         g.fillRect(x, y - 8, 40, 4);
         g.setColor(Color.GREEN);
-        g.fillRect(x, y - 8, (int)(40.0 * health / maxHealth), 4);
+        g.fillRect(x, y - 8, barWidth, 4);
     }
 }
 
@@ -369,27 +980,31 @@ class NormalZombie extends Zombie {
  * Flag Zombie
  */
 class FlagZombie extends Zombie {
-    public FlagZombie(int x, int y, int lane) {
-        super(x, y, 70, 3, 10, lane);
+    public FlagZombie(int x, int y, int lane, long spawnTime) {
+        super(x, y, 70, 3, 10, lane, spawnTime);
     }
 
     @Override
-    public void render(Graphics g) {
-        g.setColor(new Color(139, 169, 19));
+    public void render(RenderSnapshot frame) {
+        frame.addSprite(Sprites.FLAG_ZOMBIE, healthBarWidth(40), x, y, previousX, y);
+    }
+
+    static void paint(Graphics2D g, int x, int y, int barWidth) {
+        g.setColor(GamePaints.ZOMBIE_SKIN);
         g.fillRect(x, y, 40, 60);
         g.setColor(Color.RED);
         g.fillRect(x + 35, y, 15, 25);
         g.setColor(Color.BLACK);
         g.drawRect(x, y, 40, 60);
         g.drawLine(x + 35, y, x + 35, y + 40);
-        g.setFont(new Font("Arial", Font.BOLD, 12));
+        g.setFont(GamePaints.LABEL_FONT);
         g.drawString("F", x + 18, y + 35);
 
         // Health bar
         g.setColor(Color.RED);
         g.fillRect(x, y - 8, 40, 4);
         g.setColor(Color.GREEN);
-        g.fillRect(x, y - 8, (int)(40.0 * health / maxHealth), 4);
+        g.fillRect(x, y - 8, barWidth, 4);
     }
 }
 
@@ -397,13 +1012,18 @@ class FlagZombie extends Zombie {
  * Conehead Zombie
  */
 class ConeheadZombie extends Zombie {
-    public ConeheadZombie(int x, int y, int lane) {
-        super(x, y, 70, 2, 8, lane);
+
+    public ConeheadZombie(int x, int y, int lane, long spawnTime) {
+        super(x, y, 70, 2, 8, lane, spawnTime);
     }
 
     @Override
-    public void render(Graphics g) {
-        g.setColor(new Color(139, 169, 19));
+    public void render(RenderSnapshot frame) {
+        frame.addSprite(Sprites.CONEHEAD_ZOMBIE, healthBarWidth(40), x, y, previousX, y);
+    }
+
+    static void paint(Graphics2D g, int x, int y, int barWidth) {
+        g.setColor(GamePaints.ZOMBIE_SKIN);
         g.fillRect(x, y, 40, 60);
 
         // Traffic cone
@@ -414,14 +1034,14 @@ class ConeheadZombie extends Zombie {
 
         g.setColor(Color.BLACK);
         g.drawRect(x, y, 40, 60);
-        g.setFont(new Font("Arial", Font.BOLD, 12));
+        g.setFont(GamePaints.LABEL_FONT);
         g.drawString("C", x + 18, y + 35);
 
         // Health bar
         g.setColor(Color.RED);
         g.fillRect(x, y - 8, 40, 4);
         g.setColor(Color.GREEN);
-        g.fillRect(x, y - 8, (int)(40.0 * health / maxHealth), 4);
+        g.fillRect(x, y - 8, barWidth, 4);
     }
 }
 
@@ -439,7 +1059,7 @@ abstract class Plant extends GameEntity {
     protected int row, col;
 
     public Plant(int x, int y, int health, int cost, int regenerateRate, int damage,
-                 int range, int directDamage, int speed, int row, int col) {
+                 int range, int directDamage, int speed, int row, int col, long plantTime) {
         super(x, y, health);
         this.cost = cost;
         this.regenerateRate = regenerateRate;
@@ -447,24 +1067,57 @@ abstract class Plant extends GameEntity {
         this.range = range;
         this.directDamage = directDamage;
         this.speed = speed;
-        this.lastActionTime = System.currentTimeMillis();
+        this.lastActionTime = plantTime;
         this.row = row;
         this.col = col;
     }
 
-    public abstract void performAction(GameManager gameManager);
+    /**
+     * performAction() result: the plant has nothing more to do and leaves the schedule
+     */
+    public static final long NO_ACTION = Long.MAX_VALUE;
 
-    public int getCost() { return cost; }
-    public int getRegenerateRate() { return regenerateRate; }
-    public int getDamage() { return damage; }
-    public int getRange() { return range; }
-    public int getDirectDamage() { return directDamage; }
-    public int getSpeed() { return speed; }
-    public int getRow() { return row; }
+    /**
+     * performAction() result: act again as soon as a zombie is within range ahead of the plant in its lane
+     */
+    public static final long WHEN_TARGET_IN_RANGE = Long.MIN_VALUE;
+
+    /**
+     * Do whatever the plant does now that it is due, and return the game time it next wants to act
+     * at - or NO_ACTION / WHEN_TARGET_IN_RANGE. Only called by the PlantScheduler.
+     */
+    public abstract long performAction(GameManager gameManager);
+
+    /**
+     * Game time of the plant's first action, counted from when it was planted
+     */
+    public long getFirstActionTime() {
+        return lastActionTime + regenerateRate * 1000L;
+    }
+
+    public int getCost() { return cost; }
+    public int getRegenerateRate() { return regenerateRate; }
+    public int getDamage() { return damage; }
+    public int getRange() { return range; }
+    public int getDirectDamage() { return directDamage; }
+    public int getSpeed() { return speed; }
+    public int getRow() { return row; }
     public int getCol() { return col; }
 
-    public boolean canPerformAction() {
-        return System.currentTimeMillis() - lastActionTime >= (regenerateRate * 1000);
+    public boolean canPerformAction(long currentTime) {
+        return currentTime - lastActionTime >= (regenerateRate * 1000);
+    }
+
+    @Override
+    void writeState(ByteBuffer out) {
+        super.writeState(out);
+        out.putLong(lastActionTime);
+    }
+
+    @Override
+    void readState(ByteBuffer in) {
+        super.readState(in);
+        lastActionTime = in.getLong();
     }
 }
 
@@ -472,17 +1125,21 @@ abstract class Plant extends GameEntity {
  * Sunflower - Generates collectible sun
  */
 class Sunflower extends Plant {
-    public Sunflower(int x, int y, int row, int col) {
-        super(x, y, 50, 50, 10, 0, 0, 0, 1, row, col);
+    public Sunflower(int x, int y, int row, int col, long plantTime) {
+        super(x, y, 50, 50, 10, 0, 0, 0, 1, row, col, plantTime);
     }
 
     @Override
-    public void update() {
+    public void update(long currentTime) {
         // Sunflowers generate sun based on regenerate rate
     }
 
     @Override
-    public void render(Graphics g) {
+    public void render(RenderSnapshot frame) {
+        frame.addSprite(Sprites.SUNFLOWER, healthBarWidth(60), x, y);
+    }
+
+    static void paint(Graphics2D g, int x, int y, int barWidth) {
         g.setColor(Color.YELLOW);
         g.fillOval(x + 5, y + 5, 50, 50);
 
@@ -497,23 +1154,22 @@ class Sunflower extends Plant {
 
         g.setColor(Color.BLACK);
         g.drawOval(x + 5, y + 5, 50, 50);
-        g.setFont(new Font("Arial", Font.BOLD, 14));
+        g.setFont(GamePaints.PLANT_FONT);
         g.drawString("S", x + 27, y + 35);
 
         // Health bar
         g.setColor(Color.RED);
         g.fillRect(x, y - 8, 60, 4);
         g.setColor(Color.GREEN);
-        g.fillRect(x, y - 8, (int)(60.0 * health / maxHealth), 4);
+        g.fillRect(x, y - 8, barWidth, 4);
     }
 
     @Override
-    public void performAction(GameManager gameManager) {
-        if (canPerformAction() && gameManager != null) {
-            // Create a collectible sun instead of directly adding sun
-            gameManager.addSunDrop(x + 30, y + 30, true);
-            lastActionTime = System.currentTimeMillis();
-        }
+    public long performAction(GameManager gameManager) {
+        // Create a collectible sun instead of directly adding sun
+        gameManager.addSunDrop(x + 30, y + 30, true);
+        lastActionTime = gameManager.currentTimeMillis();
+        return lastActionTime + regenerateRate * 1000L;
     }
 }
 
@@ -521,49 +1177,49 @@ class Sunflower extends Plant {
  * Peashooter
  */
 class Peashooter extends Plant {
-    public Peashooter(int x, int y, int row, int col) {
-        super(x, y, 50, 100, 2, 20, 800, 20, 2, row, col);
+    public Peashooter(int x, int y, int row, int col, long plantTime) {
+        super(x, y, 50, 100, 2, 20, 800, 20, 2, row, col, plantTime);
     }
 
     @Override
-    public void update() {
+    public void update(long currentTime) {
         // Peashooters attack automatically
     }
 
     @Override
-    public void render(Graphics g) {
-        g.setColor(new Color(34, 139, 34));
+    public void render(RenderSnapshot frame) {
+        frame.addSprite(Sprites.PEASHOOTER, healthBarWidth(60), x, y);
+    }
+
+    static void paint(Graphics2D g, int x, int y, int barWidth) {
+        g.setColor(GamePaints.LAWN_GREEN);
         g.fillOval(x + 5, y + 5, 50, 50);
 
         // Cannon
-        g.setColor(new Color(0, 100, 0));
+        g.setColor(GamePaints.DARK_GREEN);
         g.fillRect(x + 50, y + 25, 15, 10);
 
         g.setColor(Color.BLACK);
         g.drawOval(x + 5, y + 5, 50, 50);
         g.drawRect(x + 50, y + 25, 15, 10);
-        g.setFont(new Font("Arial", Font.BOLD, 12));
+        g.setFont(GamePaints.LABEL_FONT);
         g.drawString("P", x + 27, y + 35);
 
         // Health bar
         g.setColor(Color.RED);
         g.fillRect(x, y - 8, 60, 4);
         g.setColor(Color.GREEN);
-        g.fillRect(x, y - 8, (int)(60.0 * health / maxHealth), 4);
+        g.fillRect(x, y - 8, barWidth, 4);
     }
 
     @Override
-    public void performAction(GameManager gameManager) {
-        if (canPerformAction()) {
-            List<Zombie> zombiesInLane = gameManager.getZombiesInLane(row);
-            for (Zombie zombie : zombiesInLane) {
-                if (zombie.getX() > x && zombie.getX() - x <= range) {
-                    gameManager.addProjectile(new Pea(x + 65, y + 30, row, damage));
-                    lastActionTime = System.currentTimeMillis();
-                    break;
-                }
-            }
+    public long performAction(GameManager gameManager) {
+        if (gameManager.findZombieAhead(row, x, range) == null) {
+            return WHEN_TARGET_IN_RANGE; // Reloaded - fires the moment something walks into range
         }
+        gameManager.firePea(x + 65, y + 30, row, damage);
+        lastActionTime = gameManager.currentTimeMillis();
+        return lastActionTime + regenerateRate * 1000L;
     }
 }
 
@@ -574,23 +1230,26 @@ class CherryBomb extends Plant {
     private boolean exploded = false;
     private boolean hasPerformedExplosion = false;
     private long plantTime;
+    private long fuseTimeLeft = 1500;
     private int explosionFrames = 0;
     private static final int EXPLOSION_DISPLAY_TIME = 60;
 
-    public CherryBomb(int x, int y, int row, int col) {
-        super(x, y, 1, 150, 1, 1800, 150, 1800, 1, row, col);
-        this.plantTime = System.currentTimeMillis();
+    public CherryBomb(int x, int y, int row, int col, long plantTime) {
+        super(x, y, 1, 150, 1, 1800, 150, 1800, 1, row, col, plantTime);
+        this.plantTime = plantTime;
     }
 
     @Override
-    public void update() {
-        if (!exploded && System.currentTimeMillis() - plantTime > 1500) {
+    public void update(long currentTime) {
+        fuseTimeLeft = 1500 - (currentTime - plantTime);
+        if (!exploded && fuseTimeLeft < 0) {
             exploded = true;
             explosionFrames = 0;
         }
 
         if (exploded) {
-            explosionFrames++;
+            // Frames of TICK_MILLIS since the fuse ran out, so the blast shows for the same time at any tick rate
+            explosionFrames = (int) ((currentTime - plantTime - 1501) / GameManager.TICK_MILLIS) + 1;
             if (explosionFrames > EXPLOSION_DISPLAY_TIME) {
                 alive = false;
             }
@@ -598,57 +1257,109 @@ class CherryBomb extends Plant {
     }
 
     @Override
-    public void render(Graphics g) {
+    public void render(RenderSnapshot frame) {
         if (!exploded) {
-            // Cherry Bomb countdown
-            g.setColor(Color.RED);
-            g.fillOval(x + 5, y + 5, 25, 25);
-            g.fillOval(x + 30, y + 5, 25, 25);
-
-            g.setColor(new Color(0, 128, 0));
-            g.fillRect(x + 27, y, 6, 15);
-
-            g.setColor(Color.BLACK);
-            g.drawOval(x + 5, y + 5, 25, 25);
-            g.drawOval(x + 30, y + 5, 25, 25);
-            g.setFont(new Font("Arial", Font.BOLD, 12));
-            g.drawString("B", x + 20, y + 25);
-
-            long timeLeft = 1500 - (System.currentTimeMillis() - plantTime);
-            if (timeLeft > 0) {
-                g.setColor(Color.WHITE);
-                g.setFont(new Font("Arial", Font.BOLD, 10));
-                g.drawString(String.valueOf((timeLeft / 1000) + 1), x + 35, y + 15);
-            }
+            // Variant 0 has no countdown label, 1 and 2 show the seconds left
+            int label = fuseTimeLeft > 0 ? (int) Math.min(fuseTimeLeft / 1000, 1) + 1 : 0;
+            frame.addSprite(Sprites.CHERRY_BOMB, label, x, y);
         } else if (explosionFrames <= EXPLOSION_DISPLAY_TIME) {
-            // Explosion animation
             int pulseSize = (int)(Math.sin(explosionFrames * 0.3) * 10) + 10;
+            frame.addSprite(Sprites.EXPLOSION, pulseSize, x, y);
+        }
+    }
 
-            g.setColor(Color.ORANGE);
-            g.fillOval(x - 60 - pulseSize, y - 60 - pulseSize, 180 + (pulseSize * 2), 180 + (pulseSize * 2));
+    static void paintFuse(Graphics2D g, int x, int y, int label) {
+        // Cherry Bomb countdown
+        g.setColor(Color.RED);
+        g.fillOval(x + 5, y + 5, 25, 25);
+        g.fillOval(x + 30, y + 5, 25, 25);
 
-            g.setColor(Color.RED);
-            g.fillOval(x - 40 - pulseSize/2, y - 40 - pulseSize/2, 140 + pulseSize, 140 + pulseSize);
+        g.setColor(GamePaints.STEM_GREEN);
+        g.fillRect(x + 27, y, 6, 15);
 
-            g.setColor(Color.YELLOW);
-            g.fillOval(x - 20, y - 20, 100, 100);
+        g.setColor(Color.BLACK);
+        g.drawOval(x + 5, y + 5, 25, 25);
+        g.drawOval(x + 30, y + 5, 25, 25);
+        g.setFont(GamePaints.LABEL_FONT);
+        g.drawString("B", x + 20, y + 25);
 
+        if (label > 0) {
             g.setColor(Color.WHITE);
-            for (int i = 0; i < 8; i++) {
-                double angle = i * Math.PI / 4;
-                int particleX = (int)(x + 30 + (40 + pulseSize) * Math.cos(angle));
-                int particleY = (int)(y + 30 + (40 + pulseSize) * Math.sin(angle));
-                g.fillOval(particleX - 3, particleY - 3, 6, 6);
-            }
+            g.setFont(GamePaints.SMALL_FONT);
+            g.drawString(String.valueOf(label), x + 35, y + 15);
+        }
+    }
+
+    static void paintExplosion(Graphics2D g, int x, int y, int pulseSize) {
+        g.setColor(Color.ORANGE);
+        g.fillOval(x - 60 - pulseSize, y - 60 - pulseSize, 180 + (pulseSize * 2), 180 + (pulseSize * 2));
+
+        g.setColor(Color.RED);
+        g.fillOval(x - 40 - pulseSize/2, y - 40 - pulseSize/2, 140 + pulseSize, 140 + pulseSize);
+
+        g.setColor(Color.YELLOW);
+        g.fillOval(x - 20, y - 20, 100, 100);
+
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < 8; i++) {
+            double angle = i * Math.PI / 4;
+            int particleX = (int)(x + 30 + (40 + pulseSize) * Math.cos(angle));
+            int particleY = (int)(y + 30 + (40 + pulseSize) * Math.sin(angle));
+            g.fillOval(particleX - 3, particleY - 3, 6, 6);
         }
     }
 
     @Override
-    public void performAction(GameManager gameManager) {
+    public long getFirstActionTime() {
+        return nextFuseEvent(plantTime);
+    }
+
+    @Override
+    public long performAction(GameManager gameManager) {
+        long currentTime = gameManager.currentTimeMillis();
+        update(currentTime);
         if (exploded && !hasPerformedExplosion) {
             gameManager.explodeArea(x + 30, y + 30, range, damage);
             hasPerformedExplosion = true;
         }
+
+        if (!alive) {
+            return NO_ACTION;
+        }
+        // The explosion animates every tick; until then only the countdown label and the fuse matter
+        return exploded ? currentTime + 1 : nextFuseEvent(currentTime);
+    }
+
+    @Override
+    void writeState(ByteBuffer out) {
+        super.writeState(out);
+        out.putLong(plantTime).putLong(fuseTimeLeft).putInt(explosionFrames);
+        out.put((byte) ((exploded ? 1 : 0) | (hasPerformedExplosion ? 2 : 0)));
+    }
+
+    @Override
+    void readState(ByteBuffer in) {
+        super.readState(in);
+        plantTime = in.getLong();
+        fuseTimeLeft = in.getLong();
+        explosionFrames = in.getInt();
+        int flags = in.get();
+        exploded = (flags & 1) != 0;
+        hasPerformedExplosion = (flags & 2) != 0;
+    }
+
+    /**
+     * When the countdown label next changes or the fuse runs out, seen from currentTime
+     */
+    private long nextFuseEvent(long currentTime) {
+        long elapsed = currentTime - plantTime;
+        if (elapsed <= 500) {
+            return plantTime + 501; // Label drops from 2 to 1
+        }
+        if (elapsed < 1500) {
+            return plantTime + 1500; // Label goes away
+        }
+        return plantTime + 1501; // Fuse is out
     }
 }
 
@@ -656,41 +1367,63 @@ class CherryBomb extends Plant {
  * Projectile class for peas
  */
 class Pea {
-    private int x, y, row, damage;
+    private float x; // Sub-pixel, so ticks of any length add up to the same flight
+    private float previousX; // Where it was a tick ago, for render interpolation
+    private int y, row, damage;
+    private int maxX; // Deactivates once past here
     private boolean active;
-    private static final int SPEED = 8;
+    private static final int SPEED = 8; // Pixels per GameManager.TICK_MILLIS
+    public static final int SIZE = 8;
+    private static final int DEFAULT_MAX_X = 850;
+
+
+    // Pooled pea, reset before use
+    public Pea() {
+        this.active = false;
+    }
 
     public Pea(int x, int y, int row, int damage) {
+        reset(x, y, row, damage);
+    }
+
+    public Pea reset(int x, int y, int row, int damage) {
+        return reset(x, y, row, damage, DEFAULT_MAX_X);
+    }
+
+    public Pea reset(int x, int y, int row, int damage, int maxX) {
         this.x = x;
+        this.previousX = x;
         this.y = y;
         this.row = row;
         this.damage = damage;
+        this.maxX = maxX;
         this.active = true;
+        return this;
     }
 
-    public void update() {
+    public void update(long dtMillis) {
+        previousX = x;
         if (active) {
-            x += SPEED;
-            if (x > 850) {
+            x += (float) SPEED * dtMillis / GameManager.TICK_MILLIS;
+            if (x > maxX) {
                 active = false;
             }
         }
     }
 
-    public void render(Graphics g) {
+    public void render(RenderSnapshot frame) {
         if (active) {
-            g.setColor(new Color(124, 252, 0));
-            g.fillOval(x, y, 8, 8);
-            g.setColor(Color.BLACK);
-            g.drawOval(x, y, 8, 8);
+            frame.addSprite(Sprites.PEA, 0, (int) x, y, (int) previousX, y);
         }
     }
 
     public boolean checkCollision(Zombie zombie) {
         if (active && zombie.getLane() == row) {
-            Rectangle peaRect = new Rectangle(x, y, 8, 8);
-            Rectangle zombieRect = new Rectangle(zombie.getX(), zombie.getY(), 40, 60);
-            if (peaRect.intersects(zombieRect)) {
+            int x = getX();
+            int zombieX = zombie.getX();
+            int zombieY = zombie.getY();
+            if (x < zombieX + Zombie.WIDTH && zombieX < x + SIZE
+                    && y < zombieY + Zombie.HEIGHT && zombieY < y + SIZE) {
                 zombie.takeDamage(damage);
                 active = false;
                 return true;
@@ -700,368 +1433,3538 @@ class Pea {
     }
 
     public boolean isActive() { return active; }
+    public int getX() { return (int) x; }
+    public int getY() { return y; }
     public int getRow() { return row; }
+
+    void writeState(ByteBuffer out) {
+        out.putFloat(x).putInt(y).putInt(row).putInt(damage).putInt(maxX).put((byte) (active ? 1 : 0));
+    }
+
+    Pea readState(ByteBuffer in) {
+        x = in.getFloat();
+        previousX = x;
+        y = in.getInt();
+        row = in.getInt();
+        damage = in.getInt();
+        maxX = in.getInt();
+        active = in.get() != 0;
+        return this;
+    }
 }
 
 /**
- * Enhanced Game Manager with Sun Collection and Shovel Feature
+ * Source of game time - every timer in the simulation reads from here instead of the wall clock
  */
-class GameManager {
-    private List<Zombie> zombies;
-    private List<Plant> plants;
-    private List<Pea> projectiles;
-    private List<Sun> suns; // New: List of collectible suns
-    private Plant[][] grid;
-    private int sunCount; // Changed from sun to sunCount for clarity
-    private long gameStartTime;
-    private long lastZombieSpawn;
-    private long lastSkySunDrop; // New: Track sky sun drops
-    private long lastCombatTime;
-    private Random random;
-    private boolean gameOver;
-    private boolean playerWon;
-    private int level;
-    private int waveZombiesRemaining;
-    private AudioManager audioManager;
+interface GameClock {
+    long currentTimeMillis();
+}
 
-    private static final int GRID_ROWS = 5;
-    private static final int GRID_COLS = 9;
-    private static final int TILE_WIDTH = 80;
-    private static final int TILE_HEIGHT = 100;
-    private static final int GAME_DURATION = 180000;
-    private static final int SKY_SUN_DROP_INTERVAL = 8000; // Sky suns drop every 8 seconds
+/**
+ * Wall-clock time, for code that wants the old real-time behavior
+ */
+class SystemGameClock implements GameClock {
+    @Override
+    public long currentTimeMillis() { return System.currentTimeMillis(); }
+}
 
-    public GameManager() {
-        zombies = new CopyOnWriteArrayList<>();
-        plants = new CopyOnWriteArrayList<>();
-        projectiles = new CopyOnWriteArrayList<>();
-        suns = new CopyOnWriteArrayList<>(); // New: Initialize suns list
-        grid = new Plant[GRID_ROWS][GRID_COLS];
-        sunCount = 50; // Start with 50 sun as before
-        gameStartTime = System.currentTimeMillis();
-        lastZombieSpawn = gameStartTime;
-        lastSkySunDrop = gameStartTime;
-        lastCombatTime = gameStartTime;
-        random = new Random();
-        gameOver = false;
-        playerWon = false;
-        level = 1;
-        waveZombiesRemaining = 5;
+/**
+ * Simulated time that only moves when the game is ticked - lets a level run headless and faster than real time
+ */
+class SimulationClock implements GameClock {
+    private long currentTime;
 
-        // Initialize audio
-        audioManager = new AudioManager();
-        audioManager.playBackgroundMusic();
+    public SimulationClock() {
+        this(0);
     }
 
-    public void update() {
-        if (gameOver) return;
-
-        long currentTime = System.currentTimeMillis();
-        long gameTime = currentTime - gameStartTime;
-
-        // Win condition: game time ends
-        if (gameTime >= GAME_DURATION) {
-            gameOver = true;
-            playerWon = true;
-            return;
-        }
-
-        // Lose condition: zombie reaches player's home
-        for (Zombie zombie : zombies) {
-            if (zombie.hasReachedHome()) {
-                gameOver = true;
-                playerWon = false;
-                return;
-            }
-        }
-
-        // Sky sun drops at constant rate
-        if (currentTime - lastSkySunDrop >= SKY_SUN_DROP_INTERVAL) {
-            dropSkySun();
-            lastSkySunDrop = currentTime;
-        }
-
-        spawnZombiesAccordingToSpecs(gameTime);
-
-        // Update all entities
-        zombies.removeIf(zombie -> !zombie.isAlive());
-        for (Zombie zombie : zombies) {
-            zombie.update();
-        }
-
-        plants.removeIf(plant -> !plant.isAlive());
-        for (Plant plant : plants) {
-            plant.update();
-            plant.performAction(this);
-        }
+    public SimulationClock(long startTime) {
+        this.currentTime = startTime;
+    }
 
-        projectiles.removeIf(pea -> !pea.isActive());
-        for (Pea pea : projectiles) {
-            pea.update();
-            for (Zombie zombie : zombies) {
-                pea.checkCollision(zombie);
-            }
+    public void advance(long dtMillis) {
+        if (dtMillis < 0) {
+            throw new IllegalArgumentException("Cannot move the clock backwards: " + dtMillis);
         }
+        currentTime += dtMillis;
+    }
 
-        // Update and clean up suns
-        suns.removeIf(sun -> sun.isCollected());
-        for (Sun sun : suns) {
-            sun.update();
-        }
+    @Override
+    public long currentTimeMillis() { return currentTime; }
+}
 
-        handleCombat();
+/**
+ * Entity list that only changes shape once per tick. Adds are staged and removals deferred until commit(),
+ * which swap-removes expired entries and appends the staged ones - so anything iterating between commits
+ * sees a stable list without copy-on-write, and add/remove are O(1) amortized. An entity is removed by
+ * making the expiry predicate true for it (dying, being collected, GameEntity.remove()), and commit()
+ * checks that predicate once per entry.
+ */
+class EntityStore<T> implements Iterable<T> {
+    private Object[] items;
+    private int size;
+    private Object[] staged;
+    private int stagedCount;
+    private final Predicate<? super T> expired;
+    private final Consumer<? super T> recycler;
+
+    private static final int INITIAL_CAPACITY = 32;
+
+    public EntityStore(Predicate<? super T> expired) {
+        this(expired, null);
     }
 
     /**
-     * Drop a sun from the sky at random position
+     * Store that hands every removed entity to the recycler, e.g. to return it to an ObjectPool
      */
-    private void dropSkySun() {
-        int randomX = 100 + random.nextInt(600); // Random X between lanes
-        int targetY = 400 + random.nextInt(100); // Random Y in bottom area
-        suns.add(new Sun(randomX, targetY));
+    public EntityStore(Predicate<? super T> expired, Consumer<? super T> recycler) {
+        this.expired = expired;
+        this.recycler = recycler;
+        items = new Object[INITIAL_CAPACITY];
+        staged = new Object[INITIAL_CAPACITY];
     }
 
     /**
-     * Add a sun drop (from sunflower or other sources)
+     * Stage an entity - it becomes visible at the next commit()
      */
-    public void addSunDrop(float x, float y, boolean fromSunflower) {
-        suns.add(new Sun(x, y, fromSunflower));
+    public void add(T item) {
+        if (stagedCount == staged.length) {
+            staged = Arrays.copyOf(staged, stagedCount * 2);
+        }
+        staged[stagedCount++] = item;
     }
 
     /**
-     * Handle clicking on suns to collect them - can catch falling or stationary suns
+     * Apply this tick's removals and additions
      */
-    public boolean collectSun(int mouseX, int mouseY) {
-        for (Sun sun : suns) {
-            if (sun.checkClick(mouseX, mouseY)) {
-                sunCount += 25;
-                boolean wasFalling = sun.falling;
-                String status = wasFalling ? "MID-AIR" : "GROUND";
-                System.out.println("Sun collected " + status + "! Total sun: " + sunCount + " | Suns remaining: " + (suns.size() - 1));
-                return true; // Sun was collected
-            }
-        }
-        return false; // No sun was clicked
-    }
-
-    private void spawnZombiesAccordingToSpecs(long gameTime) {
-        long gameTimeSeconds = gameTime / 1000;
-
-        if (gameTimeSeconds < 30) {
-            return;
-        }
-
-        long spawnInterval;
-
-        if (gameTimeSeconds >= 30 && gameTimeSeconds <= 80) {
-            spawnInterval = 10000;
-        } else if (gameTimeSeconds >= 81 && gameTimeSeconds <= 140) {
-            spawnInterval = 5000;
-        } else if (gameTimeSeconds >= 141 && gameTimeSeconds <= 170) {
-            spawnInterval = 3000;
-        } else if (gameTimeSeconds >= 171 && gameTimeSeconds <= 180) {
-            if (waveZombiesRemaining > 0 && System.currentTimeMillis() - lastZombieSpawn > 300) {
-                spawnRandomZombie();
-                waveZombiesRemaining--;
-                lastZombieSpawn = System.currentTimeMillis();
+    @SuppressWarnings("unchecked")
+    public void commit() {
+        int i = 0;
+        while (i < size) {
+            T item = (T) items[i];
+            if (expired.test(item)) {
+                items[i] = items[--size];
+                items[size] = null;
+                if (recycler != null) {
+                    recycler.accept(item);
+                }
+            } else {
+                i++;
             }
-            return;
-        } else {
-            return;
         }
-
-        if (System.currentTimeMillis() - lastZombieSpawn >= spawnInterval) {
-            spawnRandomZombie();
-            lastZombieSpawn = System.currentTimeMillis();
+        if (size + stagedCount > items.length) {
+            items = Arrays.copyOf(items, Math.max(items.length * 2, size + stagedCount));
         }
+        System.arraycopy(staged, 0, items, size, stagedCount);
+        size += stagedCount;
+        Arrays.fill(staged, 0, stagedCount, null);
+        stagedCount = 0;
     }
 
-    private void spawnRandomZombie() {
-        int lane = random.nextInt(GRID_ROWS);
-        int x = 780;
-        int y = 50 + lane * TILE_HEIGHT;
-
-        int type = random.nextInt(3);
-        Zombie zombie;
-
-        switch (type) {
-            case 0:
-                zombie = new NormalZombie(x, y, lane);
-                break;
-            case 1:
-                zombie = new FlagZombie(x, y, lane);
-                break;
-            case 2:
-                zombie = new ConeheadZombie(x, y, lane);
-                break;
-            default:
-                zombie = new NormalZombie(x, y, lane);
+    /**
+     * Append straight to the visible list, skipping staging - for rebuilding a store from a save
+     */
+    public void restore(T item) {
+        if (size == items.length) {
+            items = Arrays.copyOf(items, size * 2);
         }
+        items[size++] = item;
+    }
 
-        zombies.add(zombie);
+    public void clear() {
+        Arrays.fill(items, 0, size, null);
+        Arrays.fill(staged, 0, stagedCount, null);
+        size = 0;
+        stagedCount = 0;
     }
 
-    private void handleCombat() {
-        long currentTime = System.currentTimeMillis();
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
 
-        // Reset attacking state
-        for (Zombie zombie : zombies) {
-            zombie.setAttacking(false);
-        }
+    @SuppressWarnings("unchecked")
+    public T get(int index) { return (T) items[index]; }
 
-        // Check for zombie-plant encounters
-        for (Zombie zombie : zombies) {
-            int row = zombie.getLane();
-            int col = (zombie.getX() - 50) / TILE_WIDTH;
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int next = 0;
 
-            if (col >= 0 && col < GRID_COLS && grid[row][col] != null) {
-                Plant plant = grid[row][col];
-                zombie.setAttacking(true);
-
-                if (currentTime - lastCombatTime >= 1000) {
-                    plant.takeDamage(zombie.getDamage());
-                    if (!plant.isAlive()) {
-                        grid[row][col] = null;
-                        plants.remove(plant);
-                        zombie.setAttacking(false);
-                    }
-                    lastCombatTime = currentTime;
+            @Override
+            public boolean hasNext() { return next < size; }
+
+            @Override
+            public T next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
                 }
+                return get(next++);
             }
-        }
+        };
     }
+}
 
-    /**
-     * Place plant on grid
-     */
-    public boolean placePlant(int row, int col, Class<? extends Plant> plantType) {
-        if (row < 0 || row >= GRID_ROWS || col < 0 || col >= GRID_COLS) {
-            return false;
-        }
-
-        if (grid[row][col] != null) {
-            return false;
-        }
-
-        int x = 50 + col * TILE_WIDTH;
-        int y = 50 + row * TILE_HEIGHT;
+/**
+ * Zombies bucketed per lane and kept sorted by x, so range and hit queries are a binary search instead of a full scan.
+ * Plants don't need one - the grid is already indexed by lane and column.
+ */
+class LaneIndex {
+    private Zombie[][] lanes;
+    private int[] counts;
 
-        Plant plant = null;
+    private static final int INITIAL_LANE_CAPACITY = 16;
 
-        if (plantType == Sunflower.class && sunCount >= 50) {
-            plant = new Sunflower(x, y, row, col);
-            sunCount -= 50;
-        } else if (plantType == Peashooter.class && sunCount >= 100) {
-            plant = new Peashooter(x, y, row, col);
-            sunCount -= 100;
-        } else if (plantType == CherryBomb.class && sunCount >= 150) {
-            plant = new CherryBomb(x, y, row, col);
-            sunCount -= 150;
-        }
+    public LaneIndex(int laneCount) {
+        lanes = new Zombie[laneCount][INITIAL_LANE_CAPACITY];
+        counts = new int[laneCount];
+    }
 
-        if (plant != null) {
-            grid[row][col] = plant;
-            plants.add(plant);
-            return true;
+    public void add(Zombie zombie) {
+        int lane = zombie.getLane();
+        if (counts[lane] == lanes[lane].length) {
+            lanes[lane] = Arrays.copyOf(lanes[lane], counts[lane] * 2);
         }
-
-        return false;
+        lanes[lane][counts[lane]++] = zombie;
     }
 
     /**
-     * Shovel feature - Remove plant from grid
+     * Drop dead zombies and restore x order after movement. Zombies only drift a few pixels per tick,
+     * so each lane is nearly sorted and insertion sort stays close to linear.
      */
-    public boolean shovelPlant(int row, int col) {
-        if (row < 0 || row >= GRID_ROWS || col < 0 || col >= GRID_COLS) {
-            return false;
+    public void refresh() {
+        for (int lane = 0; lane < lanes.length; lane++) {
+            Zombie[] bucket = lanes[lane];
+            int live = 0;
+            for (int i = 0; i < counts[lane]; i++) {
+                Zombie zombie = bucket[i];
+                if (zombie.isAlive()) {
+                    int j = live - 1;
+                    while (j >= 0 && bucket[j].getX() > zombie.getX()) {
+                        bucket[j + 1] = bucket[j];
+                        j--;
+                    }
+                    bucket[j + 1] = zombie;
+                    live++;
+                }
+            }
+            Arrays.fill(bucket, live, counts[lane], null);
+            counts[lane] = live;
         }
+    }
 
-        Plant plant = grid[row][col];
-        if (plant != null) {
-            grid[row][col] = null;
-            plants.remove(plant);
-            System.out.println("Plant removed from (" + row + ", " + col + ")");
-            return true;
+    public void clear() {
+        for (int lane = 0; lane < lanes.length; lane++) {
+            Arrays.fill(lanes[lane], 0, counts[lane], null);
+            counts[lane] = 0;
         }
-        return false;
     }
 
-    public void addProjectile(Pea pea) { projectiles.add(pea); }
+    public int getLaneCount() { return lanes.length; }
+    public int size(int lane) { return counts[lane]; }
+    public Zombie get(int lane, int i) { return lanes[lane][i]; }
 
-    public List<Zombie> getZombiesInLane(int lane) {
-        List<Zombie> result = new ArrayList<>();
-        for (Zombie zombie : zombies) {
-            if (zombie.getLane() == lane) {
-                result.add(zombie);
+    /**
+     * Index of the first zombie in the lane whose x is strictly greater than the given x
+     */
+    private int firstIndexAfter(int lane, int x) {
+        Zombie[] bucket = lanes[lane];
+        int low = 0;
+        int high = counts[lane];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (bucket[mid].getX() > x) {
+                high = mid;
+            } else {
+                low = mid + 1;
             }
         }
-        return result;
+        return low;
     }
 
-    public void explodeArea(int centerX, int centerY, int radius, int damage) {
-        for (Zombie zombie : zombies) {
-            double distance = Math.sqrt(Math.pow(zombie.getX() + 20 - centerX, 2) +
-                    Math.pow(zombie.getY() + 30 - centerY, 2));
-            if (distance <= radius) {
-                zombie.takeDamage(damage);
+    /**
+     * Closest living zombie to the right of x that is no more than range pixels away, or null
+     */
+    public Zombie firstZombieAhead(int lane, int x, int range) {
+        Zombie[] bucket = lanes[lane];
+        for (int i = firstIndexAfter(lane, x); i < counts[lane]; i++) {
+            Zombie zombie = bucket[i];
+            if (zombie.getX() - x > range) {
+                return null;
+            }
+            if (zombie.isAlive()) {
+                return zombie;
             }
         }
+        return null;
     }
 
     /**
-     * Audio control methods
-     */
-    public void volumeUp() { audioManager.volumeUp(); }
-    public void volumeDown() { audioManager.volumeDown(); }
-    public void toggleMute() { audioManager.toggleMute(); }
-    public float getVolume() { return audioManager.getVolume(); }
-    public boolean isMuted() { return audioManager.isMuted(); }
-
-    /**
-     * Render game state with suns
+     * Leftmost living zombie in the lane whose body overlaps the given box, or null
+     */
+    public Zombie findHit(int lane, int left, int top, int width, int height) {
+        Zombie[] bucket = lanes[lane];
+        for (int i = firstIndexAfter(lane, left - Zombie.WIDTH); i < counts[lane]; i++) {
+            Zombie zombie = bucket[i];
+            if (zombie.getX() >= left + width) {
+                return null;
+            }
+            if (zombie.isAlive() && zombie.getY() < top + height && zombie.getY() + Zombie.HEIGHT > top) {
+                return zombie;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Index of the first zombie in the lane whose x is at least minX - walk forward with get() from here
+     */
+    public int firstIndexAtOrAfter(int lane, int minX) {
+        return firstIndexAfter(lane, minX - 1);
+    }
+}
+
+/**
+ * Which tiles hold a plant, one bitmask per lane (64 columns to a word), kept in step with the grid.
+ * Lets combat answer "is this zombie standing on a plant" with one bit test instead of a pointer chase
+ * into the grid for every zombie on every tick.
+ */
+class LaneOccupancy {
+    private final long[][] lanes;
+
+    public LaneOccupancy(int laneCount, int columnCount) {
+        lanes = new long[laneCount][(columnCount + 63) >>> 6];
+    }
+
+    public void set(int lane, int col) {
+        lanes[lane][col >>> 6] |= 1L << col;
+    }
+
+    public void clear(int lane, int col) {
+        lanes[lane][col >>> 6] &= ~(1L << col);
+    }
+
+    public boolean isOccupied(int lane, int col) {
+        return (lanes[lane][col >>> 6] & (1L << col)) != 0;
+    }
+
+    public void clearAll() {
+        for (long[] lane : lanes) {
+            Arrays.fill(lane, 0);
+        }
+    }
+}
+
+/**
+ * Plants keyed on the game time of their next action, so a tick only touches the plants that are due
+ * instead of asking every plant on the lawn whether it is ready. Due plants sit in a binary min-heap
+ * ordered by time, ties broken by scheduling order so runs stay deterministic. Plants that are ready
+ * but have nothing to shoot at are parked per lane and only looked at while their lane has zombies.
+ *
+ * Shoveled and eaten plants are not removed eagerly - they are dropped when they next come up.
+ */
+class PlantScheduler {
+    private final Predicate<? super Plant> onBoard;
+    private Plant[] heap;
+    private long[] dueTimes;
+    private long[] orders;
+    private int heapSize;
+    private long nextOrder;
+
+    private Plant[][] parked;
+    private int[] parkedCounts;
+
+    private Plant[] due;
+    private int dueCount;
+
+    private static final int INITIAL_CAPACITY = 32;
+    private static final int INITIAL_LANE_CAPACITY = 8;
+
+    /**
+     * Scheduler for a lawn with the given lanes - onBoard tells whether a plant is still planted
+     */
+    public PlantScheduler(int laneCount, Predicate<? super Plant> onBoard) {
+        this.onBoard = onBoard;
+        heap = new Plant[INITIAL_CAPACITY];
+        dueTimes = new long[INITIAL_CAPACITY];
+        orders = new long[INITIAL_CAPACITY];
+        parked = new Plant[laneCount][INITIAL_LANE_CAPACITY];
+        parkedCounts = new int[laneCount];
+        due = new Plant[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Start scheduling a freshly planted plant
+     */
+    public void add(Plant plant) {
+        schedule(plant, plant.getFirstActionTime());
+    }
+
+    /**
+     * Queue a plant for the time performAction() asked for
+     */
+    public void schedule(Plant plant, long time) {
+        if (time == Plant.NO_ACTION) {
+            return;
+        }
+        if (time == Plant.WHEN_TARGET_IN_RANGE) {
+            park(plant);
+            return;
+        }
+        push(plant, time, nextOrder++);
+    }
+
+    /**
+     * Put back an entry read from a save, keeping its place in line among equal due times
+     */
+    public void restore(Plant plant, long time, long order) {
+        push(plant, time, order);
+    }
+
+    /**
+     * Put back a parked plant read from a save - call in the order they were saved
+     */
+    public void restoreParked(Plant plant) {
+        park(plant);
+    }
+
+    public void setNextOrder(long nextOrder) { this.nextOrder = nextOrder; }
+    public long getNextOrder() { return nextOrder; }
+
+    // Heap entries in array order and parked plants per lane, for saving - not in due order
+    public int getHeapSize() { return heapSize; }
+    public Plant getScheduled(int index) { return heap[index]; }
+    public long getDueTime(int index) { return dueTimes[index]; }
+    public long getOrder(int index) { return orders[index]; }
+    public int getParkedCount(int lane) { return parkedCounts[lane]; }
+    public Plant getParked(int lane, int index) { return parked[lane][index]; }
+
+    private void push(Plant plant, long time, long order) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+            dueTimes = Arrays.copyOf(dueTimes, heapSize * 2);
+            orders = Arrays.copyOf(orders, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(time, order, dueTimes[parent], orders[parent])) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        set(i, plant, time, order);
+    }
+
+    /**
+     * Gather every plant due at currentTime - heap entries up to now, then parked plants that have a
+     * zombie within range - and return how many there are. Read them with getDue().
+     */
+    public int collectDue(long currentTime, LaneIndex zombies) {
+        clearDue();
+        while (heapSize > 0 && dueTimes[0] <= currentTime) {
+            Plant plant = heap[0];
+            removeTop();
+            if (onBoard.test(plant)) {
+                addDue(plant);
+            }
+        }
+
+        for (int lane = 0; lane < parked.length; lane++) {
+            if (parkedCounts[lane] == 0 || zombies.size(lane) == 0) {
+                continue;
+            }
+            Plant[] waiting = parked[lane];
+            int i = 0;
+            while (i < parkedCounts[lane]) {
+                Plant plant = waiting[i];
+                boolean planted = onBoard.test(plant);
+                if (!planted || zombies.firstZombieAhead(lane, plant.getX(), plant.getRange()) != null) {
+                    waiting[i] = waiting[--parkedCounts[lane]];
+                    waiting[parkedCounts[lane]] = null;
+                    if (planted) {
+                        addDue(plant);
+                    }
+                } else {
+                    i++;
+                }
+            }
+        }
+        return dueCount;
+    }
+
+    public Plant getDue(int index) { return due[index]; }
+
+    public void clear() {
+        Arrays.fill(heap, 0, heapSize, null);
+        heapSize = 0;
+        for (int lane = 0; lane < parked.length; lane++) {
+            Arrays.fill(parked[lane], 0, parkedCounts[lane], null);
+            parkedCounts[lane] = 0;
+        }
+        clearDue();
+    }
+
+    /**
+     * Plants in the heap or parked, including removed ones that haven't come up yet
+     */
+    public int size() {
+        int size = heapSize;
+        for (int count : parkedCounts) {
+            size += count;
+        }
+        return size;
+    }
+
+    private void park(Plant plant) {
+        int lane = plant.getRow();
+        if (parkedCounts[lane] == parked[lane].length) {
+            parked[lane] = Arrays.copyOf(parked[lane], parkedCounts[lane] * 2);
+        }
+        parked[lane][parkedCounts[lane]++] = plant;
+    }
+
+    private void addDue(Plant plant) {
+        if (dueCount == due.length) {
+            due = Arrays.copyOf(due, dueCount * 2);
+        }
+        due[dueCount++] = plant;
+    }
+
+    private void clearDue() {
+        Arrays.fill(due, 0, dueCount, null);
+        dueCount = 0;
+    }
+
+    private void removeTop() {
+        heapSize--;
+        Plant last = heap[heapSize];
+        long lastTime = dueTimes[heapSize];
+        long lastOrder = orders[heapSize];
+        heap[heapSize] = null;
+        if (heapSize == 0) {
+            return;
+        }
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && before(dueTimes[child + 1], orders[child + 1], dueTimes[child], orders[child])) {
+                child++;
+            }
+            if (!before(dueTimes[child], orders[child], lastTime, lastOrder)) {
+                break;
+            }
+            move(child, i);
+            i = child;
+        }
+        set(i, last, lastTime, lastOrder);
+    }
+
+    private static boolean before(long time, long order, long otherTime, long otherOrder) {
+        return time < otherTime || (time == otherTime && order < otherOrder);
+    }
+
+    private void move(int from, int to) {
+        set(to, heap[from], dueTimes[from], orders[from]);
+    }
+
+    private void set(int i, Plant plant, long time, long order) {
+        heap[i] = plant;
+        dueTimes[i] = time;
+        orders[i] = order;
+    }
+}
+
+/**
+ * Log-linear latency histogram in the spirit of HdrHistogram: exact below 64 ns, then 32 linear
+ * buckets per power of two (about 3% error) all the way up. Recording is allocation-free.
+ * Meant for one writing thread; other threads may read it for display and get approximate numbers.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int LINEAR_LIMIT = 1 << (SUB_BUCKET_BITS + 1);
+    private static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS) * (1 << SUB_BUCKET_BITS) + LINEAR_LIMIT;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long totalNanos;
+    private long maxNanos;
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts[indexOf(nanos)]++;
+        totalCount++;
+        totalNanos += nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+
+    /**
+     * Value at the given percentile (0-100), reported as the top of its bucket like HdrHistogram does
+     */
+    public long percentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+
+    public long getCount() { return totalCount; }
+    public long getMax() { return maxNanos; }
+    public double getMean() { return totalCount == 0 ? 0 : (double) totalNanos / totalCount; }
+
+    private static int indexOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    private static long highestValueIn(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = index - ((long) shift << SUB_BUCKET_BITS);
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
+
+/**
+ * Per-phase timings for the update loop and the renderer, plus entity and GC counts. Update phases are
+ * recorded by whichever thread ticks the game and render phases by the drawing thread, so every
+ * histogram still has a single writer. DISABLED records nothing and is shared by games nobody profiles.
+ */
+class FrameProfiler {
+    static final int SPAWN = 0;
+    static final int ENTITY_UPDATE = 1;
+    static final int PROJECTILES = 2;
+    static final int SUN_UPDATE = 3;
+    static final int COMBAT = 4;
+    static final int TICK = 5;
+    static final int RENDER = 6;
+    static final int RENDER_UI = 7;
+    static final int FRAME = 8;
+
+    private static final String[] PHASE_NAMES = {
+            "spawn", "entityUpdate", "projectiles", "sunUpdate", "handleCombat", "tick", "render", "renderUI", "frameInterval"
+    };
+
+    static final FrameProfiler DISABLED = new FrameProfiler(false);
+
+    private final boolean enabled;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[PHASE_NAMES.length];
+    private final List<java.lang.management.GarbageCollectorMXBean> collectors =
+            java.lang.management.ManagementFactory.getGarbageCollectorMXBeans();
+    private final long startGcCount;
+    private final long startGcMillis;
+    private long lastFrameNanos;
+    private volatile long droppedFrames; // Display refreshes an active render loop missed - drawing thread only writes
+    private volatile int zombieCount, plantCount, peaCount, sunCount;
+
+    public FrameProfiler() {
+        this(true);
+    }
+
+    private FrameProfiler(boolean enabled) {
+        this.enabled = enabled;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        startGcCount = totalGcCount();
+        startGcMillis = totalGcMillis();
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    public long begin() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record the time since startNanos against a phase and return now, so back-to-back phases need one clock read each
+     */
+    public long lap(int phase, long startNanos) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        histograms[phase].record(now - startNanos);
+        return now;
+    }
+
+    /**
+     * Call at the start of every drawn frame to track the interval between frames
+     */
+    public void frameStarted() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (lastFrameNanos != 0) {
+            histograms[FRAME].record(now - lastFrameNanos);
+        }
+        lastFrameNanos = now;
+    }
+
+    /**
+     * Count frame slots a paced render loop overran - see RenderLoop
+     */
+    public void framesDropped(long count) {
+        if (!enabled) {
+            return;
+        }
+        droppedFrames += count;
+    }
+
+    public long getDroppedFrames() { return droppedFrames; }
+
+    public void setEntityCounts(int zombies, int plants, int peas, int suns) {
+        if (!enabled) {
+            return;
+        }
+        zombieCount = zombies;
+        plantCount = plants;
+        peaCount = peas;
+        sunCount = suns;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        lastFrameNanos = 0;
+        droppedFrames = 0;
+    }
+
+    public LatencyHistogram getHistogram(int phase) { return histograms[phase]; }
+    public int getPhaseCount() { return histograms.length; }
+    public static String phaseName(int phase) { return PHASE_NAMES[phase]; }
+
+    /**
+     * Collections and total collection time since this profiler was created
+     */
+    public long gcCount() { return totalGcCount() - startGcCount; }
+    public long gcMillis() { return totalGcMillis() - startGcMillis; }
+
+    private long totalGcCount() {
+        long total = 0;
+        for (java.lang.management.GarbageCollectorMXBean collector : collectors) {
+            total += Math.max(0, collector.getCollectionCount());
+        }
+        return total;
+    }
+
+    private long totalGcMillis() {
+        long total = 0;
+        for (java.lang.management.GarbageCollectorMXBean collector : collectors) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+
+    /**
+     * Human-readable table, one line per phase that has samples, then entity and GC counts
+     */
+    public List<String> summaryLines() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%-14s %8s %8s %8s %8s  (us)", "phase", "p50", "p99", "max", "count"));
+        for (int i = 0; i < histograms.length; i++) {
+            LatencyHistogram h = histograms[i];
+            if (h.getCount() == 0) continue;
+            lines.add(String.format("%-14s %8.1f %8.1f %8.1f %8d", PHASE_NAMES[i],
+                    h.percentile(50) / 1000.0, h.percentile(99) / 1000.0, h.getMax() / 1000.0, h.getCount()));
+        }
+        lines.add("zombies " + zombieCount + "  plants " + plantCount + "  peas " + peaCount + "  suns " + sunCount);
+        if (droppedFrames > 0) {
+            lines.add("dropped frames: " + droppedFrames);
+        }
+        lines.add("GC: " + gcCount() + " collections, " + gcMillis() + " ms");
+        return lines;
+    }
+
+    public void writeCsv(java.nio.file.Path path) throws IOException {
+        StringBuilder out = new StringBuilder("phase,count,mean_us,p50_us,p90_us,p99_us,p999_us,max_us\n");
+        for (int i = 0; i < histograms.length; i++) {
+            LatencyHistogram h = histograms[i];
+            out.append(PHASE_NAMES[i]).append(',').append(h.getCount())
+                    .append(',').append(micros(h.getMean()))
+                    .append(',').append(micros(h.percentile(50)))
+                    .append(',').append(micros(h.percentile(90)))
+                    .append(',').append(micros(h.percentile(99)))
+                    .append(',').append(micros(h.percentile(99.9)))
+                    .append(',').append(micros(h.getMax())).append('\n');
+        }
+        java.nio.file.Files.write(path, out.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8));
+    }
+
+    public void writeJson(java.nio.file.Path path) throws IOException {
+        StringBuilder out = new StringBuilder("{\n  \"phases\": {\n");
+        for (int i = 0; i < histograms.length; i++) {
+            LatencyHistogram h = histograms[i];
+            out.append("    \"").append(PHASE_NAMES[i]).append("\": {\"count\": ").append(h.getCount())
+                    .append(", \"meanUs\": ").append(micros(h.getMean()))
+                    .append(", \"p50Us\": ").append(micros(h.percentile(50)))
+                    .append(", \"p90Us\": ").append(micros(h.percentile(90)))
+                    .append(", \"p99Us\": ").append(micros(h.percentile(99)))
+                    .append(", \"p999Us\": ").append(micros(h.percentile(99.9)))
+                    .append(", \"maxUs\": ").append(micros(h.getMax()))
+                    .append(i < histograms.length - 1 ? "},\n" : "}\n");
+        }
+        out.append("  },\n  \"entities\": {\"zombies\": ").append(zombieCount)
+                .append(", \"plants\": ").append(plantCount)
+                .append(", \"peas\": ").append(peaCount)
+                .append(", \"suns\": ").append(sunCount).append("},\n");
+        out.append("  \"frames\": {\"dropped\": ").append(droppedFrames).append("},\n");
+        out.append("  \"gc\": {\"collections\": ").append(gcCount())
+                .append(", \"timeMs\": ").append(gcMillis()).append("}\n}\n");
+        java.nio.file.Files.write(path, out.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8));
+    }
+
+    private static String micros(double nanos) {
+        return String.format(Locale.ROOT, "%.2f", nanos / 1000.0);
+    }
+}
+
+/**
+ * Rules for one level, read from a .properties file: board size, length, sun economy, the wave
+ * timeline with each wave's zombie mix, and plants already on the lawn. The built-in CLASSIC level
+ * is the original game; levels/classic.properties is the same level written out as a template.
+ */
+final class LevelDefinition {
+    /**
+     * One stretch of the timeline - spawns burst zombies every intervalMillis while the game second is
+     * within [fromSecond, toSecond], up to limit in total (0 = no limit)
+     */
+    static final class Wave {
+        final String phaseLabel;
+        final int fromSecond;
+        final int toSecond; // -1 = never ends
+        final int intervalMillis; // 0 = no spawns
+        final int burst;
+        final int limit;
+        private final int[] mixWeights; // Normal, flag, conehead
+        private final int mixTotal;
+
+        Wave(String label, int fromSecond, int toSecond, int intervalMillis, int burst, int limit, int[] mixWeights) {
+            this.phaseLabel = "Phase: " + label;
+            this.fromSecond = fromSecond;
+            this.toSecond = toSecond;
+            this.intervalMillis = intervalMillis;
+            this.burst = burst;
+            this.limit = limit;
+            this.mixWeights = mixWeights;
+            this.mixTotal = mixWeights[0] + mixWeights[1] + mixWeights[2];
+        }
+
+        boolean covers(long second) {
+            return second >= fromSecond && (toSecond < 0 || second <= toSecond);
+        }
+
+        /**
+         * Zombie type for spawnZombie() drawn from this wave's mix - an even mix draws exactly like nextInt(3)
+         */
+        int pickType(Random random) {
+            int roll = random.nextInt(mixTotal);
+            for (int type = 0; type < mixWeights.length; type++) {
+                roll -= mixWeights[type];
+                if (roll < 0) {
+                    return type;
+                }
+            }
+            return 0;
+        }
+    }
+
+    private static final String[] ZOMBIE_TYPES = {"normal", "flag", "conehead"};
+
+    private static final String CLASSIC_SOURCE = String.join("\n",
+            "name=Classic",
+            "grid.rows=5",
+            "grid.cols=9",
+            "duration.seconds=180",
+            "sun.start=50",
+            "sun.skyInterval.ms=8000",
+            "waves=prep,wave1,wave2,wave3,final",
+            "wave.prep.label=Preparation Phase",
+            "wave.prep.from=0",
+            "wave.prep.to=29",
+            "wave.wave1.label=Wave 1 (10s intervals)",
+            "wave.wave1.from=30",
+            "wave.wave1.to=80",
+            "wave.wave1.interval.ms=10000",
+            "wave.wave2.label=Wave 2 (5s intervals)",
+            "wave.wave2.from=81",
+            "wave.wave2.to=140",
+            "wave.wave2.interval.ms=5000",
+            "wave.wave3.label=Wave 3 (3s intervals)",
+            "wave.wave3.from=141",
+            "wave.wave3.to=170",
+            "wave.wave3.interval.ms=3000",
+            "wave.final.label=FINAL WAVE!",
+            "wave.final.from=171",
+            "wave.final.to=180",
+            "wave.final.interval.ms=300",
+            "wave.final.limit=5");
+
+    static final LevelDefinition CLASSIC = parse(CLASSIC_SOURCE);
+
+    private final String source;
+    private final String name;
+    private final int rows;
+    private final int cols;
+    private final long durationMillis; // 0 = endless
+    private final int startingSun;
+    private final int skySunIntervalMillis;
+    private final int skySunBatch;
+    private final Wave[] waves;
+    private final int[] sunflowerCols; // {from, to}, or null
+    private final int[] peashooterCols;
+
+    private LevelDefinition(String source, Properties properties) {
+        this.source = source;
+        this.name = properties.getProperty("name", "Unnamed level");
+        this.rows = requiredInt(properties, "grid.rows", 1, 1000);
+        this.cols = requiredInt(properties, "grid.cols", 1, 1000);
+        this.durationMillis = requiredInt(properties, "duration.seconds", 0, Integer.MAX_VALUE) * 1000L;
+        this.startingSun = intProperty(properties, "sun.start", 50, 0, Integer.MAX_VALUE);
+        this.skySunIntervalMillis = intProperty(properties, "sun.skyInterval.ms", 8000, 0, Integer.MAX_VALUE);
+        this.skySunBatch = intProperty(properties, "sun.skyBatch", 1, 0, 10_000);
+        this.sunflowerCols = columnRange(properties, "prefill.sunflower");
+        this.peashooterCols = columnRange(properties, "prefill.peashooter");
+
+        String[] waveNames = properties.getProperty("waves", "").trim().split("\\s*,\\s*");
+        List<Wave> parsed = new ArrayList<>();
+        for (String waveName : waveNames) {
+            if (waveName.isEmpty()) continue;
+            String prefix = "wave." + waveName + ".";
+            parsed.add(new Wave(
+                    properties.getProperty(prefix + "label", waveName),
+                    requiredInt(properties, prefix + "from", 0, Integer.MAX_VALUE),
+                    intProperty(properties, prefix + "to", -1, -1, Integer.MAX_VALUE),
+                    intProperty(properties, prefix + "interval.ms", 0, 0, Integer.MAX_VALUE),
+                    intProperty(properties, prefix + "burst", 1, 1, 100_000),
+                    intProperty(properties, prefix + "limit", 0, 0, Integer.MAX_VALUE),
+                    mix(properties.getProperty(prefix + "mix"), prefix + "mix")));
+        }
+        this.waves = parsed.toArray(new Wave[0]);
+    }
+
+    /**
+     * Level from the text of a .properties file
+     */
+    static LevelDefinition parse(String source) {
+        Properties properties = new Properties();
+        try {
+            properties.load(new StringReader(source));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unreadable level: " + e.getMessage(), e);
+        }
+        return new LevelDefinition(source, properties);
+    }
+
+    static LevelDefinition load(java.nio.file.Path path) throws IOException {
+        String source = new String(java.nio.file.Files.readAllBytes(path), java.nio.charset.StandardCharsets.ISO_8859_1);
+        try {
+            return parse(source);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(path + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static int requiredInt(Properties properties, String key, int min, int max) {
+        if (properties.getProperty(key) == null) {
+            throw new IllegalArgumentException("missing " + key);
+        }
+        return intProperty(properties, key, 0, min, max);
+    }
+
+    private static int intProperty(Properties properties, String key, int defaultValue, int min, int max) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed < min || parsed > max) {
+                throw new IllegalArgumentException(key + " must be between " + min + " and " + max + ", got " + parsed);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " is not a number: " + value);
+        }
+    }
+
+    private static int[] mix(String value, String key) {
+        int[] weights = {1, 1, 1};
+        if (value == null) {
+            return weights;
+        }
+        Arrays.fill(weights, 0);
+        for (String part : value.split(",")) {
+            String[] pair = part.trim().split(":");
+            int type = Arrays.asList(ZOMBIE_TYPES).indexOf(pair[0].trim());
+            if (type < 0 || pair.length != 2) {
+                throw new IllegalArgumentException(key + " entries look like normal:2, got " + part.trim());
+            }
+            try {
+                weights[type] = Integer.parseInt(pair[1].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(key + " weight is not a number: " + part.trim());
+            }
+        }
+        if (weights[0] < 0 || weights[1] < 0 || weights[2] < 0 || weights[0] + weights[1] + weights[2] == 0) {
+            throw new IllegalArgumentException(key + " needs at least one positive weight");
+        }
+        return weights;
+    }
+
+    private int[] columnRange(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        String[] bounds = value.trim().split("\\s*-\\s*");
+        try {
+            int from = Integer.parseInt(bounds[0]);
+            int to = bounds.length > 1 ? Integer.parseInt(bounds[1]) : from;
+            if (from < 0 || to >= cols || from > to) {
+                throw new IllegalArgumentException(key + " must be a column range inside the grid, got " + value);
+            }
+            return new int[]{from, to};
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must look like 0-3, got " + value);
+        }
+    }
+
+    /**
+     * Index of the first wave whose time window holds the given game second, or -1
+     */
+    int waveIndexAt(long second) {
+        for (int i = 0; i < waves.length; i++) {
+            if (waves[i].covers(second)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    Wave getWave(int index) { return waves[index]; }
+
+    // Getters
+    public String getSource() { return source; }
+    public String getName() { return name; }
+    public int getRows() { return rows; }
+    public int getCols() { return cols; }
+    public long getDurationMillis() { return durationMillis; }
+    public boolean isEndless() { return durationMillis == 0; }
+    public int getStartingSun() { return startingSun; }
+    public int getSkySunIntervalMillis() { return skySunIntervalMillis; }
+    public int getSkySunBatch() { return skySunBatch; }
+    public int getWaveCount() { return waves.length; }
+    public int[] getSunflowerCols() { return sunflowerCols == null ? null : sunflowerCols.clone(); }
+    public int[] getPeashooterCols() { return peashooterCols == null ? null : peashooterCols.clone(); }
+}
+
+/**
+ * java.util.Random with the same sequence, but whose 48-bit state can be read back and set - so a save
+ * carries the RNG along and a resumed game draws exactly the numbers the original would have
+ */
+class GameRandom extends Random {
+    private static final long serialVersionUID = 1L; // Saves go through SaveState, not Java serialization
+
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    private long state;
+
+    public GameRandom(long seed) {
+        super(seed);
+        setSeed(seed);
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        super.setSeed(seed);
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    @Override
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    public long getState() { return state; }
+    public void setState(long state) { this.state = state & MASK; }
+}
+
+/**
+ * Enhanced Game Manager with Sun Collection and Shovel Feature
+ */
+class GameManager {
+    private EntityStore<Zombie> zombies;
+    private EntityStore<Plant> plants;
+    private EntityStore<Pea> projectiles;
+    private EntityStore<Sun> suns; // New: List of collectible suns
+    private Plant[][] grid;
+    private LaneIndex laneIndex; // Zombies per lane, sorted by x
+    private PlantScheduler plantScheduler; // Plants by next action time
+    private LaneOccupancy occupancy; // Plant-holding tiles as bits, mirrors grid
+    private int sunCount; // Changed from sun to sunCount for clarity
+    private long gameStartTime;
+    private long lastZombieSpawn;
+    private long lastSkySunDrop; // New: Track sky sun drops
+    private long lastUpdateTime; // Movement scales with the time since the previous update()
+    private boolean entitiesMoved; // Whether the last update() ran in full - snapshots only interpolate then
+    private GameRandom random;
+    private final long seed;
+    private long tickCount; // Ticks since the game was created, across restarts
+    private long tickMillis = TICK_MILLIS; // Length of the last tick() - saves keep it so a resumed game keeps pace
+    private SessionRecorder recorder;
+    private volatile FrameProfiler profiler = FrameProfiler.DISABLED; // Real one made on first getProfiler()
+    private boolean gameOver;
+    private boolean playerWon;
+    private int level;
+    private final LevelDefinition levelDefinition;
+    private final int gridRows;
+    private final int gridCols;
+    private int[] waveSpawned; // Zombies spawned so far by each wave, for wave limits
+    private int nextEntityId = 1; // Ids for zombies and suns - never reused, not even across restarts
+    private int sunCollected; // Totals for this game, reset by restart()
+    private int sunSpent;
+    private int zombiesKilled;
+    private boolean logActions = true;
+    private AudioManager audioManager;
+    private final GameClock clock;
+    private final ObjectPool<Pea> peaPool = new ObjectPool<>(Pea::new, 64);
+    private final ObjectPool<Sun> sunPool = new ObjectPool<>(Sun::new, 16);
+
+    // Only used by render(Graphics) - the windowed game draws published snapshots instead
+    private RenderSnapshot directSnapshot;
+    private GameRenderer directRenderer;
+
+    private static final int TILE_WIDTH = 80;
+    private static final int TILE_HEIGHT = 100;
+
+    public static final long TICK_MILLIS = 16; // Default fixed step, ~60 updates per second - entity speeds are per this step
+
+    public GameManager() {
+        this(new SystemGameClock(), true);
+    }
+
+    /**
+     * Game on a simulated clock with no audio - driven only by tick(), safe to run without a display
+     */
+    public static GameManager createHeadless() {
+        return new GameManager(new SimulationClock(), false);
+    }
+
+    /**
+     * Headless game whose zombies and sky suns follow the given seed - same seed and inputs, same game
+     */
+    public static GameManager createHeadless(long seed) {
+        return new GameManager(new SimulationClock(), false, seed);
+    }
+
+    public static GameManager createHeadless(LevelDefinition level, long seed) {
+        return new GameManager(new SimulationClock(), false, seed, level);
+    }
+
+    public GameManager(GameClock clock, boolean audioEnabled) {
+        this(clock, audioEnabled, new Random().nextLong());
+    }
+
+    public GameManager(GameClock clock, boolean audioEnabled, long seed) {
+        this(clock, audioEnabled, seed, LevelDefinition.CLASSIC);
+    }
+
+    public GameManager(GameClock clock, boolean audioEnabled, long seed, LevelDefinition levelDefinition) {
+        this.clock = clock;
+        this.seed = seed;
+        this.levelDefinition = levelDefinition;
+        this.gridRows = levelDefinition.getRows();
+        this.gridCols = levelDefinition.getCols();
+        zombies = new EntityStore<>(zombie -> !zombie.isAlive(), zombie -> zombiesKilled++);
+        plants = new EntityStore<>(plant -> !plant.isAlive() || plant.isRemoved());
+        projectiles = new EntityStore<>(pea -> !pea.isActive(), peaPool::release);
+        suns = new EntityStore<>(Sun::isCollected, sunPool::release); // New: Initialize suns list
+        grid = new Plant[gridRows][gridCols];
+        laneIndex = new LaneIndex(gridRows);
+        occupancy = new LaneOccupancy(gridRows, gridCols);
+        plantScheduler = new PlantScheduler(gridRows, plant -> plant.isAlive() && grid[plant.getRow()][plant.getCol()] == plant);
+        sunCount = levelDefinition.getStartingSun();
+        gameStartTime = clock.currentTimeMillis();
+        lastZombieSpawn = gameStartTime;
+        lastSkySunDrop = gameStartTime;
+        lastUpdateTime = gameStartTime;
+        random = new GameRandom(seed);
+        gameOver = false;
+        playerWon = false;
+        level = 1;
+        waveSpawned = new int[levelDefinition.getWaveCount()];
+        prefillPlants();
+
+        // Initialize audio - music only starts with startMusic(), so it never holds up the first frame
+        if (audioEnabled) {
+            audioManager = new AudioManager();
+        }
+    }
+
+    /**
+     * Start the background music streaming on its own thread - call once the window is up
+     */
+    public void startMusic() {
+        if (audioManager != null) {
+            audioManager.playBackgroundMusic();
+        }
+    }
+
+    /**
+     * Advance a simulated clock by one fixed step and run a single update
+     */
+    public void tick(long dtMillis) {
+        if (!(clock instanceof SimulationClock)) {
+            throw new IllegalStateException("tick() needs a SimulationClock, this game runs on " + clock.getClass().getSimpleName());
+        }
+        ((SimulationClock) clock).advance(dtMillis);
+        update();
+        tickCount++;
+        tickMillis = dtMillis;
+    }
+
+    /**
+     * The step this game is ticked in - TICK_MILLIS until its first tick(), or what a restored save was ticked in
+     */
+    public long getTickMillis() { return tickMillis; }
+
+    void setTickMillis(long tickMillis) {
+        this.tickMillis = tickMillis;
+    }
+
+    /**
+     * Log every successful place, shovel, collect and restart from now on, stamped with the tick count
+     */
+    public void setRecorder(SessionRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public void update() {
+        long currentTime = clock.currentTimeMillis();
+        long dtMillis = currentTime - lastUpdateTime;
+        lastUpdateTime = currentTime;
+        entitiesMoved = false;
+        if (gameOver) return;
+
+        long gameTime = currentTime - gameStartTime;
+
+        // Win condition: game time ends (endless levels only end when a zombie gets home)
+        if (!levelDefinition.isEndless() && gameTime >= levelDefinition.getDurationMillis()) {
+            gameOver = true;
+            playerWon = true;
+            return;
+        }
+
+        // Lose condition: zombie reaches player's home
+        for (int i = 0; i < zombies.size(); i++) {
+            if (zombies.get(i).hasReachedHome()) {
+                gameOver = true;
+                playerWon = false;
+                return;
+            }
+        }
+
+        FrameProfiler profiler = this.profiler;
+        long tickStart = profiler.begin();
+        long phaseStart = tickStart;
+
+        // Sky sun drops at constant rate
+        int skySunInterval = levelDefinition.getSkySunIntervalMillis();
+        if (skySunInterval > 0 && currentTime - lastSkySunDrop >= skySunInterval) {
+            for (int i = 0; i < levelDefinition.getSkySunBatch(); i++) {
+                dropSkySun();
+            }
+            lastSkySunDrop = currentTime;
+        }
+
+        spawnZombiesAccordingToSpecs(gameTime);
+        phaseStart = profiler.lap(FrameProfiler.SPAWN, phaseStart);
+
+        // Update all entities - stores only change shape at the end of the tick
+        for (int i = 0; i < zombies.size(); i++) {
+            zombies.get(i).update(currentTime);
+        }
+        laneIndex.refresh();
+
+        // Only plants whose next action is due - the rest of the lawn isn't touched
+        int duePlants = plantScheduler.collectDue(currentTime, laneIndex);
+        for (int i = 0; i < duePlants; i++) {
+            Plant plant = plantScheduler.getDue(i);
+            plantScheduler.schedule(plant, plant.performAction(this));
+        }
+        phaseStart = profiler.lap(FrameProfiler.ENTITY_UPDATE, phaseStart);
+
+        for (int i = 0; i < projectiles.size(); i++) {
+            Pea pea = projectiles.get(i);
+            pea.update(dtMillis);
+            if (pea.isActive()) {
+                Zombie target = laneIndex.findHit(pea.getRow(), pea.getX(), pea.getY(), Pea.SIZE, Pea.SIZE);
+                if (target != null) {
+                    pea.checkCollision(target);
+                }
+            }
+        }
+
+        phaseStart = profiler.lap(FrameProfiler.PROJECTILES, phaseStart);
+
+        for (int i = 0; i < suns.size(); i++) {
+            suns.get(i).update(currentTime, dtMillis);
+        }
+        entitiesMoved = true;
+        phaseStart = profiler.lap(FrameProfiler.SUN_UPDATE, phaseStart);
+
+        handleCombat();
+        profiler.lap(FrameProfiler.COMBAT, phaseStart);
+
+        // Drop dead and collected entities, bring in this tick's spawns
+        zombies.commit();
+        plants.commit();
+        projectiles.commit();
+        suns.commit();
+
+        profiler.lap(FrameProfiler.TICK, tickStart);
+        profiler.setEntityCounts(zombies.size(), plants.size(), projectiles.size(), suns.size());
+    }
+
+    /**
+     * Where update timings go - swap in a shared one to pool several games into one report
+     */
+    public void setProfiler(FrameProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * This game's profiler, created the first time someone asks - ticks before that aren't timed
+     */
+    public synchronized FrameProfiler getProfiler() {
+        if (profiler == FrameProfiler.DISABLED) {
+            profiler = new FrameProfiler();
+        }
+        return profiler;
+    }
+
+    /**
+     * Drop a sun from the sky at random position
+     */
+    private void dropSkySun() {
+        // Random X between lanes - a board only a column or two wide still gets a (narrow) band
+        int randomX = 100 + random.nextInt(Math.max(1, gridCols * TILE_WIDTH - 120));
+        int targetY = gridRows * TILE_HEIGHT - 100 + random.nextInt(100); // Random Y in bottom area
+        suns.add(sunPool.acquire().resetAsSkySun(randomX, targetY, clock.currentTimeMillis()).withId(nextEntityId++));
+    }
+
+    /**
+     * Add a sun drop (from sunflower or other sources)
+     */
+    public void addSunDrop(float x, float y, boolean fromSunflower) {
+        suns.add(sunPool.acquire().resetAsDrop(x, y, clock.currentTimeMillis()).withId(nextEntityId++));
+    }
+
+    /**
+     * Handle clicking on suns to collect them - can catch falling or stationary suns
+     */
+    public boolean collectSun(int mouseX, int mouseY) {
+        for (int i = 0; i < suns.size(); i++) {
+            Sun sun = suns.get(i);
+            if (sun.checkClick(mouseX, mouseY)) {
+                sunCount += 25;
+                sunCollected += 25;
+                if (recorder != null) {
+                    recorder.collect(tickCount, mouseX, mouseY);
+                }
+                if (logActions) {
+                    boolean wasFalling = sun.falling;
+                    String status = wasFalling ? "MID-AIR" : "GROUND";
+                    System.out.println("Sun collected " + status + "! Total sun: " + sunCount + " | Suns remaining: " + (suns.size() - 1));
+                }
+                return true; // Sun was collected
+            }
+        }
+        return false; // No sun was clicked
+    }
+
+    private void spawnZombiesAccordingToSpecs(long gameTime) {
+        int waveIndex = levelDefinition.waveIndexAt(gameTime / 1000);
+        if (waveIndex < 0) {
+            return;
+        }
+        LevelDefinition.Wave wave = levelDefinition.getWave(waveIndex);
+        if (wave.intervalMillis == 0) {
+            return; // Preparation - nothing spawns
+        }
+        if (wave.limit > 0 && waveSpawned[waveIndex] >= wave.limit) {
+            return;
+        }
+
+        if (clock.currentTimeMillis() - lastZombieSpawn >= wave.intervalMillis) {
+            int count = wave.limit > 0 ? Math.min(wave.burst, wave.limit - waveSpawned[waveIndex]) : wave.burst;
+            for (int i = 0; i < count; i++) {
+                int lane = random.nextInt(gridRows);
+                spawnZombie(lane, wave.pickType(random));
+            }
+            waveSpawned[waveIndex] += count;
+            lastZombieSpawn = clock.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Spawn a zombie at the right edge of a lane - 0 normal, 1 flag, 2 conehead
+     */
+    public void spawnZombie(int lane, int type) {
+        spawnZombie(lane, type, 50 + gridCols * TILE_WIDTH + 10);
+    }
+
+    /**
+     * Spawn a zombie anywhere along a lane - for building test and benchmark boards
+     */
+    public Zombie spawnZombie(int lane, int type, int x) {
+        int y = 50 + lane * TILE_HEIGHT;
+
+        Zombie zombie = newZombie(type, x, y, lane, clock.currentTimeMillis());
+        zombie.setId(nextEntityId++);
+        zombies.add(zombie);
+        laneIndex.add(zombie);
+        return zombie;
+    }
+
+    private static Zombie newZombie(int type, int x, int y, int lane, long spawnTime) {
+        switch (type) {
+            case 1:
+                return new FlagZombie(x, y, lane, spawnTime);
+            case 2:
+                return new ConeheadZombie(x, y, lane, spawnTime);
+            default:
+                return new NormalZombie(x, y, lane, spawnTime);
+        }
+    }
+
+    /**
+     * The spawnZombie() type of a zombie - 0 normal, 1 flag, 2 conehead
+     */
+    static int zombieType(Zombie zombie) {
+        if (zombie instanceof FlagZombie) return 1;
+        if (zombie instanceof ConeheadZombie) return 2;
+        return 0;
+    }
+
+    // Package-private so the benchmarks can time it on its own
+    void handleCombat() {
+        long currentTime = clock.currentTimeMillis();
+
+        // A zombie is in contact while its tile holds a plant; attack state only changes when that does
+        for (int i = 0; i < zombies.size(); i++) {
+            Zombie zombie = zombies.get(i);
+            int row = zombie.getLane();
+            int col = (zombie.getX() - 50) / TILE_WIDTH;
+            boolean contact = col >= 0 && col < gridCols && occupancy.isOccupied(row, col);
+
+            if (!contact) {
+                if (zombie.isAttacking()) {
+                    zombie.setAttacking(false);
+                }
+                continue;
+            }
+            if (!zombie.isAttacking()) {
+                zombie.startAttacking(currentTime);
+            }
+            if (zombie.takeBite(currentTime)) {
+                Plant plant = grid[row][col];
+                plant.takeDamage(zombie.getDamage());
+                if (!plant.isAlive()) {
+                    grid[row][col] = null;
+                    occupancy.clear(row, col);
+                    zombie.setAttacking(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Place plant on grid
+     */
+    public boolean placePlant(int row, int col, Class<? extends Plant> plantType) {
+        if (row < 0 || row >= gridRows || col < 0 || col >= gridCols) {
+            return false;
+        }
+
+        if (grid[row][col] != null) {
+            return false;
+        }
+
+        int x = 50 + col * TILE_WIDTH;
+        int y = 50 + row * TILE_HEIGHT;
+
+        Plant plant = null;
+        long plantTime = clock.currentTimeMillis();
+
+        if (plantType == Sunflower.class && sunCount >= 50) {
+            plant = new Sunflower(x, y, row, col, plantTime);
+            sunCount -= 50;
+        } else if (plantType == Peashooter.class && sunCount >= 100) {
+            plant = new Peashooter(x, y, row, col, plantTime);
+            sunCount -= 100;
+        } else if (plantType == CherryBomb.class && sunCount >= 150) {
+            plant = new CherryBomb(x, y, row, col, plantTime);
+            sunCount -= 150;
+        }
+
+        if (plant != null) {
+            sunSpent += plant.getCost();
+            grid[row][col] = plant;
+            occupancy.set(row, col);
+            plants.add(plant);
+            plantScheduler.add(plant);
+            if (recorder != null) {
+                recorder.place(tickCount, row, col, plantType);
+            }
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Shovel feature - Remove plant from grid
+     */
+    public boolean shovelPlant(int row, int col) {
+        if (row < 0 || row >= gridRows || col < 0 || col >= gridCols) {
+            return false;
+        }
+
+        Plant plant = grid[row][col];
+        if (plant != null) {
+            grid[row][col] = null;
+            occupancy.clear(row, col);
+            plant.remove();
+            if (recorder != null) {
+                recorder.shovel(tickCount, row, col);
+            }
+            if (logActions) {
+                System.out.println("Plant removed from (" + row + ", " + col + ")");
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Plants the level starts with - free, and not recorded since the level itself is part of a recording
+     */
+    private void prefillPlants() {
+        long plantTime = clock.currentTimeMillis();
+        int[] sunflowerCols = levelDefinition.getSunflowerCols();
+        int[] peashooterCols = levelDefinition.getPeashooterCols();
+        for (int row = 0; row < gridRows; row++) {
+            for (int col = 0; col < gridCols; col++) {
+                Plant plant = null;
+                if (sunflowerCols != null && col >= sunflowerCols[0] && col <= sunflowerCols[1]) {
+                    plant = newPlant(Sunflower.class, row, col, plantTime);
+                } else if (peashooterCols != null && col >= peashooterCols[0] && col <= peashooterCols[1]) {
+                    plant = newPlant(Peashooter.class, row, col, plantTime);
+                }
+                if (plant != null) {
+                    grid[row][col] = plant;
+                    occupancy.set(row, col);
+                    plants.add(plant);
+                    plantScheduler.add(plant);
+                }
+            }
+        }
+    }
+
+    private static Plant newPlant(Class<? extends Plant> plantType, int row, int col, long plantTime) {
+        int x = 50 + col * TILE_WIDTH;
+        int y = 50 + row * TILE_HEIGHT;
+        if (plantType == Sunflower.class) return new Sunflower(x, y, row, col, plantTime);
+        if (plantType == Peashooter.class) return new Peashooter(x, y, row, col, plantTime);
+        return new CherryBomb(x, y, row, col, plantTime);
+    }
+
+    public void addProjectile(Pea pea) { projectiles.add(pea); }
+
+    /**
+     * Launch a pea from the pool - used by plants so shooting doesn't allocate
+     */
+    public void firePea(int x, int y, int row, int damage) {
+        projectiles.add(peaPool.acquire().reset(x, y, row, damage, 50 + gridCols * TILE_WIDTH + 80));
+    }
+
+    /**
+     * Snapshot of the zombies in a lane, sorted by x. Hot paths should query the lane index directly.
+     */
+    public List<Zombie> getZombiesInLane(int lane) {
+        List<Zombie> result = new ArrayList<>(laneIndex.size(lane));
+        for (int i = 0; i < laneIndex.size(lane); i++) {
+            result.add(laneIndex.get(lane, i));
+        }
+        return result;
+    }
+
+    /**
+     * Nearest zombie a plant at x could hit without allocating a lane list
+     */
+    public Zombie findZombieAhead(int lane, int x, int range) {
+        return laneIndex.firstZombieAhead(lane, x, range);
+    }
+
+    public void explodeArea(int centerX, int centerY, int radius, int damage) {
+        // Only lanes and x positions the blast can reach need checking
+        for (int lane = 0; lane < laneIndex.getLaneCount(); lane++) {
+            int laneCenterY = 50 + lane * TILE_HEIGHT + Zombie.HEIGHT / 2;
+            if (Math.abs(laneCenterY - centerY) > radius) {
+                continue;
+            }
+            int maxX = centerX + radius - Zombie.WIDTH / 2;
+            for (int i = laneIndex.firstIndexAtOrAfter(lane, centerX - radius - Zombie.WIDTH / 2);
+                 i < laneIndex.size(lane) && laneIndex.get(lane, i).getX() <= maxX; i++) {
+                Zombie zombie = laneIndex.get(lane, i);
+                double distance = Math.sqrt(Math.pow(zombie.getX() + 20 - centerX, 2) +
+                        Math.pow(zombie.getY() + 30 - centerY, 2));
+                if (distance <= radius) {
+                    zombie.takeDamage(damage);
+                }
+            }
+        }
+    }
+
+    /**
+     * Audio control methods
+     */
+    public void volumeUp() { if (audioManager != null) audioManager.volumeUp(); }
+    public void volumeDown() { if (audioManager != null) audioManager.volumeDown(); }
+    public void toggleMute() { if (audioManager != null) audioManager.toggleMute(); }
+    public float getVolume() { return audioManager != null ? audioManager.getVolume() : 0.0f; }
+    public boolean isMuted() { return audioManager == null || audioManager.isMuted(); }
+
+    /**
+     * Record everything visible this frame into a snapshot, in draw order - suns last so they stay on top
+     */
+    public void writeSnapshot(RenderSnapshot frame) {
+        frame.clear();
+        frame.setGrid(gridRows, gridCols, TILE_WIDTH, TILE_HEIGHT);
+        frame.setMoved(entitiesMoved);
+
+        for (int i = 0; i < plants.size(); i++) {
+            plants.get(i).render(frame);
+        }
+        for (int i = 0; i < zombies.size(); i++) {
+            zombies.get(i).render(frame);
+        }
+        for (int i = 0; i < projectiles.size(); i++) {
+            projectiles.get(i).render(frame);
+        }
+        for (int i = 0; i < suns.size(); i++) {
+            suns.get(i).render(frame);
+        }
+
+        long gameTime = getGameTime();
+        int secondsLeft = levelDefinition.isEndless() ? -1
+                : Math.max(0, (int) ((levelDefinition.getDurationMillis() - gameTime) / 1000));
+        int volumePercent = isMuted() ? -1 : Math.round(getVolume() * 100);
+        frame.setHud(sunCount, secondsLeft, getPhaseLabel(gameTime), zombies.size(), suns.size(),
+                volumePercent, gameOver, playerWon);
+    }
+
+    /**
+     * Draw the current state straight to a Graphics, on the calling thread - for offscreen and headless use
      */
     public void render(Graphics g) {
-        // Draw background
-        g.setColor(new Color(34, 139, 34));
-        g.fillRect(0, 0, 800, 600);
+        if (directSnapshot == null) {
+            directSnapshot = new RenderSnapshot();
+            directRenderer = new GameRenderer(profiler);
+        }
+        writeSnapshot(directSnapshot);
+        directRenderer.render(g, directSnapshot);
+    }
+
+    private String getPhaseLabel(long gameTime) {
+        int waveIndex = levelDefinition.waveIndexAt(gameTime / 1000);
+        return waveIndex < 0 ? "" : levelDefinition.getWave(waveIndex).phaseLabel;
+    }
+
+    /**
+     * Carry out one queued player command - called between ticks by whoever owns this game
+     */
+    public void apply(GameCommand command) {
+        switch (command.getType()) {
+            case CLICK:
+                handleClick(command.getX(), command.getY(), command.getPlantType());
+                break;
+            case RESTART:
+                if (gameOver) {
+                    restart();
+                }
+                break;
+            case VOLUME_UP:
+                volumeUp();
+                break;
+            case VOLUME_DOWN:
+                volumeDown();
+                break;
+            case TOGGLE_MUTE:
+                toggleMute();
+                break;
+            case SAVE:
+                try {
+                    SaveState.write(this, SaveState.QUICKSAVE_PATH);
+                    System.out.println("Game saved to " + SaveState.QUICKSAVE_PATH);
+                } catch (IOException e) {
+                    System.out.println("Could not save game: " + e.getMessage());
+                }
+                break;
+        }
+    }
+
+    /**
+     * A click on the lawn: collect a sun if one is under it, otherwise plant or shovel the tile.
+     * A null plant type means the shovel is selected.
+     */
+    public void handleClick(int x, int y, Class<? extends Plant> plantType) {
+        if (gameOver) return;
+
+        // PRIORITY 1: Try to collect sun first (falling or stationary)
+        if (collectSun(x, y)) {
+            if (logActions) {
+                System.out.println("Sun collected at (" + x + ", " + y + ")");
+            }
+            return; // Sun was collected, stop here
+        }
+
+        // PRIORITY 2: Check if click is in game grid area
+        if (y < 50 || y > 50 + gridRows * TILE_HEIGHT || x < 50 || x > 50 + gridCols * TILE_WIDTH) {
+            // Click is outside game area, ignore
+            return;
+        }
+
+        // Convert pixel coordinates to grid coordinates
+        int col = (x - 50) / TILE_WIDTH;
+        int row = (y - 50) / TILE_HEIGHT;
+
+        // Validate grid bounds
+        if (row < 0 || row >= gridRows || col < 0 || col >= gridCols) {
+            return;
+        }
+
+        // PRIORITY 3: Handle plant placement or shovel
+        if (plantType == null) {
+            // Shovel mode: remove plant
+            if (shovelPlant(row, col) && logActions) {
+                System.out.println("Plant removed from grid (" + row + ", " + col + ")");
+            }
+        } else {
+            // Normal mode: place plant
+            boolean placed = placePlant(row, col, plantType);
+            if (!logActions) {
+                return;
+            }
+            if (placed) {
+                System.out.println("Plant placed at grid (" + row + ", " + col + ")");
+            } else {
+                System.out.println("Cannot place plant - insufficient sun or tile occupied");
+            }
+        }
+    }
+    public void addSun(int amount) { sunCount += amount; }
+
+    /**
+     * Print each sun collected and plant placed or removed - on by default, off for batch runs and servers
+     */
+    public void setLogActions(boolean logActions) {
+        this.logActions = logActions;
+    }
+
+    // Getters
+    public long currentTimeMillis() { return clock.currentTimeMillis(); }
+    public long getGameTime() { return clock.currentTimeMillis() - gameStartTime; }
+    public long getSeed() { return seed; }
+    public long getTickCount() { return tickCount; }
+    public int getZombieCount() { return zombies.size(); }
+    public int getPlantCount() { return plants.size(); }
+    public int getPeaCount() { return projectiles.size(); }
+    public Zombie getZombie(int index) { return zombies.get(index); }
+    public int getSunDropCount() { return suns.size(); }
+    public Sun getSunDrop(int index) { return suns.get(index); }
+    public Plant getPlantAt(int row, int col) { return grid[row][col]; }
+    public int getZombieCountInLane(int lane) { return laneIndex.size(lane); }
+    public int getSunCollected() { return sunCollected; }
+    public int getSunSpent() { return sunSpent; }
+    public int getZombiesKilled() { return zombiesKilled; }
+    public int getSun() { return sunCount; }
+    public boolean isGameOver() { return gameOver; }
+    public boolean didPlayerWin() { return playerWon; }
+    public int getGridRows() { return gridRows; }
+    public int getGridCols() { return gridCols; }
+    public LevelDefinition getLevelDefinition() { return levelDefinition; }
+    public int getTileWidth() { return TILE_WIDTH; }
+    public int getTileHeight() { return TILE_HEIGHT; }
+
+    /**
+     * Upper guess at writeState()'s size, so a save rarely has to grow its buffer
+     */
+    int estimateStateBytes() {
+        return 128 + waveSpawned.length * 4 + gridRows * 8 + (plants.size() + plantScheduler.size()) * 60
+                + zombies.size() * 44 + projectiles.size() * 21 + suns.size() * 37;
+    }
+
+    /**
+     * Write everything the game needs to carry on exactly where it is, for SaveState - between ticks
+     * only. Plants and zombies go out as tables so the scheduler and lane index can refer to them by
+     * position, in their current order: ties there decide which plant acts and which zombie is hit first.
+     */
+    void writeState(ByteBuffer out) {
+        out.putLong(tickCount).putLong(gameStartTime).putLong(lastZombieSpawn).putLong(lastSkySunDrop);
+        out.putLong(random.getState());
+        out.putInt(sunCount).putInt(sunCollected).putInt(sunSpent).putInt(zombiesKilled);
+        out.putInt(nextEntityId).putInt(level);
+        out.put((byte) ((gameOver ? 1 : 0) | (playerWon ? 2 : 0)));
+        out.putInt(waveSpawned.length);
+        for (int spawned : waveSpawned) {
+            out.putInt(spawned);
+        }
+
+        // The lawn, then plants the scheduler still holds after they were shoveled or eaten
+        Map<Plant, Integer> plantIndex = new IdentityHashMap<>();
+        List<Plant> plantTable = new ArrayList<>();
+        for (int row = 0; row < gridRows; row++) {
+            for (int col = 0; col < gridCols; col++) {
+                if (grid[row][col] != null) {
+                    plantIndex.put(grid[row][col], plantTable.size());
+                    plantTable.add(grid[row][col]);
+                }
+            }
+        }
+        for (int i = 0; i < plantScheduler.getHeapSize(); i++) {
+            indexPlant(plantScheduler.getScheduled(i), plantIndex, plantTable);
+        }
+        for (int lane = 0; lane < gridRows; lane++) {
+            for (int i = 0; i < plantScheduler.getParkedCount(lane); i++) {
+                indexPlant(plantScheduler.getParked(lane, i), plantIndex, plantTable);
+            }
+        }
+        out.putInt(plantTable.size());
+        for (Plant plant : plantTable) {
+            out.put((byte) SessionRecorder.plantCode(plant.getClass()));
+            out.put((byte) (grid[plant.getRow()][plant.getCol()] == plant ? 1 : 0));
+            out.putShort((short) plant.getRow()).putShort((short) plant.getCol());
+            plant.writeState(out);
+        }
+        out.putLong(plantScheduler.getNextOrder());
+        out.putInt(plantScheduler.getHeapSize());
+        for (int i = 0; i < plantScheduler.getHeapSize(); i++) {
+            out.putInt(plantIndex.get(plantScheduler.getScheduled(i)));
+            out.putLong(plantScheduler.getDueTime(i)).putLong(plantScheduler.getOrder(i));
+        }
+        for (int lane = 0; lane < gridRows; lane++) {
+            out.putInt(plantScheduler.getParkedCount(lane));
+            for (int i = 0; i < plantScheduler.getParkedCount(lane); i++) {
+                out.putInt(plantIndex.get(plantScheduler.getParked(lane, i)));
+            }
+        }
+
+        Map<Zombie, Integer> zombieIndex = new IdentityHashMap<>();
+        out.putInt(zombies.size());
+        for (int i = 0; i < zombies.size(); i++) {
+            Zombie zombie = zombies.get(i);
+            zombieIndex.put(zombie, i);
+            out.put((byte) zombieType(zombie)).putShort((short) zombie.getLane());
+            zombie.writeState(out);
+        }
+        // Each lane in x order - zombies that died last tick are still in the index until the next refresh
+        for (int lane = 0; lane < gridRows; lane++) {
+            int count = 0;
+            for (int i = 0; i < laneIndex.size(lane); i++) {
+                if (zombieIndex.containsKey(laneIndex.get(lane, i))) count++;
+            }
+            out.putInt(count);
+            for (int i = 0; i < laneIndex.size(lane); i++) {
+                Integer index = zombieIndex.get(laneIndex.get(lane, i));
+                if (index != null) out.putInt(index);
+            }
+        }
+
+        out.putInt(projectiles.size());
+        for (int i = 0; i < projectiles.size(); i++) {
+            projectiles.get(i).writeState(out);
+        }
+        out.putInt(suns.size());
+        for (int i = 0; i < suns.size(); i++) {
+            suns.get(i).writeState(out);
+        }
+    }
+
+    private static void indexPlant(Plant plant, Map<Plant, Integer> plantIndex, List<Plant> plantTable) {
+        if (!plantIndex.containsKey(plant)) {
+            plantIndex.put(plant, plantTable.size());
+            plantTable.add(plant);
+        }
+    }
+
+    /**
+     * Replace this game's state with one written by writeState() from a game of the same level. The
+     * clock isn't part of it - SaveState builds the game on a clock already at the saved time.
+     */
+    void readState(ByteBuffer in) {
+        zombies.clear();
+        plants.clear();
+        projectiles.clear();
+        suns.clear();
+        grid = new Plant[gridRows][gridCols];
+        laneIndex.clear();
+        occupancy.clearAll();
+        plantScheduler.clear();
+
+        tickCount = in.getLong();
+        gameStartTime = in.getLong();
+        lastZombieSpawn = in.getLong();
+        lastSkySunDrop = in.getLong();
+        lastUpdateTime = clock.currentTimeMillis(); // Saves are taken between ticks
+        entitiesMoved = false;
+        random.setState(in.getLong());
+        sunCount = in.getInt();
+        sunCollected = in.getInt();
+        sunSpent = in.getInt();
+        zombiesKilled = in.getInt();
+        nextEntityId = in.getInt();
+        level = in.getInt();
+        int flags = in.get();
+        gameOver = (flags & 1) != 0;
+        playerWon = (flags & 2) != 0;
+        int waves = in.getInt();
+        if (waves != waveSpawned.length) {
+            throw new IllegalArgumentException("saved game has " + waves + " waves, its level " + waveSpawned.length);
+        }
+        for (int i = 0; i < waves; i++) {
+            waveSpawned[i] = in.getInt();
+        }
+
+        Plant[] plantTable = new Plant[in.getInt()];
+        for (int i = 0; i < plantTable.length; i++) {
+            Class<? extends Plant> plantType = SessionRecorder.plantType(in.get());
+            boolean onLawn = in.get() != 0;
+            int row = in.getShort();
+            int col = in.getShort();
+            Plant plant = newPlant(plantType, row, col, 0);
+            plant.readState(in);
+            plantTable[i] = plant;
+            if (onLawn) {
+                grid[row][col] = plant;
+                occupancy.set(row, col);
+                if (plant.isAlive()) {
+                    plants.restore(plant);
+                }
+            }
+        }
+        plantScheduler.setNextOrder(in.getLong());
+        int scheduled = in.getInt();
+        for (int i = 0; i < scheduled; i++) {
+            Plant plant = plantTable[in.getInt()];
+            long dueTime = in.getLong();
+            plantScheduler.restore(plant, dueTime, in.getLong());
+        }
+        for (int lane = 0; lane < gridRows; lane++) {
+            int parked = in.getInt();
+            for (int i = 0; i < parked; i++) {
+                plantScheduler.restoreParked(plantTable[in.getInt()]);
+            }
+        }
+
+        Zombie[] zombieTable = new Zombie[in.getInt()];
+        for (int i = 0; i < zombieTable.length; i++) {
+            int type = in.get();
+            int lane = in.getShort();
+            Zombie zombie = newZombie(type, 0, 50 + lane * TILE_HEIGHT, lane, 0);
+            zombie.readState(in);
+            zombieTable[i] = zombie;
+            zombies.restore(zombie);
+        }
+        for (int lane = 0; lane < gridRows; lane++) {
+            int count = in.getInt();
+            for (int i = 0; i < count; i++) {
+                laneIndex.add(zombieTable[in.getInt()]);
+            }
+        }
+
+        int peas = in.getInt();
+        for (int i = 0; i < peas; i++) {
+            projectiles.restore(peaPool.acquire().readState(in));
+        }
+        int sunDrops = in.getInt();
+        for (int i = 0; i < sunDrops; i++) {
+            suns.restore(sunPool.acquire().readState(in));
+        }
+    }
+
+    public void restart() {
+        if (recorder != null) {
+            recorder.restart(tickCount);
+        }
+        zombies.clear();
+        plants.clear();
+        projectiles.clear();
+        suns.clear(); // Clear suns on restart
+        grid = new Plant[gridRows][gridCols];
+        laneIndex.clear();
+        occupancy.clearAll();
+        plantScheduler.clear();
+        sunCount = levelDefinition.getStartingSun();
+        sunCollected = 0;
+        sunSpent = 0;
+        zombiesKilled = 0;
+        gameStartTime = clock.currentTimeMillis();
+        lastZombieSpawn = gameStartTime;
+        lastSkySunDrop = gameStartTime;
+        lastUpdateTime = gameStartTime;
+        entitiesMoved = false;
+        gameOver = false;
+        playerWon = false;
+        level = 1;
+        waveSpawned = new int[levelDefinition.getWaveCount()];
+        prefillPlants();
+
+        // Restart background music
+        if (audioManager != null) {
+            audioManager.stopBackgroundMusic();
+            audioManager.playBackgroundMusic();
+        }
+    }
+
+    public void dispose() {
+        if (audioManager != null) {
+            audioManager.dispose();
+        }
+    }
+}
+
+/**
+ * Player input queued by the UI thread - the simulation applies it at the next tick boundary
+ */
+final class GameCommand {
+    enum Type { CLICK, RESTART, VOLUME_UP, VOLUME_DOWN, TOGGLE_MUTE, SAVE }
+
+    static final GameCommand RESTART = new GameCommand(Type.RESTART, 0, 0, null);
+    static final GameCommand SAVE = new GameCommand(Type.SAVE, 0, 0, null);
+    static final GameCommand VOLUME_UP = new GameCommand(Type.VOLUME_UP, 0, 0, null);
+    static final GameCommand VOLUME_DOWN = new GameCommand(Type.VOLUME_DOWN, 0, 0, null);
+    static final GameCommand TOGGLE_MUTE = new GameCommand(Type.TOGGLE_MUTE, 0, 0, null);
+
+    private final Type type;
+    private final int x, y;
+    private final Class<? extends Plant> plantType;
+
+    private GameCommand(Type type, int x, int y, Class<? extends Plant> plantType) {
+        this.type = type;
+        this.x = x;
+        this.y = y;
+        this.plantType = plantType;
+    }
+
+    /**
+     * Click on the lawn with a plant selected, or with the shovel when plantType is null
+     */
+    static GameCommand click(int x, int y, Class<? extends Plant> plantType) {
+        return new GameCommand(Type.CLICK, x, y, plantType);
+    }
+
+    public boolean affectsAudioOnly() {
+        return type == Type.VOLUME_UP || type == Type.VOLUME_DOWN || type == Type.TOGGLE_MUTE;
+    }
+
+    public Type getType() { return type; }
+    public int getX() { return x; }
+    public int getY() { return y; }
+    public Class<? extends Plant> getPlantType() { return plantType; }
+}
+
+/**
+ * Runs a game on its own thread: applies queued commands and fixed ticks on a nanoTime schedule, then
+ * publishes a render snapshot. Other threads only submit commands and read the latest snapshot, so a
+ * slow paint can't stall the simulation and a slow tick can't stall input.
+ *
+ * The tick length is independent of the display rate: each snapshot carries when its tick was due, and
+ * the renderer interpolates between it and the tick before, so a 30 Hz simulation still draws smoothly.
+ */
+class SimulationLoop implements Runnable {
+    private static final int MAX_TICKS_PER_WAKEUP = 5; // Don't spiral if the thread was starved
+
+    private final GameManager game;
+    private final ConcurrentLinkedQueue<GameCommand> commands = new ConcurrentLinkedQueue<>();
+    private final SnapshotBuffer snapshots = new SnapshotBuffer();
+    private final SessionReplay replay; // When set, the game follows the recording and ignores play input
+    private final long tickMillis;
+    private long lastTickNanos; // When the newest tick was due - simulation thread only
+    private volatile boolean running;
+    private Thread thread;
+
+    public SimulationLoop(GameManager game) {
+        this(game, null);
+    }
+
+    public SimulationLoop(GameManager game, SessionReplay replay) {
+        this(game, replay, replay != null ? replay.getTickMillis() : GameManager.TICK_MILLIS);
+    }
+
+    public SimulationLoop(GameManager game, SessionReplay replay, long tickMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick length must be positive: " + tickMillis);
+        }
+        this.game = game;
+        this.replay = replay;
+        this.tickMillis = tickMillis;
+    }
+
+    public long getTickMillis() { return tickMillis; }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this, "pvz-simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop ticking and wait for the thread, after which the game may be touched from the caller again
+     */
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public void submit(GameCommand command) {
+        commands.offer(command);
+    }
+
+    /**
+     * Newest published frame - call from one reader thread only
+     */
+    public RenderSnapshot latestSnapshot() {
+        return snapshots.acquire();
+    }
+
+    @Override
+    public void run() {
+        long tickNanos = tickMillis * 1_000_000L;
+        lastTickNanos = System.nanoTime();
+        publish();
+        long nextTick = lastTickNanos + tickNanos;
+
+        while (running) {
+            long now = System.nanoTime();
+            if (now < nextTick) {
+                LockSupport.parkNanos(nextTick - now);
+                continue;
+            }
+
+            int ticks = 0;
+            while (now >= nextTick && ticks < MAX_TICKS_PER_WAKEUP) {
+                applyCommands();
+                if (replay == null || !replay.isFinished(game)) {
+                    game.tick(tickMillis); // A finished replay holds its last frame
+                    lastTickNanos = nextTick;
+                }
+                nextTick += tickNanos;
+                ticks++;
+            }
+            if (now >= nextTick) {
+                nextTick = now + tickNanos; // Too far behind - drop the backlog instead of fast-forwarding
+            }
+            publish();
+        }
+    }
+
+    private void applyCommands() {
+        GameCommand command;
+        while ((command = commands.poll()) != null) {
+            if (replay == null || command.affectsAudioOnly()) {
+                game.apply(command);
+            }
+        }
+        if (replay != null) {
+            replay.applyDue(game);
+        }
+    }
+
+    private void publish() {
+        RenderSnapshot frame = snapshots.back();
+        game.writeSnapshot(frame);
+        frame.setTiming(lastTickNanos, tickMillis * 1_000_000L);
+        snapshots.publish();
+    }
+}
+
+/**
+ * Writes a game session as its seed plus every state-changing player action, stamped with the tick it
+ * happened before. Actions are kept in memory while playing and written out in one go by save().
+ *
+ * Format: int magic "PVZR", byte version, long seed, short tick length in ms, the level's .properties
+ * text (modified UTF-8), then one record per action - varint ticks since the previous record, byte
+ * type, varint arguments - and an END record whose delta reaches the tick the session stopped at.
+ */
+class SessionRecorder {
+    static final int MAGIC = 0x50565A52; // "PVZR"
+    static final int VERSION = 4; // 2 added the level, 3 per-zombie bites, 4 time-based movement (same inputs play out differently)
+
+    static final int END = 0;
+    static final int COLLECT = 1;
+    static final int PLACE = 2;
+    static final int SHOVEL = 3;
+    static final int RESTART = 4;
+
+    private final long seed;
+    private final LevelDefinition level;
+    private final long tickMillis;
+    private final ByteArrayOutputStream records = new ByteArrayOutputStream(1024);
+    private long lastTick;
+
+    public SessionRecorder(long seed, LevelDefinition level) {
+        this(seed, level, GameManager.TICK_MILLIS);
+    }
+
+    /**
+     * Recorder for a game ticked every tickMillis - replays have to tick the same to play out the same
+     */
+    public SessionRecorder(long seed, LevelDefinition level, long tickMillis) {
+        this.seed = seed;
+        this.level = level;
+        this.tickMillis = tickMillis;
+    }
+
+    public void collect(long tick, int x, int y) {
+        begin(tick, COLLECT);
+        writeVarint(zigzag(x));
+        writeVarint(zigzag(y));
+    }
+
+    public void place(long tick, int row, int col, Class<? extends Plant> plantType) {
+        begin(tick, PLACE);
+        writeVarint(row);
+        writeVarint(col);
+        records.write(plantCode(plantType));
+    }
+
+    public void shovel(long tick, int row, int col) {
+        begin(tick, SHOVEL);
+        writeVarint(row);
+        writeVarint(col);
+    }
+
+    public void restart(long tick) {
+        begin(tick, RESTART);
+    }
+
+    /**
+     * Write the session to a file, ending it at finalTick
+     */
+    public void save(java.nio.file.Path path, long finalTick) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(java.nio.file.Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(seed);
+            out.writeShort((int) tickMillis);
+            out.writeUTF(level.getSource());
+            records.writeTo(out);
+            writeVarint(out, finalTick - lastTick);
+            out.writeByte(END);
+        }
+    }
+
+    private void begin(long tick, int type) {
+        writeVarint(tick - lastTick);
+        records.write(type);
+        lastTick = tick;
+    }
+
+    private void writeVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            records.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        records.write((int) value);
+    }
+
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long zigzag(int value) {
+        return ((long) value << 1) ^ (value >> 31);
+    }
+
+    static int plantCode(Class<? extends Plant> plantType) {
+        if (plantType == Sunflower.class) return 0;
+        if (plantType == Peashooter.class) return 1;
+        if (plantType == CherryBomb.class) return 2;
+        throw new IllegalArgumentException("No recording code for " + plantType.getSimpleName());
+    }
+
+    static Class<? extends Plant> plantType(int code) {
+        switch (code) {
+            case 0: return Sunflower.class;
+            case 1: return Peashooter.class;
+            case 2: return CherryBomb.class;
+            default: throw new IllegalArgumentException("Unknown plant code " + code);
+        }
+    }
+}
+
+/**
+ * A recorded session read back from SessionRecorder's format. Feeding its actions into a game built
+ * from the same seed, at the same ticks, plays the session out exactly as it happened.
+ */
+class SessionReplay {
+    private final long seed;
+    private final LevelDefinition level;
+    private final long tickMillis;
+    private final long endTick;
+    private final long[] ticks;
+    private final int[] types;
+    private final int[] firstArgs;
+    private final int[] secondArgs;
+    private final int[] thirdArgs;
+    private final int count;
+    private int next;
+
+    private SessionReplay(long seed, LevelDefinition level, long tickMillis, long endTick, long[] ticks, int[] types,
+                          int[] firstArgs, int[] secondArgs, int[] thirdArgs, int count) {
+        this.seed = seed;
+        this.level = level;
+        this.tickMillis = tickMillis;
+        this.endTick = endTick;
+        this.ticks = ticks;
+        this.types = types;
+        this.firstArgs = firstArgs;
+        this.secondArgs = secondArgs;
+        this.thirdArgs = thirdArgs;
+        this.count = count;
+    }
+
+    public static SessionReplay read(java.nio.file.Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(java.nio.file.Files.newInputStream(path)))) {
+            if (in.readInt() != SessionRecorder.MAGIC) {
+                throw new IOException(path + " is not a recorded session");
+            }
+            int version = in.readUnsignedByte();
+            if (version != SessionRecorder.VERSION) {
+                throw new IOException("Unsupported session version " + version);
+            }
+            long seed = in.readLong();
+            int tickMillis = in.readUnsignedShort();
+            if (tickMillis == 0) {
+                throw new IOException("Session has no tick length");
+            }
+            LevelDefinition level;
+            try {
+                level = LevelDefinition.parse(in.readUTF());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Recorded level is invalid: " + e.getMessage(), e);
+            }
+
+            long[] ticks = new long[64];
+            int[] types = new int[64];
+            int[] firstArgs = new int[64];
+            int[] secondArgs = new int[64];
+            int[] thirdArgs = new int[64];
+            int count = 0;
+            long tick = 0;
+            while (true) {
+                tick += readVarint(in);
+                int type = in.readUnsignedByte();
+                if (type == SessionRecorder.END) {
+                    return new SessionReplay(seed, level, tickMillis, tick, ticks, types, firstArgs, secondArgs, thirdArgs, count);
+                }
+                if (count == ticks.length) {
+                    ticks = Arrays.copyOf(ticks, count * 2);
+                    types = Arrays.copyOf(types, count * 2);
+                    firstArgs = Arrays.copyOf(firstArgs, count * 2);
+                    secondArgs = Arrays.copyOf(secondArgs, count * 2);
+                    thirdArgs = Arrays.copyOf(thirdArgs, count * 2);
+                }
+                ticks[count] = tick;
+                types[count] = type;
+                switch (type) {
+                    case SessionRecorder.COLLECT:
+                        firstArgs[count] = unzigzag(readVarint(in));
+                        secondArgs[count] = unzigzag(readVarint(in));
+                        break;
+                    case SessionRecorder.PLACE:
+                        firstArgs[count] = (int) readVarint(in);
+                        secondArgs[count] = (int) readVarint(in);
+                        thirdArgs[count] = in.readUnsignedByte();
+                        break;
+                    case SessionRecorder.SHOVEL:
+                        firstArgs[count] = (int) readVarint(in);
+                        secondArgs[count] = (int) readVarint(in);
+                        break;
+                    case SessionRecorder.RESTART:
+                        break;
+                    default:
+                        throw new IOException("Unknown record type " + type + " at tick " + tick);
+                }
+                count++;
+            }
+        }
+    }
+
+    /**
+     * Fresh headless game to replay into
+     */
+    public GameManager createGame() {
+        return GameManager.createHeadless(level, seed);
+    }
+
+    /**
+     * Apply the actions recorded before the game's current tick - call right before each tick
+     */
+    public void applyDue(GameManager game) {
+        while (next < count && ticks[next] <= game.getTickCount()) {
+            switch (types[next]) {
+                case SessionRecorder.COLLECT:
+                    game.collectSun(firstArgs[next], secondArgs[next]);
+                    break;
+                case SessionRecorder.PLACE:
+                    game.placePlant(firstArgs[next], secondArgs[next], SessionRecorder.plantType(thirdArgs[next]));
+                    break;
+                case SessionRecorder.SHOVEL:
+                    game.shovelPlant(firstArgs[next], secondArgs[next]);
+                    break;
+                case SessionRecorder.RESTART:
+                    game.restart();
+                    break;
+            }
+            next++;
+        }
+    }
+
+    public boolean isFinished(GameManager game) {
+        return game.getTickCount() >= endTick;
+    }
+
+    /**
+     * Play the whole session into a new game - at the recorded pace, or as fast as the CPU allows
+     */
+    public GameManager run(boolean realTime) {
+        return run(realTime, false);
+    }
+
+    /**
+     * Same, with the game's profiler switched on from the first tick when profile is set
+     */
+    public GameManager run(boolean realTime, boolean profile) {
+        GameManager game = createGame();
+        if (profile) {
+            game.getProfiler();
+        }
+        long tickNanos = tickMillis * 1_000_000L;
+        long nextTick = System.nanoTime();
+        while (!isFinished(game)) {
+            if (realTime) {
+                long wait = nextTick - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                nextTick += tickNanos;
+            }
+            applyDue(game);
+            game.tick(tickMillis);
+        }
+        return game;
+    }
+
+    public long getSeed() { return seed; }
+    public LevelDefinition getLevel() { return level; }
+    public long getTickMillis() { return tickMillis; }
+    public long getEndTick() { return endTick; }
+    public int getActionCount() { return count; }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static int unzigzag(long value) {
+        return (int) ((value >>> 1) ^ -(value & 1));
+    }
+}
+
+/**
+ * A game frozen between ticks as a compact binary snapshot that resumes exactly where it was - same
+ * lawn, timers and RNG state, so the resumed game plays out just as the original would have. Perf runs
+ * can restore thousands of copies of one mid-game state instead of simulating up to it every time.
+ *
+ * Format: int magic "PVZS", byte version, short tick length in ms, long seed, long clock time, the
+ * level's .properties text (int length, UTF-8), then GameManager.writeState() - fixed-width fields,
+ * big-endian, through a ByteBuffer.
+ */
+final class SaveState {
+    static final int MAGIC = 0x50565A53; // "PVZS"
+    static final int VERSION = 2; // 2 peas keep sub-pixel x
+    static final java.nio.file.Path QUICKSAVE_PATH = java.nio.file.Paths.get("pvz-save.bin");
+
+    private SaveState() {}
+
+    /**
+     * The game's state in a buffer ready to read - call between ticks, on the thread that ticks it
+     */
+    static ByteBuffer capture(GameManager game) {
+        byte[] level = game.getLevelDefinition().getSource().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        int capacity = 32 + level.length + game.estimateStateBytes();
+        while (true) {
+            ByteBuffer out = ByteBuffer.allocate(capacity);
+            try {
+                out.putInt(MAGIC).put((byte) VERSION).putShort((short) game.getTickMillis());
+                out.putLong(game.getSeed()).putLong(game.currentTimeMillis());
+                out.putInt(level.length).put(level);
+                game.writeState(out);
+                out.flip();
+                return out;
+            } catch (java.nio.BufferOverflowException e) {
+                capacity *= 2; // The estimate was short - only happens with many eaten plants still scheduled
+            }
+        }
+    }
+
+    public static void write(GameManager game, java.nio.file.Path path) throws IOException {
+        ByteBuffer state = capture(game);
+        try (FileChannel channel = FileChannel.open(path, java.nio.file.StandardOpenOption.CREATE,
+                java.nio.file.StandardOpenOption.TRUNCATE_EXISTING, java.nio.file.StandardOpenOption.WRITE)) {
+            while (state.hasRemaining()) {
+                channel.write(state);
+            }
+        }
+    }
+
+    public static GameManager read(java.nio.file.Path path, boolean audioEnabled) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, java.nio.file.StandardOpenOption.READ)) {
+            ByteBuffer state = ByteBuffer.allocate((int) channel.size());
+            while (state.hasRemaining() && channel.read(state) >= 0) {
+                // Keep reading until the file is in
+            }
+            state.flip();
+            return restore(state, audioEnabled);
+        }
+    }
+
+    /**
+     * Headless game on a simulated clock, resumed from a captured state. The buffer itself is left
+     * untouched, so one capture can be restored any number of times. Tick the game in its
+     * getTickMillis() to have it play out as the original would have.
+     */
+    public static GameManager restore(ByteBuffer state) throws IOException {
+        return restore(state, false);
+    }
+
+    public static GameManager restore(ByteBuffer state, boolean audioEnabled) throws IOException {
+        ByteBuffer in = state.duplicate();
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a saved game");
+            }
+            int version = in.get() & 0xFF;
+            if (version != VERSION) {
+                throw new IOException("Unsupported save version " + version);
+            }
+            int tickMillis = in.getShort() & 0xFFFF;
+            if (tickMillis == 0) {
+                throw new IOException("Saved game is corrupt: tick length is 0 ms");
+            }
+            long seed = in.getLong();
+            long clockTime = in.getLong();
+            byte[] source = new byte[in.getInt()];
+            in.get(source);
+            LevelDefinition level = LevelDefinition.parse(new String(source, java.nio.charset.StandardCharsets.UTF_8));
+
+            GameManager game = new GameManager(new SimulationClock(clockTime), audioEnabled, seed, level);
+            game.readState(in);
+            game.setTickMillis(tickMillis);
+            return game;
+        } catch (java.nio.BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException
+                 | IllegalArgumentException e) {
+            throw new IOException("Saved game is corrupt: " + e.getMessage(), e);
+        }
+    }
+}
+
+/**
+ * Hosts many headless games at once for bots and tournaments. One clock thread steps every session
+ * together each tick: it wakes a small pool of worker threads, which pull sessions off a shared cursor
+ * until the round is done, and waits for the last of them. Clients talk to it over a line-based text
+ * protocol on a loopback TCP port - one connection, one session:
+ *
+ *   server: SESSION id seed rows cols       once, on connect
+ *   client: CLICK x y plant                 plant is sunflower, peashooter, cherrybomb or shovel
+ *   client: RESTART | STATS | QUIT
+ *   server: a StateDeltaEncoder frame per tick, STAT lines in answer to STATS, ERR on a bad command
+ *
+ * Every few seconds it logs what a session tick costs against the 16 ms tick budget, which is how many
+ * sessions one core can keep at full speed.
+ */
+class GameServer {
+    private static final long TICK_NANOS = GameManager.TICK_MILLIS * 1_000_000L;
+    private static final long REPORT_NANOS = 5_000_000_000L;
+    private static final int OUTBOUND_FRAMES = 120; // Two seconds of frames before a slow client gets resynced
+
+    private final int port;
+    private final LevelDefinition level;
+    private final int workerCount;
+    private final ExecutorService workers;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger roundCursor = new AtomicInteger();
+    private final Runnable roundWorker = this::tickSessions;
+    private volatile ServerSession[] round = new ServerSession[0];
+    private final AtomicInteger nextSessionId = new AtomicInteger(1);
+    private volatile ServerSession[] sessions = new ServerSession[0];
+    private volatile boolean running;
+    private volatile Thread clockThread;
+    private java.net.ServerSocket serverSocket;
+
+    // Clock thread only
+    private final LatencyHistogram roundNanos = new LatencyHistogram();
+    private long lateRounds;
+
+    public GameServer(int port, int workerCount, LevelDefinition level) {
+        this.port = port;
+        this.level = level;
+        this.workerCount = workerCount;
+        AtomicInteger workerNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, task -> {
+            Thread worker = new Thread(task, "pvz-server-worker-" + workerNumber.incrementAndGet());
+            worker.setDaemon(true);
+            return worker;
+        });
+    }
+
+    /**
+     * Open the port and start ticking, plus loadSessions sessions with no client that restart whenever
+     * they end - for finding out how many sessions the box holds without writing a client
+     */
+    public void start(int loadSessions) throws IOException {
+        serverSocket = new java.net.ServerSocket(port, 50, java.net.InetAddress.getLoopbackAddress());
+        running = true;
+        for (int i = 0; i < loadSessions; i++) {
+            addSession(new ServerSession(nextSessionId.getAndIncrement(),
+                    GameManager.createHeadless(level, new Random().nextLong()), null));
+        }
+
+        Thread acceptor = new Thread(this::acceptClients, "pvz-server-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        clockThread = new Thread(this::runClock, "pvz-server-clock");
+        clockThread.start();
+        System.out.println("PvZ server on " + serverSocket.getLocalSocketAddress() + " - level " + level.getName()
+                + ", " + workerCount + " worker thread(s), " + loadSessions + " load session(s)");
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        for (ServerSession session : sessions) {
+            session.close();
+        }
+        workers.shutdown();
+    }
+
+    private void acceptClients() {
+        while (running) {
+            try {
+                java.net.Socket socket = serverSocket.accept();
+                Thread connection = new Thread(() -> serve(socket), "pvz-server-client");
+                connection.setDaemon(true);
+                connection.start();
+            } catch (IOException e) {
+                if (running) {
+                    System.out.println("Server accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Run one client's session: write its frames from a second thread, read its commands on this one
+     */
+    private void serve(java.net.Socket socket) {
+        long seed = new Random().nextLong();
+        ServerSession session = new ServerSession(nextSessionId.getAndIncrement(),
+                GameManager.createHeadless(level, seed), new ArrayBlockingQueue<>(OUTBOUND_FRAMES));
+        try (java.net.Socket client = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), java.nio.charset.StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(client.getOutputStream(), java.nio.charset.StandardCharsets.UTF_8))) {
+            client.setTcpNoDelay(true);
+            session.send("SESSION " + session.getId() + " " + seed + " " + level.getRows() + " " + level.getCols() + "\n");
+
+            Thread writer = new Thread(() -> session.writeFrames(out), "pvz-server-writer-" + session.getId());
+            writer.setDaemon(true);
+            writer.start();
+            addSession(session);
+
+            String line;
+            while (!session.isClosed() && (line = in.readLine()) != null) {
+                if (!session.handle(line.trim())) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // Client went away
+        } finally {
+            session.close();
+            removeSession(session);
+        }
+    }
+
+    private synchronized void addSession(ServerSession session) {
+        ServerSession[] grown = Arrays.copyOf(sessions, sessions.length + 1);
+        grown[sessions.length] = session;
+        sessions = grown;
+    }
+
+    private synchronized void removeSession(ServerSession session) {
+        List<ServerSession> remaining = new ArrayList<>(Arrays.asList(sessions));
+        remaining.remove(session);
+        sessions = remaining.toArray(new ServerSession[0]);
+    }
+
+    /**
+     * Step every session once per tick. A round that overruns the tick is counted as late and the
+     * schedule restarts from now - sessions slow down together rather than bursting to catch up.
+     */
+    private void runClock() {
+        long nextTick = System.nanoTime();
+        long nextReport = nextTick + REPORT_NANOS;
+        while (running) {
+            long wait = nextTick - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+
+            ServerSession[] current = sessions;
+            long roundStart = System.nanoTime();
+            int tasks = Math.min(workerCount, current.length);
+            round = current;
+            roundCursor.set(0);
+            pending.set(tasks);
+            for (int i = 0; i < tasks; i++) {
+                workers.execute(roundWorker);
+            }
+            while (pending.get() > 0) {
+                LockSupport.park(this);
+            }
+            long now = System.nanoTime();
+            roundNanos.record(now - roundStart);
+
+            nextTick += TICK_NANOS;
+            if (now > nextTick) {
+                lateRounds++;
+                nextTick = now;
+            }
+            if (now >= nextReport) {
+                report(current);
+                nextReport = now + REPORT_NANOS;
+            }
+        }
+    }
 
-        // Draw grid (5 lanes, 9 tiles each)
-        g.setColor(new Color(0, 100, 0));
-        for (int i = 0; i <= GRID_ROWS; i++) {
-            int y = 50 + i * TILE_HEIGHT;
-            g.drawLine(50, y, 50 + GRID_COLS * TILE_WIDTH, y);
+    /**
+     * Worker side of a round: tick sessions until none are left, and wake the clock if this was the last worker
+     */
+    private void tickSessions() {
+        try {
+            ServerSession[] current = round;
+            int next;
+            while ((next = roundCursor.getAndIncrement()) < current.length) {
+                ServerSession session = current[next];
+                try {
+                    session.tick();
+                } catch (RuntimeException e) {
+                    // One broken game mustn't stall the rest
+                    System.out.println("Session " + session.getId() + " failed and was closed: " + e);
+                    session.close();
+                    removeSession(session);
+                }
+            }
+        } finally {
+            if (pending.decrementAndGet() == 0) {
+                LockSupport.unpark(clockThread);
+            }
+        }
+    }
+
+    private void report(ServerSession[] round) {
+        long ticks = 0;
+        double totalNanos = 0;
+        double worstP99 = 0;
+        for (ServerSession session : round) {
+            LatencyHistogram h = session.getTickNanos();
+            ticks += h.getCount();
+            totalNanos += h.getMean() * h.getCount();
+            worstP99 = Math.max(worstP99, h.percentile(99));
+            session.resetStats();
+        }
+        double meanNanos = ticks == 0 ? 0 : totalNanos / ticks;
+        // Whole rounds include waking the workers and frame hand-off, so they give the more honest capacity
+        int cores = Math.min(workerCount, Runtime.getRuntime().availableProcessors());
+        double roundNanosPerSession = round.length == 0 ? 0 : roundNanos.getMean() * cores / round.length;
+        System.out.println(String.format(Locale.ROOT,
+                "[server] %d session(s) on %d worker(s) | session tick mean %.1f us, worst p99 %.1f us, %.2f%% of the tick budget"
+                        + " | round mean %.2f ms, p99 %.2f ms, %d late | ~%s sessions/core at 60 Hz",
+                round.length, workerCount, meanNanos / 1000.0, worstP99 / 1000.0, ServerSession.budgetPercent(meanNanos),
+                roundNanos.getMean() / 1_000_000.0, roundNanos.percentile(99) / 1_000_000.0, lateRounds,
+                roundNanosPerSession == 0 ? "-" : String.valueOf((long) (TICK_NANOS / roundNanosPerSession))));
+        roundNanos.reset();
+        lateRounds = 0;
+    }
+}
+
+/**
+ * One game hosted by the GameServer - its headless GameManager, the commands its client sent since the
+ * last tick, the frames waiting to go out and what its ticks cost
+ */
+class ServerSession {
+    private final int id;
+    private final GameManager game;
+    private final BlockingQueue<String> outbound; // null for load sessions, which have no client
+    private final ConcurrentLinkedQueue<GameCommand> commands = new ConcurrentLinkedQueue<>();
+    private final StateDeltaEncoder encoder = new StateDeltaEncoder();
+    private final LatencyHistogram tickNanos = new LatencyHistogram();
+    private volatile boolean resetStats;
+    private volatile boolean closed;
+
+    public ServerSession(int id, GameManager game, BlockingQueue<String> outbound) {
+        this.id = id;
+        this.game = game;
+        game.setLogActions(false);
+        this.outbound = outbound;
+    }
+
+    /**
+     * One tick on a worker thread: apply queued commands, step the game, queue the client's frame
+     */
+    void tick() {
+        if (resetStats) {
+            tickNanos.reset();
+            resetStats = false;
+        }
+        long start = System.nanoTime();
+        GameCommand command;
+        while ((command = commands.poll()) != null) {
+            game.apply(command);
+        }
+        if (outbound == null && game.isGameOver()) {
+            game.restart(); // Load sessions keep playing
+        }
+        game.tick(GameManager.TICK_MILLIS);
+        if (outbound != null && !outbound.offer(encoder.encode(game))) {
+            encoder.requestResync(); // Client fell behind and missed a frame
+        }
+        tickNanos.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Act on one line from the client; false once it has quit
+     */
+    boolean handle(String line) {
+        String[] words = line.split("\\s+");
+        switch (words[0].toUpperCase(Locale.ROOT)) {
+            case "CLICK":
+                if (words.length != 4) {
+                    send("ERR usage: CLICK x y sunflower|peashooter|cherrybomb|shovel\n");
+                    return true;
+                }
+                try {
+                    commands.add(GameCommand.click(Integer.parseInt(words[1]), Integer.parseInt(words[2]), plantType(words[3])));
+                } catch (IllegalArgumentException e) {
+                    send("ERR " + e.getMessage() + "\n");
+                }
+                return true;
+            case "RESTART":
+                commands.add(GameCommand.RESTART);
+                return true;
+            case "STATS":
+                send(String.format(Locale.ROOT, "STAT %d ticks %d mean_us %.1f p99_us %.1f budget_pct %.3f\n", id,
+                        tickNanos.getCount(), tickNanos.getMean() / 1000.0, tickNanos.percentile(99) / 1000.0,
+                        budgetPercent(tickNanos.getMean())));
+                return true;
+            case "QUIT":
+                return false;
+            case "":
+                return true;
+            default:
+                send("ERR unknown command " + words[0] + "\n");
+                return true;
+        }
+    }
+
+    private static Class<? extends Plant> plantType(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "sunflower": return Sunflower.class;
+            case "peashooter": return Peashooter.class;
+            case "cherrybomb": return CherryBomb.class;
+            case "shovel": return null;
+            default: throw new IllegalArgumentException("unknown plant " + name);
+        }
+    }
+
+    /**
+     * Share of one core's 16 ms tick budget a session with this mean tick cost takes
+     */
+    static double budgetPercent(double meanTickNanos) {
+        return meanTickNanos * 100.0 / (GameManager.TICK_MILLIS * 1_000_000.0);
+    }
+
+    /**
+     * Queue a line for the client outside the tick's frames - dropped if the client is this far behind anyway
+     */
+    void send(String text) {
+        if (outbound != null && !outbound.offer(text)) {
+            encoder.requestResync();
+        }
+    }
+
+    /**
+     * Writer thread: drain queued frames to the client, flushing whenever the queue runs dry
+     */
+    void writeFrames(Writer out) {
+        try {
+            while (!closed) {
+                String frame = outbound.poll(100, java.util.concurrent.TimeUnit.MILLISECONDS);
+                if (frame == null) {
+                    continue;
+                }
+                out.write(frame);
+                if (outbound.isEmpty()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            close();
+        }
+    }
+
+    void close() { closed = true; }
+    boolean isClosed() { return closed; }
+    void resetStats() { resetStats = true; }
+    public int getId() { return id; }
+    public LatencyHistogram getTickNanos() { return tickNanos; }
+}
+
+/**
+ * Turns a game into the text frames a server client receives. The first frame, and the first after a
+ * resync, describes everything; later ones only what changed since the frame before. One record per line:
+ *
+ *   F tick gameMillis sun zombies peas   frame header
+ *   R                                    forget everything - the rest of this frame is the whole state
+ *   P row col plant                      tile now holds plant 0 sunflower, 1 peashooter, 2 cherry bomb, -1 nothing
+ *   Z id type lane x health              zombie appeared, moved or got hurt - type 0 normal, 1 flag, 2 conehead
+ *   z id                                 zombie gone
+ *   S id x y                             sun appeared or moved
+ *   s id                                 sun gone
+ *   O won|lost                           game over
+ *   E                                    end of frame
+ */
+class StateDeltaEncoder {
+    private final StringBuilder frame = new StringBuilder(1024);
+    private final SentEntities sentZombies = new SentEntities();
+    private final SentEntities sentSuns = new SentEntities();
+    private int[][] sentPlants;
+    private boolean sentGameOver;
+    private long lastGameTime = -1;
+    private volatile boolean resync = true; // Set by whichever thread saw a frame dropped, cleared by the encoding one
+
+    public void requestResync() {
+        resync = true;
+    }
+
+    public String encode(GameManager game) {
+        frame.setLength(0);
+        long gameTime = game.getGameTime();
+        if (gameTime < lastGameTime) {
+            resync = true; // Restarted
+        }
+        lastGameTime = gameTime;
+
+        frame.append("F ").append(game.getTickCount()).append(' ').append(gameTime).append(' ').append(game.getSun())
+                .append(' ').append(game.getZombieCount()).append(' ').append(game.getPeaCount()).append('\n');
+        if (resync) {
+            resync = false; // Before building, so a request made meanwhile resyncs the next frame
+            frame.append("R\n");
+            sentPlants = new int[game.getGridRows()][game.getGridCols()];
+            for (int[] row : sentPlants) {
+                Arrays.fill(row, -1);
+            }
+            sentZombies.clear();
+            sentSuns.clear();
+            sentGameOver = false;
+        }
+
+        for (int row = 0; row < sentPlants.length; row++) {
+            for (int col = 0; col < sentPlants[row].length; col++) {
+                Plant plant = game.getPlantAt(row, col);
+                int code = plant == null ? -1 : SessionRecorder.plantCode(plant.getClass());
+                if (code != sentPlants[row][col]) {
+                    frame.append("P ").append(row).append(' ').append(col).append(' ').append(code).append('\n');
+                    sentPlants[row][col] = code;
+                }
+            }
+        }
+
+        sentZombies.beginFrame();
+        for (int i = 0; i < game.getZombieCount(); i++) {
+            Zombie zombie = game.getZombie(i);
+            if (sentZombies.update(zombie.getId(), zombie.getX(), zombie.getHealth())) {
+                int type = zombie instanceof FlagZombie ? 1 : zombie instanceof ConeheadZombie ? 2 : 0;
+                frame.append("Z ").append(zombie.getId()).append(' ').append(type).append(' ').append(zombie.getLane())
+                        .append(' ').append(zombie.getX()).append(' ').append(zombie.getHealth()).append('\n');
+            }
+        }
+        sentZombies.endFrame(frame, "z ");
+
+        sentSuns.beginFrame();
+        for (int i = 0; i < game.getSunDropCount(); i++) {
+            Sun sun = game.getSunDrop(i);
+            if (sentSuns.update(sun.getId(), (int) sun.getX(), (int) sun.getY())) {
+                frame.append("S ").append(sun.getId()).append(' ').append((int) sun.getX()).append(' ')
+                        .append((int) sun.getY()).append('\n');
+            }
+        }
+        sentSuns.endFrame(frame, "s ");
+
+        if (game.isGameOver() && !sentGameOver) {
+            frame.append(game.didPlayerWin() ? "O won\n" : "O lost\n");
+            sentGameOver = true;
+        }
+        return frame.append("E\n").toString();
+    }
+
+    /**
+     * Last values sent per entity id, and which ids were present last frame - ids are never reused,
+     * so a table indexed by id is enough
+     */
+    private static final class SentEntities {
+        private int[] seenFrame = new int[256];
+        private int[] first = new int[256];
+        private int[] second = new int[256];
+        private int[] ids = new int[64];
+        private int count;
+        private int[] previousIds = new int[64];
+        private int previousCount;
+        private int frameNumber = 1;
+
+        void clear() {
+            Arrays.fill(seenFrame, 0);
+            count = 0;
+            previousCount = 0;
+        }
+
+        void beginFrame() {
+            frameNumber++;
+            int[] swap = previousIds;
+            previousIds = ids;
+            previousCount = count;
+            ids = swap;
+            count = 0;
+        }
+
+        /**
+         * Note the entity as present with these values; true if the client hasn't seen it like this
+         */
+        boolean update(int id, int a, int b) {
+            if (id >= seenFrame.length) {
+                int length = Math.max(id + 1, seenFrame.length * 2);
+                seenFrame = Arrays.copyOf(seenFrame, length);
+                first = Arrays.copyOf(first, length);
+                second = Arrays.copyOf(second, length);
+            }
+            boolean changed = seenFrame[id] != frameNumber - 1 || first[id] != a || second[id] != b;
+            seenFrame[id] = frameNumber;
+            first[id] = a;
+            second[id] = b;
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count++] = id;
+            return changed;
+        }
+
+        /**
+         * Write a removal record for every id present last frame but not this one
+         */
+        void endFrame(StringBuilder frame, String removal) {
+            for (int i = 0; i < previousCount; i++) {
+                if (seenFrame[previousIds[i]] != frameNumber) {
+                    frame.append(removal).append(previousIds[i]).append('\n');
+                }
+            }
+        }
+    }
+}
+
+/**
+ * A bot that plays a headless game. act() runs before every tick and drives the game through the same
+ * calls a click ends up in - collectSun(), placePlant(), shovelPlant().
+ */
+interface BotPolicy {
+    void act(GameManager game);
+}
+
+/**
+ * The built-in bots for the strategy evaluator. Every one of them picks up each sun as soon as it
+ * can be clicked, so they only differ in what they plant and where.
+ */
+final class BotPolicies {
+    private static final int CHERRY_BOMB_TRIGGER_X = 290; // A zombie this far in gets a cherry bomb if we can afford one
+
+    private BotPolicies() {}
+
+    /**
+     * Built-in bots by name, in report order - a factory each, so every game gets a fresh bot
+     */
+    static Map<String, Supplier<BotPolicy>> builtIn() {
+        Map<String, Supplier<BotPolicy>> policies = new LinkedHashMap<>();
+        // Baseline: collects sun, never plants
+        policies.put("idle", () -> BotPolicies::collectSuns);
+        // Peashooters only, into whichever lane has the most zombies
+        policies.put("peashooter-rush", () -> game -> {
+            collectSuns(game);
+            plantInBusiestLane(game, Peashooter.class, 0);
+        });
+        // A column of sunflowers first, then peashooters behind the busiest lanes
+        policies.put("sunflower-opening", () -> game -> {
+            collectSuns(game);
+            if (!fillColumn(game, Sunflower.class, 0)) {
+                plantInBusiestLane(game, Peashooter.class, 1);
+            }
+        });
+        // Like sunflower-opening, but saves a zombie that gets close with a cherry bomb
+        policies.put("cherry-defense", () -> game -> {
+            collectSuns(game);
+            if (bombNearestThreat(game)) {
+                return;
+            }
+            if (!fillColumn(game, Sunflower.class, 0)) {
+                plantInBusiestLane(game, Peashooter.class, 1);
+            }
+        });
+        return policies;
+    }
+
+    static void collectSuns(GameManager game) {
+        for (int i = 0; i < game.getSunDropCount(); i++) {
+            Sun sun = game.getSunDrop(i);
+            if (!sun.isCollected()) {
+                game.collectSun((int) sun.getX(), (int) sun.getY());
+            }
+        }
+    }
+
+    /**
+     * Plant into the first empty tile of the column, lane by lane; false once the column is full
+     */
+    static boolean fillColumn(GameManager game, Class<? extends Plant> plantType, int col) {
+        for (int row = 0; row < game.getGridRows(); row++) {
+            if (game.getPlantAt(row, col) == null) {
+                game.placePlant(row, col, plantType);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Plant at the leftmost free tile from fromCol on, in the lane with the most zombies that still has room
+     */
+    static void plantInBusiestLane(GameManager game, Class<? extends Plant> plantType, int fromCol) {
+        int bestRow = -1;
+        int bestCol = -1;
+        int bestZombies = -1;
+        for (int row = 0; row < game.getGridRows(); row++) {
+            int zombies = game.getZombieCountInLane(row);
+            if (zombies <= bestZombies) {
+                continue;
+            }
+            for (int col = fromCol; col < game.getGridCols(); col++) {
+                if (game.getPlantAt(row, col) == null) {
+                    bestRow = row;
+                    bestCol = col;
+                    bestZombies = zombies;
+                    break;
+                }
+            }
+        }
+        if (bestRow >= 0) {
+            game.placePlant(bestRow, bestCol, plantType);
+        }
+    }
+
+    /**
+     * Cherry bomb the zombie closest to home if it's past the trigger line and its tile is free
+     */
+    static boolean bombNearestThreat(GameManager game) {
+        if (game.getSun() < 150) {
+            return false;
+        }
+        Zombie nearest = null;
+        for (int lane = 0; lane < game.getGridRows(); lane++) {
+            Zombie zombie = game.findZombieAhead(lane, Integer.MIN_VALUE / 2, Integer.MAX_VALUE);
+            if (zombie != null && (nearest == null || zombie.getX() < nearest.getX())) {
+                nearest = zombie;
+            }
+        }
+        if (nearest == null || nearest.getX() > CHERRY_BOMB_TRIGGER_X) {
+            return false;
+        }
+        int col = Math.max(0, Math.min(game.getGridCols() - 1, (nearest.getX() - 50) / game.getTileWidth()));
+        return game.placePlant(nearest.getLane(), col, CherryBomb.class);
+    }
+}
+
+/**
+ * Plays thousands of seeded headless games per bot across every core and reports how each bot does:
+ * win rate, what it did with its sun, and when it lost. The games are split up with fork/join. Game i
+ * of every bot uses the same seed, so bots are compared on identical zombie and sky sun sequences.
+ */
+class StrategyEvaluator {
+    private static final int GAMES_PER_TASK = 8;
+    private static final long MAX_GAME_MILLIS = 600_000; // Endless levels count as won after ten minutes
+
+    private final LevelDefinition level;
+    private final ForkJoinPool pool;
+
+    public StrategyEvaluator(LevelDefinition level, int threads) {
+        this.level = level;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    public EvaluationResult evaluate(Supplier<? extends BotPolicy> policy, long baseSeed, int games) {
+        return pool.invoke(new EvaluationTask(policy, baseSeed, 0, games));
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private EvaluationResult play(Supplier<? extends BotPolicy> policy, long seed) {
+        GameManager game = GameManager.createHeadless(level, seed);
+        game.setLogActions(false);
+        BotPolicy bot = policy.get();
+        while (!game.isGameOver() && game.getGameTime() < MAX_GAME_MILLIS) {
+            bot.act(game);
+            game.tick(GameManager.TICK_MILLIS);
+        }
+        return EvaluationResult.of(game);
+    }
+
+    /**
+     * Games [from, to) of one bot - split in half until a chunk is small enough to just play
+     */
+    private final class EvaluationTask extends RecursiveTask<EvaluationResult> {
+        private static final long serialVersionUID = 1L; // ForkJoinTask is Serializable; tasks never leave the pool
+
+        private final Supplier<? extends BotPolicy> policy;
+        private final long baseSeed;
+        private final int from;
+        private final int to;
+
+        EvaluationTask(Supplier<? extends BotPolicy> policy, long baseSeed, int from, int to) {
+            this.policy = policy;
+            this.baseSeed = baseSeed;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected EvaluationResult compute() {
+            if (to - from <= GAMES_PER_TASK) {
+                EvaluationResult result = new EvaluationResult();
+                for (int i = from; i < to; i++) {
+                    result.merge(play(policy, baseSeed + i));
+                }
+                return result;
+            }
+            int middle = (from + to) >>> 1;
+            EvaluationTask left = new EvaluationTask(policy, baseSeed, from, middle);
+            left.fork();
+            EvaluationResult right = new EvaluationTask(policy, baseSeed, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+}
+
+/**
+ * Totals over a batch of evaluated games - merged up the fork/join tree
+ */
+class EvaluationResult {
+    private int games;
+    private int wins;
+    private long gameMillis;
+    private long sunStarting;
+    private long sunCollected;
+    private long sunSpent;
+    private long zombiesKilled;
+    private int[] lossSeconds = new int[8];
+    private int losses;
+
+    static EvaluationResult of(GameManager game) {
+        EvaluationResult result = new EvaluationResult();
+        result.games = 1;
+        result.gameMillis = game.getGameTime();
+        result.sunStarting = game.getLevelDefinition().getStartingSun();
+        result.sunCollected = game.getSunCollected();
+        result.sunSpent = game.getSunSpent();
+        result.zombiesKilled = game.getZombiesKilled();
+        if (!game.isGameOver() || game.didPlayerWin()) {
+            result.wins = 1;
+        } else {
+            result.lossSeconds[result.losses++] = (int) (game.getGameTime() / 1000);
+        }
+        return result;
+    }
+
+    EvaluationResult merge(EvaluationResult other) {
+        games += other.games;
+        wins += other.wins;
+        gameMillis += other.gameMillis;
+        sunStarting += other.sunStarting;
+        sunCollected += other.sunCollected;
+        sunSpent += other.sunSpent;
+        zombiesKilled += other.zombiesKilled;
+        if (losses + other.losses > lossSeconds.length) {
+            lossSeconds = Arrays.copyOf(lossSeconds, Math.max(lossSeconds.length * 2, losses + other.losses));
+        }
+        System.arraycopy(other.lossSeconds, 0, lossSeconds, losses, other.losses);
+        losses += other.losses;
+        return this;
+    }
+
+    public int getGames() { return games; }
+    public int getWins() { return wins; }
+    public long getGameMillis() { return gameMillis; }
+    public double getWinRate() { return games == 0 ? 0 : (double) wins / games; }
+
+    /**
+     * Half-width of the 95% confidence interval on the win rate
+     */
+    public double getWinRateMargin() {
+        double p = getWinRate();
+        return games == 0 ? 0 : 1.96 * Math.sqrt(p * (1 - p) / games);
+    }
+
+    public double getSunCollectedPerGame() { return games == 0 ? 0 : (double) sunCollected / games; }
+
+    /**
+     * Share of the sun the player had - the level's starting sun plus everything collected - that went into plants
+     */
+    public double getSunSpentShare() {
+        long available = sunStarting + sunCollected;
+        return available == 0 ? 0 : (double) sunSpent / available;
+    }
+
+    public double getKillsPer100Sun() { return sunSpent == 0 ? 0 : zombiesKilled * 100.0 / sunSpent; }
+
+    /**
+     * Game second by which the given percentage of lost games had been lost, or -1 with no losses
+     */
+    public int lossPercentile(double percentile) {
+        if (losses == 0) {
+            return -1;
         }
-        for (int i = 0; i <= GRID_COLS; i++) {
-            int x = 50 + i * TILE_WIDTH;
-            g.drawLine(x, 50, x, 50 + GRID_ROWS * TILE_HEIGHT);
+        int[] sorted = Arrays.copyOf(lossSeconds, losses);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * losses) - 1;
+        return sorted[Math.max(0, Math.min(losses - 1, index))];
+    }
+
+    /**
+     * Lost games per bucket of the given number of game seconds, from second 0 to the latest loss
+     */
+    public int[] lossHistogram(int bucketSeconds) {
+        int latest = lossPercentile(100);
+        int[] buckets = new int[Math.max(0, latest) / bucketSeconds + 1];
+        for (int i = 0; i < losses; i++) {
+            buckets[lossSeconds[i] / bucketSeconds]++;
         }
+        return buckets;
+    }
+}
+
+/**
+ * A line of HUD text kept in a reusable char buffer and drawn with Graphics.drawChars(), so putting a new
+ * number in it allocates nothing
+ */
+class HudText {
+    private final char[] chars = new char[48];
+    private int length;
+
+    public HudText clear() {
+        length = 0;
+        return this;
+    }
 
-        // Draw all entities
-        for (Plant plant : plants) {
-            plant.render(g);
+    public HudText append(String text) {
+        text.getChars(0, text.length(), chars, length);
+        length += text.length();
+        return this;
+    }
+
+    public HudText append(int value) {
+        return append(value, 1);
+    }
+
+    /**
+     * Append a non-negative number, zero-padded to at least minDigits digits
+     */
+    public HudText append(int value, int minDigits) {
+        int digits = 1;
+        for (int rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
         }
-        for (Zombie zombie : zombies) {
-            zombie.render(g);
+        digits = Math.max(digits, minDigits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
         }
-        for (Pea pea : projectiles) {
-            pea.render(g);
+        length += digits;
+        return this;
+    }
+
+    public void draw(Graphics g, int x, int y) {
+        g.drawChars(chars, 0, length, x, y);
+    }
+}
+
+/**
+ * Draws render snapshots - lawn, sprites, HUD and the game over screen. Holds the cached images and
+ * HUD strings, so each drawing thread needs its own instance.
+ */
+class GameRenderer {
+    private final FrameProfiler profiler;
+
+    // Lawn, grid and the fixed part of the HUD never change, so they're drawn once and blitted
+    private BufferedImage backgroundImage;
+    private int backgroundRows = -1, backgroundCols = -1;
+    private BufferedImage hudImage;
+
+    // HUD text is rebuilt only when the value behind it changes, in place
+    private int shownSunCount = -1;
+    private final HudText sunCountText = new HudText();
+    private int shownSecondsLeft = Integer.MIN_VALUE;
+    private final HudText timeText = new HudText();
+    private int shownVolumePercent = -2;
+    private final HudText volumeText = new HudText();
+    private int shownZombieCount = -1;
+    private final HudText zombieCountText = new HudText();
+    private int shownSunsOnField = -1;
+    private final HudText sunsOnFieldText = new HudText();
+
+    public GameRenderer(FrameProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public void render(Graphics g, RenderSnapshot frame) {
+        profiler.frameStarted();
+        long phaseStart = profiler.begin();
+
+        // Draw background
+        if (backgroundImage == null || backgroundRows != frame.getGridRows() || backgroundCols != frame.getGridCols()) {
+            backgroundRows = frame.getGridRows();
+            backgroundCols = frame.getGridCols();
+            backgroundImage = SpriteSheet.createImage(800, 600, Transparency.OPAQUE);
+            Graphics2D bg = backgroundImage.createGraphics();
+            renderBackground(bg, frame);
+            bg.dispose();
         }
+        g.drawImage(backgroundImage, 0, 0, null);
+
+        frame.drawSprites(g, frame.interpolationAlpha(System.nanoTime()));
+        phaseStart = profiler.lap(FrameProfiler.RENDER, phaseStart);
 
-        // Draw suns (render them above other entities so they're clickable)
-        for (Sun sun : suns) {
-            sun.render(g);
+        renderUI(g, frame);
+
+        if (frame.isGameOver()) {
+            renderGameOver(g, frame);
         }
+        profiler.lap(FrameProfiler.RENDER_UI, phaseStart);
+    }
 
-        renderUI(g);
+    private void renderBackground(Graphics g, RenderSnapshot frame) {
+        g.setColor(GamePaints.LAWN_GREEN);
+        g.fillRect(0, 0, 800, 600);
 
-        if (gameOver) {
-            renderGameOver(g);
+        // Draw grid (5 lanes, 9 tiles each)
+        int rows = frame.getGridRows();
+        int cols = frame.getGridCols();
+        int tileWidth = frame.getTileWidth();
+        int tileHeight = frame.getTileHeight();
+        g.setColor(GamePaints.DARK_GREEN);
+        for (int i = 0; i <= rows; i++) {
+            int y = 50 + i * tileHeight;
+            g.drawLine(50, y, 50 + cols * tileWidth, y);
+        }
+        for (int i = 0; i <= cols; i++) {
+            int x = 50 + i * tileWidth;
+            g.drawLine(x, 50, x, 50 + rows * tileHeight);
         }
     }
 
-    private void renderUI(Graphics g) {
+    /**
+     * The parts of the top bar that never change
+     */
+    private void renderStaticUI(Graphics2D g) {
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
         // UI background
-        g.setColor(new Color(101, 67, 33));
+        g.setColor(GamePaints.UI_BROWN);
         g.fillRect(0, 0, 800, 50); // Made UI slightly taller
 
         // Sun counter with better styling
@@ -1074,20 +4977,10 @@ class GameManager {
             int rayY = (int)(25 + 20 * Math.sin(angle));
             g.fillOval(rayX - 2, rayY - 2, 4, 4);
         }
-        g.setColor(Color.BLACK);
-        g.setFont(new Font("Arial", Font.BOLD, 16));
-        g.drawString(String.valueOf(sunCount), 50, 30);
-
-        // Timer
-        long gameTime = System.currentTimeMillis() - gameStartTime;
-        int secondsLeft = Math.max(0, (int) ((GAME_DURATION - gameTime) / 1000));
-        int minutes = secondsLeft / 60;
-        int seconds = secondsLeft % 60;
-        g.setColor(Color.WHITE);
-        g.drawString(String.format("Time: %d:%02d", minutes, seconds), 150, 25);
 
         // Plant selection
-        g.setFont(new Font("Arial", Font.BOLD, 12));
+        g.setColor(Color.WHITE);
+        g.setFont(GamePaints.LABEL_FONT);
         g.drawString("1: Sunflower (50)", 350, 15);
         g.drawString("2: Peashooter (100)", 470, 15);
         g.drawString("3: Cherry Bomb (150)", 590, 15);
@@ -1096,96 +4989,266 @@ class GameManager {
         g.setColor(Color.CYAN);
         g.drawString("S: Shovel Mode", 350, 30);
 
-        // Volume control UI
-        String volumeText = isMuted() ? "MUTED" : String.format("Vol: %.0f%%", getVolume() * 100);
-        g.drawString(volumeText, 250, 25);
-
         // Instructions with mid-air catching tips
-        g.setFont(new Font("Arial", Font.BOLD, 10));
+        g.setFont(GamePaints.SMALL_FONT);
         g.setColor(Color.LIGHT_GRAY);
         g.drawString("Catch SUNS mid-air or on ground! | ↑/↓ Volume | M: Mute", 10, 48);
+    }
+
+    private void renderUI(Graphics g, RenderSnapshot frame) {
+        if (hudImage == null) {
+            hudImage = SpriteSheet.createImage(800, 50, Transparency.OPAQUE);
+            Graphics2D hud = hudImage.createGraphics();
+            renderStaticUI(hud);
+            hud.dispose();
+        }
+        g.drawImage(hudImage, 0, 0, null);
+
+        g.setColor(Color.BLACK);
+        g.setFont(GamePaints.HUD_FONT);
+        if (frame.getSunCount() != shownSunCount) {
+            shownSunCount = frame.getSunCount();
+            sunCountText.clear().append(shownSunCount);
+        }
+        sunCountText.draw(g, 50, 30);
+
+        // Timer
+        int secondsLeft = frame.getSecondsLeft();
+        if (secondsLeft != shownSecondsLeft) {
+            shownSecondsLeft = secondsLeft;
+            if (secondsLeft < 0) {
+                timeText.clear().append("Time: Endless");
+            } else {
+                timeText.clear().append("Time: ").append(secondsLeft / 60).append(":").append(secondsLeft % 60, 2);
+            }
+        }
+        g.setColor(Color.WHITE);
+        timeText.draw(g, 150, 25);
+
+        // Volume control UI
+        g.setColor(Color.CYAN);
+        g.setFont(GamePaints.LABEL_FONT);
+        int volumePercent = frame.getVolumePercent();
+        if (volumePercent != shownVolumePercent) {
+            shownVolumePercent = volumePercent;
+            if (frame.isMuted()) {
+                volumeText.clear().append("MUTED");
+            } else {
+                volumeText.clear().append("Vol: ").append(volumePercent).append("%");
+            }
+        }
+        volumeText.draw(g, 250, 25);
 
         // Game phase indicator
-        long gameTimeSeconds = gameTime / 1000;
-        String phase;
-        if (gameTimeSeconds < 30) {
-            phase = "Preparation Phase";
-        } else if (gameTimeSeconds <= 80) {
-            phase = "Wave 1 (10s intervals)";
-        } else if (gameTimeSeconds <= 140) {
-            phase = "Wave 2 (5s intervals)";
-        } else if (gameTimeSeconds <= 170) {
-            phase = "Wave 3 (3s intervals)";
-        } else {
-            phase = "FINAL WAVE!";
-        }
         g.setColor(Color.CYAN);
-        g.setFont(new Font("Arial", Font.BOLD, 12));
-        g.drawString("Phase: " + phase, 10, 580);
+        g.setFont(GamePaints.LABEL_FONT);
+        g.drawString(frame.getPhaseLabel(), 10, 580);
 
-        g.drawString("Zombies: " + zombies.size(), 200, 580);
-        g.drawString("Suns on field: " + suns.size(), 320, 580);
+        if (frame.getZombieCount() != shownZombieCount) {
+            shownZombieCount = frame.getZombieCount();
+            zombieCountText.clear().append("Zombies: ").append(shownZombieCount);
+        }
+        if (frame.getSunsOnField() != shownSunsOnField) {
+            shownSunsOnField = frame.getSunsOnField();
+            sunsOnFieldText.clear().append("Suns on field: ").append(shownSunsOnField);
+        }
+        zombieCountText.draw(g, 200, 580);
+        sunsOnFieldText.draw(g, 320, 580);
     }
 
-    private void renderGameOver(Graphics g) {
-        g.setColor(new Color(0, 0, 0, 128));
+    private void renderGameOver(Graphics g, RenderSnapshot frame) {
+        boolean playerWon = frame.didPlayerWin();
+        g.setColor(GamePaints.GAME_OVER_SHADE);
         g.fillRect(0, 0, 800, 600);
 
-        g.setFont(new Font("Arial", Font.BOLD, 48));
+        g.setFont(GamePaints.TITLE_FONT);
         g.setColor(playerWon ? Color.GREEN : Color.RED);
         String message = playerWon ? "PLANTS WIN!" : "ZOMBIES WIN!";
         FontMetrics fm = g.getFontMetrics();
         int x = (800 - fm.stringWidth(message)) / 2;
         g.drawString(message, x, 300);
 
-        g.setFont(new Font("Arial", Font.BOLD, 20));
+        g.setFont(GamePaints.SUBTITLE_FONT);
         g.setColor(Color.WHITE);
         String condition = playerWon ? "Game time ended - You defended successfully!" : "A zombie reached your home!";
         fm = g.getFontMetrics();
         x = (800 - fm.stringWidth(condition)) / 2;
         g.drawString(condition, x, 350);
 
-        g.setFont(new Font("Arial", Font.BOLD, 14));
+        g.setFont(GamePaints.PLANT_FONT);
         g.setColor(Color.YELLOW);
         String restart = "Press R to restart";
         fm = g.getFontMetrics();
         x = (800 - fm.stringWidth(restart)) / 2;
         g.drawString(restart, x, 400);
     }
+}
 
-    // Getters
-    public int getSun() { return sunCount; }
-    public boolean isGameOver() { return gameOver; }
-    public boolean didPlayerWin() { return playerWon; }
-    public int getGridRows() { return GRID_ROWS; }
-    public int getGridCols() { return GRID_COLS; }
-    public int getTileWidth() { return TILE_WIDTH; }
-    public int getTileHeight() { return TILE_HEIGHT; }
+/**
+ * Graphics that draws nothing. The allocation check renders into it to measure what GameRenderer itself
+ * allocates, apart from whatever Java2D allocates inside the real drawing calls.
+ */
+class NullGraphics extends Graphics {
+    private final Graphics metricsSource; // Real graphics, only for font metrics
+    private Color color = Color.BLACK;
+    private Font font;
+
+    public NullGraphics(Graphics metricsSource) {
+        this.metricsSource = metricsSource;
+        this.font = metricsSource.getFont();
+    }
 
-    public void restart() {
-        zombies.clear();
-        plants.clear();
-        projectiles.clear();
-        suns.clear(); // Clear suns on restart
-        grid = new Plant[GRID_ROWS][GRID_COLS];
-        sunCount = 50;
-        gameStartTime = System.currentTimeMillis();
-        lastZombieSpawn = gameStartTime;
-        lastSkySunDrop = gameStartTime;
-        lastCombatTime = gameStartTime;
-        gameOver = false;
-        playerWon = false;
-        level = 1;
-        waveZombiesRemaining = 5;
+    @Override public Graphics create() { return this; }
+    @Override public void translate(int x, int y) {}
+    @Override public Color getColor() { return color; }
+    @Override public void setColor(Color c) { color = c; }
+    @Override public void setPaintMode() {}
+    @Override public void setXORMode(Color c) {}
+    @Override public Font getFont() { return font; }
+    @Override public void setFont(Font f) { font = f; }
+    @Override public FontMetrics getFontMetrics(Font f) { return metricsSource.getFontMetrics(f); }
+    @Override public Rectangle getClipBounds() { return null; }
+    @Override public void clipRect(int x, int y, int width, int height) {}
+    @Override public void setClip(int x, int y, int width, int height) {}
+    @Override public Shape getClip() { return null; }
+    @Override public void setClip(Shape clip) {}
+    @Override public void copyArea(int x, int y, int width, int height, int dx, int dy) {}
+    @Override public void drawLine(int x1, int y1, int x2, int y2) {}
+    @Override public void fillRect(int x, int y, int width, int height) {}
+    @Override public void clearRect(int x, int y, int width, int height) {}
+    @Override public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {}
+    @Override public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {}
+    @Override public void drawOval(int x, int y, int width, int height) {}
+    @Override public void fillOval(int x, int y, int width, int height) {}
+    @Override public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) {}
+    @Override public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {}
+    @Override public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {}
+    @Override public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {}
+    @Override public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {}
+    @Override public void drawString(String str, int x, int y) {}
+    @Override public void drawString(java.text.AttributedCharacterIterator iterator, int x, int y) {}
+    @Override public void drawChars(char[] data, int offset, int length, int x, int y) {}
+    @Override public boolean drawImage(Image img, int x, int y, java.awt.image.ImageObserver observer) { return true; }
+    @Override public boolean drawImage(Image img, int x, int y, int width, int height,
+                                       java.awt.image.ImageObserver observer) { return true; }
+    @Override public boolean drawImage(Image img, int x, int y, Color bgcolor,
+                                       java.awt.image.ImageObserver observer) { return true; }
+    @Override public boolean drawImage(Image img, int x, int y, int width, int height, Color bgcolor,
+                                       java.awt.image.ImageObserver observer) { return true; }
+    @Override public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+                                       java.awt.image.ImageObserver observer) { return true; }
+    @Override public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+                                       Color bgcolor, java.awt.image.ImageObserver observer) { return true; }
+    @Override public void dispose() {}
+}
 
-        // Restart background music
-        audioManager.stopBackgroundMusic();
-        audioManager.playBackgroundMusic();
+/**
+ * Active rendering: draws into a Canvas through a page-flipped BufferStrategy on its own thread, paced
+ * by System.nanoTime() instead of a Swing Timer. The thread sleeps until just short of each frame's slot
+ * and yields the rest of the way, so frames go out at an even rate. A frame that overruns whole slots
+ * skips them rather than bunching up, and the skipped slots are counted as dropped in the profiler.
+ */
+class RenderLoop implements Runnable {
+    private static final long SPIN_NANOS = 1_500_000L; // parkNanos() can oversleep - yield through the last stretch
+    private static final int DEFAULT_FPS = 60; // When the display doesn't report its refresh rate
+
+    private final Canvas canvas;
+    private final Consumer<Graphics> painter;
+    private final Supplier<FrameProfiler> profiler;
+    private final long frameNanos;
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * Loop drawing at fps frames per second, or at the display's refresh rate when fps is 0. The
+     * profiler is looked up every frame, so it can follow a game that gets swapped out.
+     */
+    public RenderLoop(Canvas canvas, Consumer<Graphics> painter, Supplier<FrameProfiler> profiler, int fps) {
+        this.canvas = canvas;
+        this.painter = painter;
+        this.profiler = profiler;
+        this.frameNanos = 1_000_000_000L / (fps > 0 ? fps : displayRefreshRate(canvas));
     }
 
-    public void dispose() {
-        if (audioManager != null) {
-            audioManager.dispose();
+    private static int displayRefreshRate(Canvas canvas) {
+        GraphicsConfiguration config = canvas.getGraphicsConfiguration();
+        if (config == null) {
+            return DEFAULT_FPS;
+        }
+        int refreshRate = config.getDevice().getDisplayMode().getRefreshRate();
+        return refreshRate == DisplayMode.REFRESH_RATE_UNKNOWN ? DEFAULT_FPS : refreshRate;
+    }
+
+    /**
+     * Set up page flipping and start drawing - the canvas has to be displayable by now
+     */
+    public void start() {
+        canvas.createBufferStrategy(2);
+        running = true;
+        thread = new Thread(this, "pvz-render");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public long getFrameNanos() { return frameNanos; }
+
+    @Override
+    public void run() {
+        BufferStrategy strategy = canvas.getBufferStrategy();
+        long nextFrame = System.nanoTime();
+
+        while (running) {
+            waitUntil(nextFrame);
+            drawFrame(strategy);
+
+            nextFrame += frameNanos;
+            long late = System.nanoTime() - nextFrame;
+            if (late > 0) {
+                long missed = late / frameNanos + 1; // This slot too - it's already started
+                profiler.get().framesDropped(missed);
+                nextFrame += missed * frameNanos;
+            }
+        }
+    }
+
+    private void drawFrame(BufferStrategy strategy) {
+        // Both loops are straight from the BufferStrategy docs - the buffers can be lost to the OS at any time
+        do {
+            do {
+                Graphics g = strategy.getDrawGraphics();
+                try {
+                    g.setColor(canvas.getBackground());
+                    g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+                    painter.accept(g);
+                } finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync(); // Flush the pipeline now instead of whenever X gets to it
+    }
+
+    private void waitUntil(long deadline) {
+        long remaining;
+        while (running && (remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.yield();
+            }
         }
     }
 }
@@ -1194,14 +5257,67 @@ class GameManager {
  * Enhanced Game Panel with Sun Collection and Shovel Feature
  */
 class GamePanel extends JPanel implements KeyListener, MouseListener {
-    private GameManager gameManager;
-    private javax.swing.Timer gameTimer;
+    // Volatile where the active render thread reads what the EDT sets
+    private volatile GameManager gameManager;
+    private volatile SimulationLoop simulation;
+    private volatile GameRenderer renderer;
+    private javax.swing.Timer repaintTimer;
+    private Canvas canvas; // Only with active rendering
+    private RenderLoop renderLoop;
+    private int activeFps;
     private Class<? extends Plant> selectedPlant;
-    private boolean shovelMode; // New: Track if shovel mode is active
+    private volatile String selectedPlantLabel;
+    private volatile boolean shovelMode; // New: Track if shovel mode is active
+    private SessionRecorder recorder;
+    private java.nio.file.Path recordingPath;
+    private boolean replaying;
+    private volatile boolean showProfiler;
+    private boolean dumpProfileOnExit;
+    private List<String> profilerLines = Collections.emptyList();
+    private long profilerLinesNanos;
+
+    private static final long PROFILER_REFRESH_NANOS = 250_000_000L; // Readable, and keeps the overlay itself cheap
 
     public GamePanel() {
-        gameManager = new GameManager();
-        selectedPlant = Sunflower.class;
+        this(LevelDefinition.CLASSIC, null, null);
+    }
+
+    /**
+     * Game of the given level that is saved to recordingPath on dispose, or that plays back a recorded
+     * session in its own level - either may be null
+     */
+    public GamePanel(LevelDefinition level, java.nio.file.Path recordingPath, SessionReplay replay) {
+        this(level, recordingPath, replay, GameManager.TICK_MILLIS);
+    }
+
+    /**
+     * Same, simulated in ticks of tickMillis - a replay always ticks as it was recorded
+     */
+    public GamePanel(LevelDefinition level, java.nio.file.Path recordingPath, SessionReplay replay, long tickMillis) {
+        this(replay != null
+                ? new GameManager(new SimulationClock(), true, replay.getSeed(), replay.getLevel())
+                : new GameManager(new SimulationClock(), true, new Random().nextLong(), level),
+                recordingPath, replay, replay != null ? replay.getTickMillis() : tickMillis);
+    }
+
+    /**
+     * Carry on a game restored by SaveState
+     */
+    public GamePanel(GameManager savedGame, long tickMillis) {
+        this(savedGame, null, null, tickMillis);
+    }
+
+    private GamePanel(GameManager game, java.nio.file.Path recordingPath, SessionReplay replay, long tickMillis) {
+        Sprites.prerenderAll();
+        gameManager = game;
+        replaying = replay != null;
+        if (recordingPath != null) {
+            this.recordingPath = recordingPath;
+            recorder = new SessionRecorder(gameManager.getSeed(), gameManager.getLevelDefinition(), tickMillis);
+            gameManager.setRecorder(recorder);
+        }
+        renderer = new GameRenderer(gameManager.getProfiler());
+        selectPlant(Sunflower.class);
         shovelMode = false;
 
         setBackground(Color.WHITE);
@@ -1209,26 +5325,86 @@ class GamePanel extends JPanel implements KeyListener, MouseListener {
         addKeyListener(this);
         addMouseListener(this);
 
-        // Game loop timer - 60 FPS for smooth gameplay
-        gameTimer = new javax.swing.Timer(16, e -> {
-            gameManager.update();
-            repaint();
-        });
-        gameTimer.start();
+        // The game lives on its own thread from here on - this panel only sends commands and draws snapshots
+        simulation = new SimulationLoop(gameManager, replay, tickMillis);
+        simulation.start();
+
+        // Repaint at ~60 FPS, independent of the simulation rate - sprites are interpolated between ticks
+        repaintTimer = new javax.swing.Timer(16, e -> repaint());
+        repaintTimer.start();
+    }
+
+    /**
+     * Draw through a page-flipped Canvas on a paced render thread instead of the Swing repaint timer -
+     * at fps frames per second, or the display refresh rate when fps is 0. Call before the panel is shown.
+     */
+    public void useActiveRendering(int fps) {
+        if (canvas != null) {
+            return;
+        }
+        activeFps = fps;
+        repaintTimer.stop();
+        canvas = new Canvas();
+        canvas.setBackground(getBackground());
+        canvas.setIgnoreRepaint(true); // Only the render thread draws it
+        canvas.setFocusable(true);
+        canvas.addKeyListener(this);
+        canvas.addMouseListener(this);
+        setLayout(new BorderLayout());
+        add(canvas, BorderLayout.CENTER);
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        // The canvas can only get a BufferStrategy once it is displayable
+        if (canvas != null && renderLoop == null) {
+            renderLoop = new RenderLoop(canvas, this::drawFrame, () -> gameManager.getProfiler(), activeFps);
+            renderLoop.start();
+            System.out.println(String.format("Active rendering at %.1f FPS", 1e9 / renderLoop.getFrameNanos()));
+        }
+    }
+
+    @Override
+    public void removeNotify() {
+        if (renderLoop != null) { // Stop drawing before the canvas loses its buffers
+            renderLoop.stop();
+            renderLoop = null;
+        }
+        super.removeNotify();
+    }
+
+    @Override
+    public boolean requestFocusInWindow() {
+        return canvas != null ? canvas.requestFocusInWindow() : super.requestFocusInWindow();
     }
 
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
+        if (canvas == null) { // The render thread is the only one that may take snapshots otherwise
+            drawFrame(g);
+        }
+    }
+
+    /**
+     * One full frame of the game - on the EDT from paintComponent(), or on the render thread
+     */
+    private void drawFrame(Graphics g) {
         Graphics2D g2d = (Graphics2D) g;
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-        gameManager.render(g);
+        RenderSnapshot frame = simulation.latestSnapshot();
+        renderer.render(g, frame);
+
+        if (showProfiler) {
+            drawProfilerOverlay(g);
+        }
 
         // Show current mode with better visibility
-        if (!gameManager.isGameOver()) {
+        if (!frame.isGameOver()) {
             g.setColor(Color.WHITE);
-            g.setFont(new Font("Arial", Font.BOLD, 16));
+            g.setFont(GamePaints.HUD_FONT);
 
             if (shovelMode) {
                 g.setColor(Color.ORANGE);
@@ -1236,12 +5412,10 @@ class GamePanel extends JPanel implements KeyListener, MouseListener {
                 g.setColor(Color.BLACK);
                 g.drawString("🔧 SHOVEL MODE - Click plant to remove", 10, 593);
             } else {
-                String plantName = selectedPlant.getSimpleName();
-                int cost = getPlantCost(selectedPlant);
-                g.setColor(new Color(0, 100, 0));
+                g.setColor(GamePaints.DARK_GREEN);
                 g.fillRect(8, 578, 250, 20);
                 g.setColor(Color.WHITE);
-                g.drawString("🌱 " + plantName + " (" + cost + " sun)", 10, 593);
+                g.drawString(selectedPlantLabel, 10, 593);
             }
         }
     }
@@ -1250,15 +5424,15 @@ class GamePanel extends JPanel implements KeyListener, MouseListener {
     public void keyPressed(KeyEvent e) {
         switch (e.getKeyCode()) {
             case KeyEvent.VK_1:
-                selectedPlant = Sunflower.class;
+                selectPlant(Sunflower.class);
                 shovelMode = false;
                 break;
             case KeyEvent.VK_2:
-                selectedPlant = Peashooter.class;
+                selectPlant(Peashooter.class);
                 shovelMode = false;
                 break;
             case KeyEvent.VK_3:
-                selectedPlant = CherryBomb.class;
+                selectPlant(CherryBomb.class);
                 shovelMode = false;
                 break;
             case KeyEvent.VK_S:
@@ -1266,82 +5440,135 @@ class GamePanel extends JPanel implements KeyListener, MouseListener {
                 System.out.println("Shovel mode: " + (shovelMode ? "ON" : "OFF"));
                 break;
             case KeyEvent.VK_R:
-                if (gameManager.isGameOver()) {
-                    gameManager.restart();
-                }
+                simulation.submit(GameCommand.RESTART); // Ignored unless the game is over
                 break;
             // Volume controls
             case KeyEvent.VK_PLUS:
             case KeyEvent.VK_EQUALS:
             case KeyEvent.VK_UP:
-                gameManager.volumeUp();
+                simulation.submit(GameCommand.VOLUME_UP);
                 break;
             case KeyEvent.VK_MINUS:
             case KeyEvent.VK_UNDERSCORE:
             case KeyEvent.VK_DOWN:
-                gameManager.volumeDown();
+                simulation.submit(GameCommand.VOLUME_DOWN);
                 break;
             case KeyEvent.VK_M:
-                gameManager.toggleMute();
+                simulation.submit(GameCommand.TOGGLE_MUTE);
+                break;
+            case KeyEvent.VK_F3:
+                showProfiler = !showProfiler;
+                profilerLinesNanos = 0;
+                break;
+            case KeyEvent.VK_F5:
+                simulation.submit(GameCommand.SAVE); // Written between ticks on the simulation thread
                 break;
+            case KeyEvent.VK_F9:
+                loadQuicksave();
+                break;
+        }
+    }
+
+    /**
+     * Swap in the quicksaved game - a fresh simulation thread takes over from the current one
+     */
+    private void loadQuicksave() {
+        if (recorder != null || replaying) {
+            System.out.println("Loading is off while recording or replaying - a loaded game can't be replayed from its seed");
+            return;
+        }
+        GameManager loaded;
+        try {
+            loaded = SaveState.read(SaveState.QUICKSAVE_PATH, true);
+        } catch (IOException e) {
+            System.out.println("Could not load game: " + e.getMessage());
+            return;
         }
+        simulation.stop();
+        gameManager.dispose();
+        gameManager = loaded;
+        renderer = new GameRenderer(loaded.getProfiler());
+        simulation = new SimulationLoop(loaded, null, loaded.getTickMillis());
+        simulation.start();
+        loaded.startMusic();
+        System.out.println("Game loaded from " + SaveState.QUICKSAVE_PATH);
     }
 
     @Override
     public void mouseClicked(MouseEvent e) {
-        if (gameManager.isGameOver()) return;
+        // Sun collection, planting and shoveling are all decided on the simulation thread
+        simulation.submit(GameCommand.click(e.getX(), e.getY(), shovelMode ? null : selectedPlant));
+    }
 
-        int x = e.getX();
-        int y = e.getY();
+    public void startMusic() {
+        gameManager.startMusic();
+    }
 
-        // PRIORITY 1: Try to collect sun first (falling or stationary)
-        if (gameManager.collectSun(x, y)) {
-            System.out.println("Sun collected at (" + x + ", " + y + ")");
-            return; // Sun was collected, stop here
+    public void dispose() {
+        if (repaintTimer != null) {
+            repaintTimer.stop();
         }
-
-        // PRIORITY 2: Check if click is in game grid area
-        if (y < 50 || y > 550 || x < 50 || x > 770) {
-            // Click is outside game area, ignore
-            return;
+        if (renderLoop != null) {
+            renderLoop.stop();
         }
-
-        // Convert pixel coordinates to grid coordinates
-        int col = (x - 50) / gameManager.getTileWidth();
-        int row = (y - 50) / gameManager.getTileHeight();
-
-        // Validate grid bounds
-        if (row < 0 || row >= gameManager.getGridRows() ||
-                col < 0 || col >= gameManager.getGridCols()) {
-            return;
+        if (simulation != null) {
+            simulation.stop();
         }
-
-        // PRIORITY 3: Handle plant placement or shovel
-        if (shovelMode) {
-            // Shovel mode: remove plant
-            if (gameManager.shovelPlant(row, col)) {
-                System.out.println("Plant removed from grid (" + row + ", " + col + ")");
-            }
-        } else {
-            // Normal mode: place plant
-            boolean placed = gameManager.placePlant(row, col, selectedPlant);
-            if (placed) {
-                System.out.println("Plant placed at grid (" + row + ", " + col + ")");
-            } else {
-                System.out.println("Cannot place plant - insufficient sun or tile occupied");
+        if (recorder != null) {
+            try {
+                recorder.save(recordingPath, gameManager.getTickCount());
+                System.out.println("Session recorded to " + recordingPath);
+            } catch (IOException e) {
+                System.out.println("Could not save recording: " + e.getMessage());
             }
         }
-    }
-
-    public void dispose() {
+        if (dumpProfileOnExit) {
+            writeProfile(gameManager.getProfiler());
+        }
         if (gameManager != null) {
             gameManager.dispose();
         }
-        if (gameTimer != null) {
-            gameTimer.stop();
+    }
+
+    /**
+     * Write pvz-profile.csv and pvz-profile.json to the working directory when the game closes
+     */
+    public void setDumpProfileOnExit(boolean dumpProfileOnExit) {
+        this.dumpProfileOnExit = dumpProfileOnExit;
+    }
+
+    static void writeProfile(FrameProfiler profiler) {
+        try {
+            profiler.writeCsv(java.nio.file.Paths.get("pvz-profile.csv"));
+            profiler.writeJson(java.nio.file.Paths.get("pvz-profile.json"));
+            System.out.println("Profile written to pvz-profile.csv and pvz-profile.json");
+        } catch (IOException e) {
+            System.out.println("Could not write profile: " + e.getMessage());
+        }
+    }
+
+    private void drawProfilerOverlay(Graphics g) {
+        long now = System.nanoTime();
+        if (now - profilerLinesNanos >= PROFILER_REFRESH_NANOS) {
+            profilerLines = gameManager.getProfiler().summaryLines();
+            profilerLinesNanos = now;
+        }
+
+        int lineHeight = 13;
+        g.setColor(GamePaints.OVERLAY_SHADE);
+        g.fillRect(440, 55, 355, profilerLines.size() * lineHeight + 8);
+        g.setColor(Color.WHITE);
+        g.setFont(GamePaints.OVERLAY_FONT);
+        for (int i = 0; i < profilerLines.size(); i++) {
+            g.drawString(profilerLines.get(i), 445, 55 + (i + 1) * lineHeight);
         }
     }
 
+    private void selectPlant(Class<? extends Plant> plantType) {
+        selectedPlant = plantType;
+        selectedPlantLabel = "🌱 " + plantType.getSimpleName() + " (" + getPlantCost(plantType) + " sun)";
+    }
+
     private int getPlantCost(Class<? extends Plant> plantType) {
         if (plantType == Sunflower.class) return 50;
         if (plantType == Peashooter.class) return 100;
@@ -1365,9 +5592,95 @@ class GamePanel extends JPanel implements KeyListener, MouseListener {
 
 public class PlantsVsZombiesGame {
     public static void main(String[] args) {
+        boolean profile = Arrays.asList(args).contains("--profile");
+        boolean activeRender = Arrays.asList(args).contains("--active-render");
+        int fps = intOption(args, "--fps", 0); // With --active-render; 0 follows the display
+        int tickRate = intOption(args, "--tick-rate", (int) (1000 / GameManager.TICK_MILLIS)); // Window game only
+        if (tickRate < 1 || tickRate > 1000) {
+            System.out.println("Tick rate must be between 1 and 1000 Hz: " + tickRate);
+            System.exit(1);
+        }
+        long tickMillis = tickRate == 1000 / GameManager.TICK_MILLIS ? GameManager.TICK_MILLIS : 1000 / tickRate;
+        LevelDefinition level = LevelDefinition.CLASSIC;
+        int levelOption = Arrays.asList(args).indexOf("--level");
+        if (levelOption >= 0 && levelOption + 1 < args.length) {
+            level = loadLevel(args[levelOption + 1]);
+        }
+        if (args.length > 0 && args[0].equals("--headless")) {
+            int levels = args.length > 1 && !args[1].startsWith("--") ? Integer.parseInt(args[1]) : 1;
+            runHeadless(levels, level, profile);
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--stress")) {
+            int seconds = args.length > 2 && !args[2].startsWith("--") ? Integer.parseInt(args[2]) : 120;
+            runStress(loadLevel(args[1]), seconds, profile);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--server")) {
+            int port = args.length > 1 && !args[1].startsWith("--") ? Integer.parseInt(args[1]) : 7460;
+            int workers = intOption(args, "--workers", Runtime.getRuntime().availableProcessors());
+            int loadSessions = intOption(args, "--sessions", 0);
+            try {
+                new GameServer(port, workers, level).start(loadSessions);
+            } catch (IOException e) {
+                System.out.println("Could not start server: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--evaluate")) {
+            int games = args.length > 1 && !args[1].startsWith("--") ? Integer.parseInt(args[1]) : 1000;
+            int policyOption = Arrays.asList(args).indexOf("--policy");
+            String policy = policyOption >= 0 && policyOption + 1 < args.length ? args[policyOption + 1] : null;
+            runEvaluation(level, games, intOption(args, "--seed", 1), policy,
+                    intOption(args, "--threads", Runtime.getRuntime().availableProcessors()));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--alloc-check")) {
+            System.exit(runAllocationCheck() ? 0 : 1);
+        }
+        if (args.length > 0 && args[0].equals("--save-check")) {
+            int seconds = args.length > 1 && !args[1].startsWith("--") ? Integer.parseInt(args[1]) : 90;
+            System.exit(runSaveCheck(level, seconds) ? 0 : 1);
+        }
+
+        java.nio.file.Path recordingPath = null;
+        SessionReplay replay = null;
+        GameManager savedGame = null;
+        if (args.length > 1 && args[0].equals("--resume")) {
+            try {
+                savedGame = SaveState.read(java.nio.file.Paths.get(args[1]), true);
+            } catch (IOException e) {
+                System.out.println("Could not load game: " + e.getMessage());
+                System.exit(1);
+            }
+        } else if (args.length > 1 && args[0].equals("--record")) {
+            recordingPath = java.nio.file.Paths.get(args[1]);
+        } else if (args.length > 1 && args[0].equals("--replay")) {
+            try {
+                replay = SessionReplay.read(java.nio.file.Paths.get(args[1]));
+            } catch (IOException e) {
+                System.out.println("Could not read recording: " + e.getMessage());
+                System.exit(1);
+            }
+            if (args.length > 2 && args[2].equals("--fast")) {
+                runReplay(replay, profile);
+                return;
+            }
+        }
+
+        LevelDefinition windowLevel = level;
+        java.nio.file.Path windowRecordingPath = recordingPath;
+        SessionReplay windowReplay = replay;
+        GameManager windowSavedGame = savedGame;
         SwingUtilities.invokeLater(() -> {
             JFrame frame = new JFrame("Plants vs Zombies - Enhanced with Sun Collection & Shovel");
-            GamePanel gamePanel = new GamePanel();
+            GamePanel gamePanel = windowSavedGame != null ? new GamePanel(windowSavedGame, windowSavedGame.getTickMillis())
+                    : new GamePanel(windowLevel, windowRecordingPath, windowReplay, tickMillis);
+            gamePanel.setDumpProfileOnExit(profile);
+            if (activeRender) {
+                gamePanel.useActiveRendering(fps);
+            }
 
             frame.add(gamePanel);
             frame.setSize(800, 650);
@@ -1378,8 +5691,13 @@ public class PlantsVsZombiesGame {
 
             gamePanel.requestFocusInWindow();
 
-            // Add window listener to properly dispose audio resources
+            // Add window listener to start the music once the window is up and properly dispose audio resources
             frame.addWindowListener(new java.awt.event.WindowAdapter() {
+                @Override
+                public void windowOpened(java.awt.event.WindowEvent windowEvent) {
+                    gamePanel.startMusic();
+                }
+
                 @Override
                 public void windowClosing(java.awt.event.WindowEvent windowEvent) {
                     gamePanel.dispose();
@@ -1392,6 +5710,315 @@ public class PlantsVsZombiesGame {
         });
     }
 
+    /**
+     * Run full levels on a simulated clock with no window or audio - for batch balance and regression checks
+     */
+    private static void runHeadless(int levels, LevelDefinition level, boolean profile) {
+        int plantWins = 0;
+        long totalTicks = 0;
+        FrameProfiler profiler = new FrameProfiler();
+        long startNanos = System.nanoTime();
+
+        for (int i = 0; i < levels; i++) {
+            GameManager game = GameManager.createHeadless(level, new Random().nextLong());
+            game.setProfiler(profiler);
+            while (!game.isGameOver()) {
+                game.tick(GameManager.TICK_MILLIS);
+                totalTicks++;
+            }
+            if (game.didPlayerWin()) {
+                plantWins++;
+            }
+        }
+
+        double elapsedMs = (System.nanoTime() - startNanos) / 1_000_000.0;
+        System.out.println("Headless run: " + levels + " level(s), " + totalTicks + " ticks in "
+                + String.format("%.1f", elapsedMs) + " ms");
+        System.out.println("Plants won " + plantWins + ", zombies won " + (levels - plantWins));
+        if (profile) {
+            printProfile(profiler);
+        }
+    }
+
+    /**
+     * Run a (usually endless) level headless for the given game seconds, reporting entity counts and tick
+     * cost every 10 game seconds - for seeing how the loop holds up on big boards
+     */
+    private static void runStress(LevelDefinition level, int seconds, boolean profile) {
+        GameManager game = GameManager.createHeadless(level, new Random().nextLong());
+        LatencyHistogram ticks = game.getProfiler().getHistogram(FrameProfiler.TICK);
+        long reportTicks = 10_000 / GameManager.TICK_MILLIS;
+        long totalTicks = seconds * 1000L / GameManager.TICK_MILLIS;
+        System.out.println("Stress run: " + level.getName() + ", " + level.getRows() + "x" + level.getCols()
+                + " grid, " + seconds + " game seconds (seed " + game.getSeed() + ")");
+
+        long windowStart = System.nanoTime();
+        for (long tick = 1; tick <= totalTicks && !game.isGameOver(); tick++) {
+            game.tick(GameManager.TICK_MILLIS);
+            if (tick % reportTicks == 0 || tick == totalTicks || game.isGameOver()) {
+                long now = System.nanoTime();
+                double wallMs = (now - windowStart) / 1_000_000.0;
+                double gameMs = (double) ticks.getCount() * GameManager.TICK_MILLIS;
+                System.out.println(String.format("t=%4ds  zombies %6d  plants %5d  peas %6d  tick mean %.3f ms  p99 %.3f ms  %.1fx realtime",
+                        game.getGameTime() / 1000, game.getZombieCount(), game.getPlantCount(), game.getPeaCount(),
+                        ticks.getMean() / 1_000_000.0, ticks.percentile(99) / 1_000_000.0, gameMs / wallMs));
+                ticks.reset(); // Each line covers its own window - a --profile summary shows the last one
+                windowStart = now;
+            }
+        }
+        if (game.isGameOver()) {
+            System.out.println("Zombies got through at " + game.getGameTime() / 1000 + "s");
+        }
+        if (profile) {
+            printProfile(game.getProfiler());
+        }
+    }
+
+    /**
+     * Let a bot play a seeded game for the given game seconds, save it, and check that restored copies -
+     * from memory and through a file - finish exactly like the original does. Also times the restore.
+     */
+    private static boolean runSaveCheck(LevelDefinition level, int seconds) {
+        Supplier<BotPolicy> policy = BotPolicies.builtIn().get("cherry-defense");
+        GameManager original = GameManager.createHeadless(level, 1234L);
+        original.setLogActions(false);
+        BotPolicy bot = policy.get();
+        while (!original.isGameOver() && original.getGameTime() < seconds * 1000L) {
+            bot.act(original);
+            original.tick(GameManager.TICK_MILLIS);
+        }
+
+        ByteBuffer saved = SaveState.capture(original);
+        System.out.println("Save check: " + level.getName() + " at t=" + original.getGameTime() / 1000 + "s - "
+                + original.getPlantCount() + " plants, " + original.getZombieCount() + " zombies, "
+                + original.getPeaCount() + " peas, " + original.getSunDropCount() + " suns, "
+                + saved.remaining() + " bytes");
+
+        try {
+            int restores = 2000;
+            long fastest = Long.MAX_VALUE;
+            long total = 0;
+            for (int i = -restores; i < restores; i++) {
+                long start = System.nanoTime();
+                GameManager copy = SaveState.restore(saved);
+                long elapsed = System.nanoTime() - start;
+                if (i >= 0) { // The first half is warmup
+                    total += elapsed;
+                    fastest = Math.min(fastest, elapsed);
+                }
+                if (copy.getTickCount() != original.getTickCount()) {
+                    throw new IOException("restored copy is at the wrong tick");
+                }
+            }
+            System.out.println(String.format("  restore: mean %.1f us, best %.1f us over %d restores",
+                    total / 1000.0 / restores, fastest / 1000.0, restores));
+
+            boolean sameState = SaveState.capture(SaveState.restore(saved)).equals(saved);
+            System.out.println("  save -> restore -> save gives the same bytes: " + (sameState ? "yes" : "NO"));
+
+            java.nio.file.Path file = java.nio.file.Files.createTempFile("pvz-save", ".bin");
+            SaveState.write(original, file);
+            GameManager fromMemory = SaveState.restore(saved);
+            GameManager fromFile = SaveState.read(file, false);
+            java.nio.file.Files.delete(file);
+
+            GameManager[] games = {original, fromMemory, fromFile};
+            for (GameManager game : games) {
+                game.setLogActions(false);
+                BotPolicy player = policy.get();
+                while (!game.isGameOver()) {
+                    player.act(game);
+                    game.tick(game.getTickMillis()); // Copies carry on in the step they were saved in
+                }
+            }
+            ByteBuffer finalState = SaveState.capture(original);
+            boolean sameEnding = SaveState.capture(fromMemory).equals(finalState)
+                    && SaveState.capture(fromFile).equals(finalState);
+            System.out.println("  played to the end - original " + (original.didPlayerWin() ? "won" : "lost") + " at t="
+                    + original.getGameTime() / 1000 + "s with " + original.getZombiesKilled()
+                    + " kills; copies finish identically: " + (sameEnding ? "yes" : "NO"));
+
+            boolean pass = sameState && sameEnding;
+            System.out.println(pass ? "PASS" : "FAIL");
+            return pass;
+        } catch (IOException e) {
+            System.out.println("FAIL - " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Play games seeded games per built-in bot (or just the named one) and print how each did
+     */
+    private static void runEvaluation(LevelDefinition level, int games, long seed, String onlyPolicy, int threads) {
+        Map<String, Supplier<BotPolicy>> policies = BotPolicies.builtIn();
+        if (onlyPolicy != null && !policies.containsKey(onlyPolicy)) {
+            System.out.println("Unknown policy " + onlyPolicy + " - built in: " + String.join(", ", policies.keySet()));
+            System.exit(1);
+        }
+        System.out.println("Evaluating " + games + " game(s) per strategy on " + level.getName() + ", seeds " + seed
+                + ".." + (seed + games - 1) + ", " + threads + " thread(s)");
+        System.out.println(String.format("%-18s %15s %10s %8s %10s   %s", "strategy", "win rate", "sun/game",
+                "spent", "kills/100", "loss time p10/p50/p90 (s)"));
+
+        StrategyEvaluator evaluator = new StrategyEvaluator(level, threads);
+        for (Map.Entry<String, Supplier<BotPolicy>> policy : policies.entrySet()) {
+            if (onlyPolicy != null && !onlyPolicy.equals(policy.getKey())) continue;
+            long startNanos = System.nanoTime();
+            EvaluationResult result = evaluator.evaluate(policy.getValue(), seed, games);
+            double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+            String lossTimes = result.lossPercentile(50) < 0 ? "no losses"
+                    : result.lossPercentile(10) + " / " + result.lossPercentile(50) + " / " + result.lossPercentile(90);
+            System.out.println(String.format(Locale.ROOT, "%-18s %6.1f%% +- %4.1f %10.0f %7.0f%% %10.2f   %s",
+                    policy.getKey(), result.getWinRate() * 100, result.getWinRateMargin() * 100,
+                    result.getSunCollectedPerGame(), result.getSunSpentShare() * 100, result.getKillsPer100Sun(), lossTimes));
+            if (result.lossPercentile(50) >= 0) {
+                System.out.println(String.format("%-18s losses per 15 s: %s", "", Arrays.toString(result.lossHistogram(15))));
+            }
+            System.out.println(String.format(Locale.ROOT, "%-18s %.1f s, %.0fx realtime", "", elapsedSeconds,
+                    result.getGameMillis() / 1000.0 / elapsedSeconds));
+        }
+        evaluator.shutdown();
+    }
+
+    private static int intOption(String[] args, String name, int defaultValue) {
+        int index = Arrays.asList(args).indexOf(name);
+        return index >= 0 && index + 1 < args.length ? Integer.parseInt(args[index + 1]) : defaultValue;
+    }
+
+    private static LevelDefinition loadLevel(String file) {
+        try {
+            return LevelDefinition.load(java.nio.file.Paths.get(file));
+        } catch (IOException e) {
+            System.out.println("Could not read level: " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    private static void printProfile(FrameProfiler profiler) {
+        for (String line : profiler.summaryLines()) {
+            System.out.println(line);
+        }
+        GamePanel.writeProfile(profiler);
+    }
+
+    /**
+     * Replay a recorded session headless as fast as possible and print where it ended up
+     */
+    private static void runReplay(SessionReplay replay, boolean profile) {
+        long startNanos = System.nanoTime();
+        GameManager game = replay.run(false, profile);
+        double elapsedMs = (System.nanoTime() - startNanos) / 1_000_000.0;
+
+        System.out.println("Replayed " + replay.getActionCount() + " action(s) over " + replay.getEndTick() + " ticks in "
+                + String.format("%.1f", elapsedMs) + " ms (seed " + replay.getSeed() + ")");
+        System.out.println("Final state: sun " + game.getSun() + ", plants " + game.getPlantCount()
+                + ", zombies " + game.getZombieCount() + ", game time " + game.getGameTime() + " ms"
+                + (game.isGameOver() ? (game.didPlayerWin() ? ", plants won" : ", zombies won") : ""));
+        if (profile) {
+            printProfile(game.getProfiler());
+        }
+    }
+
+    /**
+     * Play a busy board headless and check that update() and render() allocate nothing once warmed up.
+     * render() is measured against a NullGraphics, so the check sees GameRenderer's own allocations only;
+     * each frame is then drawn into an offscreen image too, and what Java2D allocates there is reported.
+     * The check runs in the interpreter, which performs every allocation the code asks for - C2 would hide
+     * some through escape analysis and add a few of its own whenever it swaps compiled code in.
+     */
+    private static boolean runAllocationCheck() {
+        if (!System.getProperty("java.vm.info", "").startsWith("interpreted")) {
+            return relaunchInterpreted("--alloc-check");
+        }
+
+        GameManager game = GameManager.createHeadless();
+        game.addSun(10_000);
+        for (int row = 0; row < game.getGridRows(); row++) {
+            game.placePlant(row, 0, Sunflower.class);
+            game.placePlant(row, 1, Peashooter.class);
+            game.placePlant(row, 2, Peashooter.class);
+            for (int i = 0; i < 8; i++) {
+                game.spawnZombie(row, i % 3);
+            }
+        }
+
+        Sprites.prerenderAll();
+        RenderSnapshot snapshot = new RenderSnapshot();
+        GameRenderer renderer = new GameRenderer(game.getProfiler());
+        BufferedImage frame = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = frame.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        NullGraphics nullGraphics = new NullGraphics(g);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+
+        // Warm up only to fill the pools and build the lazily drawn images and fonts - nothing here waits on
+        // the JIT - then measure well before the first wave spawns at 30 s
+        int warmupFrames = 300;
+        int measuredFrames = 1200;
+        for (int i = 0; i < warmupFrames; i++) {
+            game.tick(GameManager.TICK_MILLIS);
+            game.writeSnapshot(snapshot);
+            renderer.render(g, snapshot);
+        }
+        long updateBytes = 0;
+        long renderBytes = 0;
+        long java2dBytes = 0;
+        long blits = 0;
+        for (int i = 0; i < measuredFrames; i++) {
+            long start = threads.getCurrentThreadAllocatedBytes();
+            game.tick(GameManager.TICK_MILLIS);
+            long updated = threads.getCurrentThreadAllocatedBytes();
+            game.writeSnapshot(snapshot);
+            renderer.render(nullGraphics, snapshot);
+            long rendered = threads.getCurrentThreadAllocatedBytes();
+            renderer.render(g, snapshot);
+            long drawn = threads.getCurrentThreadAllocatedBytes();
+            updateBytes += updated - start;
+            renderBytes += rendered - updated;
+            java2dBytes += drawn - rendered;
+            blits += snapshot.getSpriteCount();
+        }
+        g.dispose();
+
+        boolean passed = updateBytes == 0 && renderBytes == 0;
+        System.out.println("Allocation check over " + measuredFrames + " frames:");
+        System.out.println("  update(): " + updateBytes + " bytes");
+        System.out.println("  render(): " + renderBytes + " bytes (" + blits / measuredFrames + " blits/frame)");
+        System.out.println("  Java2D drawing the same frames: " + java2dBytes + " bytes ("
+                + String.format("%.1f", (double) java2dBytes / measuredFrames) + " bytes/frame, not checked)");
+        System.out.println(passed ? "PASS" : "FAIL");
+        return passed;
+    }
+
+    /**
+     * Run this program again in a child JVM with -Xint and the same class path, and wait for it
+     */
+    private static boolean relaunchInterpreted(String... args) {
+        List<String> command = new ArrayList<>();
+        command.add(java.nio.file.Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Xint");
+        String headless = System.getProperty("java.awt.headless");
+        if (headless != null) {
+            command.add("-Djava.awt.headless=" + headless);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(PlantsVsZombiesGame.class.getName());
+        command.addAll(Arrays.asList(args));
+        try {
+            return new ProcessBuilder(command).inheritIO().start().waitFor() == 0;
+        } catch (IOException e) {
+            System.out.println("Could not start an interpreted JVM: " + e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     private static void printEnhancedProjectInfo() {
         System.out.println("===============================================================");
         System.out.println("ENHANCED PLANTS VS ZOMBIES - WITH SUN COLLECTION & SHOVEL");
@@ -1422,6 +6049,7 @@ public class PlantsVsZombiesGame {
         System.out.println("• ↑/↓ or =/- keys: Volume control");
         System.out.println("• M: Toggle mute/unmute");
         System.out.println("• R: Restart game (when game over)");
+        System.out.println("• F5 / F9: Quicksave / load (pvz-save.bin)");
         System.out.println();
 
         System.out.println("GAMEPLAY CHANGES:");